@@ -0,0 +1,80 @@
+package staxparser.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.BatchContentExtractor;
+import staxparser.xml.PathExpression;
+
+/**
+ * Throughput of {@link BatchContentExtractor} by number of threads. Each operation extracts three values from every 
+ * document of a batch; divide the score by the batch size for documents per second. Scaling stops at the number of
+ * available cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchExtractionBenchmark {
+
+	@Param({ "1", "2", "4", "8", "16", "32" })
+	public int threads;
+
+	@Param({ "1000" })
+	public int documents;
+
+	@Param({ "10" })
+	public int items;
+
+	private List<String> batch;
+	private ForkJoinPool pool;
+	private BatchContentExtractor extractor;
+
+	@Setup
+	public void setUp() {
+		batch = new ArrayList<String>(documents);
+		String xml = OrderDocuments.distributeOrderRequest(items);
+		for (int i = 0; i < documents; i++) {
+			batch.add(xml);
+		}
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		expressions.add(new PathExpression("//AppInfo/globalTransactionId"));
+		expressions.add(new PathExpression("/DistributeOrderRequest/Order/customerId"));
+		expressions.add(new PathExpression("//item/sku"));
+		pool = new ForkJoinPool(threads);
+		extractor = new BatchContentExtractor(expressions, pool);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public List<Map<PathExpression, String>> extractElementText() throws XMLStreamException, IOException {
+		return extractor.extractElementText(batch);
+	}
+}
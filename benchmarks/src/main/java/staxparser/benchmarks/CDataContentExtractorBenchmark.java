@@ -0,0 +1,48 @@
+package staxparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.CDataContentExtractor;
+
+/**
+ * {@link CDataContentExtractor} on a response carrying a DistributeOrderRequest in a CDATA section
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CDataContentExtractorBenchmark {
+
+	@Param({ "1", "10", "100" })
+	public int items;
+
+	private String xml;
+	private CDataContentExtractor extractor;
+
+	@Setup
+	public void setUp() {
+		xml = OrderDocuments.cdataDistributeOrderRequest(items);
+		extractor = new CDataContentExtractor();
+	}
+
+	@Benchmark
+	public String extractContent() throws XMLStreamException {
+		return extractor.extractContent(xml);
+	}
+}
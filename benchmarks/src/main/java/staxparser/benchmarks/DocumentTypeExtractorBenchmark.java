@@ -0,0 +1,51 @@
+package staxparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.DocumentTypeExtractor;
+import staxparser.xml.XMLStreamReaderTemplate;
+
+/**
+ * {@link DocumentTypeExtractor}, which scans the root start tag from a prefix of the document, compared to reading
+ * it with a StAX reader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DocumentTypeExtractorBenchmark {
+
+	private final DocumentTypeExtractor extractor = new DocumentTypeExtractor();
+
+	@Benchmark
+	public String extractDocumentType(OrderDocumentState document) throws XMLStreamException {
+		return extractor.extractDocumentType(document.xml);
+	}
+
+	@Benchmark
+	public String extractDocumentTypeFromBytes(OrderDocumentState document) throws XMLStreamException {
+		return extractor.extractDocumentType(document.bytes);
+	}
+
+	@Benchmark
+	public String streamReader(OrderDocumentState document) throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(document.xml);
+		template.nextElement();
+		template.close();
+		return template.getQNameAsString();
+	}
+}
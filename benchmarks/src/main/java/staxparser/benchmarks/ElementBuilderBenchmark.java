@@ -0,0 +1,55 @@
+package staxparser.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+import staxparser.util.ResourceUtils;
+import staxparser.util.XMLUtils;
+import staxparser.xml.XMLStreamReaderTemplate;
+
+/**
+ * Building a DOM Element directly from the reader events compared to the previous serialize and parse round trip,
+ * for a cdata-example.xml sized element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementBuilderBenchmark {
+
+	private String xml;
+
+	@Setup
+	public void setUp() throws IOException {
+		xml = ResourceUtils.classPathResourceAsString(getClass(), "/cdata-example.xml");
+	}
+
+	@Benchmark
+	public Element stringRoundTrip() throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		String element = template.getNextElement(String.class, "Body");
+		return XMLUtils.stringToElement(element);
+	}
+
+	@Benchmark
+	public Element directBuild() throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		return template.getNextElement(Element.class, "Body");
+	}
+}
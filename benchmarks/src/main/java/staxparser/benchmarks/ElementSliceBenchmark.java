@@ -0,0 +1,66 @@
+package staxparser.benchmarks;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.ElementSlice;
+import staxparser.xml.PathExpression;
+import staxparser.xml.PathExpressionMatchHandler;
+import staxparser.xml.PathExpressionXMLContentExtractor;
+
+/**
+ * Splitting a document into its items, serialized again as Strings or copied from the input as 
+ * {@link ElementSlice}s
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementSliceBenchmark {
+	private final PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+			Collections.singleton(new PathExpression("//Order/item")));
+
+	@Benchmark
+	public int extractAllElements(OrderDocumentState document) throws XMLStreamException {
+		final StringWriter writer = new StringWriter();
+		extractor.extractAllElements(document.xml, String.class, new PathExpressionMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content) {
+				writer.write(content);
+			}
+		});
+		return writer.getBuffer().length();
+	}
+
+	@Benchmark
+	public int extractAllElementSlices(OrderDocumentState document) throws XMLStreamException {
+		final StringWriter writer = new StringWriter();
+		extractor.extractAllElementSlices(document.xml, new PathExpressionMatchHandler<ElementSlice>() {
+			@Override
+			public void match(PathExpression expression, ElementSlice content) throws XMLStreamException {
+				try {
+					content.writeTo(writer);
+				} catch (IOException e) {
+					throw new XMLStreamException(e);
+				}
+			}
+		});
+		return writer.getBuffer().length();
+	}
+}
@@ -0,0 +1,104 @@
+package staxparser.benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.MappedFileContentExtractor;
+import staxparser.xml.PathExpression;
+import staxparser.xml.PathExpressionMatchHandler;
+import staxparser.xml.PathExpressionOffsetMatchHandler;
+import staxparser.xml.PathExpressionXMLContentExtractor;
+
+/**
+ * Time to pass every item sku of a large file to a handler, reading the file through a buffered Reader compared to 
+ * a memory mapping. Run with a size that fits in the page cache to measure parsing rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MappedFileBenchmark {
+
+	@Param({ "1024" })
+	public int megabytes;
+
+	private Path file;
+	private PathExpressionXMLContentExtractor extractor;
+	private MappedFileContentExtractor mappedFileExtractor;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = Files.createTempFile("distribute-order-request", ".xml");
+		OrderDocuments.writeDistributeOrderRequest(file, megabytes * (1L << 20));
+		PathExpression px = new PathExpression("/DistributeOrderRequest/Order/item/sku");
+		extractor = new PathExpressionXMLContentExtractor(Collections.singleton(px));
+		mappedFileExtractor = new MappedFileContentExtractor(Collections.singleton(px));
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.delete(file);
+	}
+
+	@Benchmark
+	public long bufferedReader() throws XMLStreamException, IOException {
+		Counter counter = new Counter();
+		try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			extractor.extractAllElementText(reader, counter);
+		}
+		return counter.count;
+	}
+
+	@Benchmark
+	public long mappedFile() throws XMLStreamException, IOException {
+		Counter counter = new Counter();
+		mappedFileExtractor.extractAllElementText(file, (PathExpressionMatchHandler<String>) counter);
+		return counter.count;
+	}
+
+	@Benchmark
+	public long mappedFileWithOffsets() throws XMLStreamException, IOException {
+		Counter counter = new Counter();
+		mappedFileExtractor.extractAllElementText(file, (PathExpressionOffsetMatchHandler<String>) counter);
+		return counter.count + counter.offset;
+	}
+
+	private static final class Counter 
+	implements PathExpressionMatchHandler<String>, PathExpressionOffsetMatchHandler<String> {
+		private long count;
+		private long offset;
+
+		@Override
+		public void match(PathExpression expression, String content) {
+			count++;
+		}
+
+		@Override
+		public void match(PathExpression expression, String content, long offset) {
+			count++;
+			this.offset = offset;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package staxparser.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A generated DistributeOrderRequest document, parameterized by size and namespace density
+ */
+@State(Scope.Benchmark)
+public class OrderDocumentState {
+
+	@Param({ "1", "10", "100" })
+	public int items;
+
+	@Param({ OrderDocuments.NONE, OrderDocuments.PREFIXED, OrderDocuments.DENSE })
+	public String namespaces;
+
+	public String xml;
+
+	public byte[] bytes;
+
+	@Setup
+	public void setUp() {
+		xml = OrderDocuments.distributeOrderRequest(items, namespaces);
+		bytes = xml.getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,174 @@
+package staxparser.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates variants of the distribute-order-request.xml test document for benchmarks
+ */
+public final class OrderDocuments {
+	private OrderDocuments() {
+	}
+
+	/**
+	 * No namespaces
+	 */
+	public static final String NONE = "none";
+	/**
+	 * Namespaces declared once on the root element and used through prefixes, as in distribute-order-request.xml
+	 */
+	public static final String PREFIXED = "prefixed";
+	/**
+	 * Namespaces declared again on every element
+	 */
+	public static final String DENSE = "dense";
+
+	private static final String APP = "http://acme.com/common/appinfo";
+	private static final String TNS = "http://acme.com/messages/request/distributeorder";
+	private static final String ORD = "http://acme.com/nouns/order";
+
+	/**
+	 * Generate a DistributeOrderRequest document
+	 * @param items the number of order items
+	 * @return the document
+	 */
+	public static String distributeOrderRequest(int items) {
+		return distributeOrderRequest(items, PREFIXED);
+	}
+
+	/**
+	 * Generate a DistributeOrderRequest document
+	 * @param items the number of order items
+	 * @param namespaces the namespace density: {@link #NONE}, {@link #PREFIXED} or {@link #DENSE}
+	 * @return the document
+	 */
+	public static String distributeOrderRequest(int items, String namespaces) {
+		StringBuilder sb = new StringBuilder(512 + items * 300);
+		appendHeader(sb, namespaces);
+		for (int i = 0; i < items; i++) {
+			appendItem(sb, i, namespaces);
+		}
+		appendFooter(sb, namespaces);
+		return sb.toString();
+	}
+
+	/**
+	 * Generate a document with the DistributeOrderRequest in a CDATA section, as in cdata-example.xml
+	 * @param items the number of order items
+	 * @return the document
+	 */
+	public static String cdataDistributeOrderRequest(int items) {
+		String order = distributeOrderRequest(items, PREFIXED);
+		StringBuilder sb = new StringBuilder(order.length() + 512);
+		sb.append("<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\">\n")
+			.append("\t<SOAP-ENV:Body>\n")
+			.append("\t\t<get_order_dataResponse xmlns=\"urn:response\">\n")
+			.append("\t\t\t<X_ORDER><![CDATA[").append(order).append("]]></X_ORDER>\n")
+			.append("\t\t</get_order_dataResponse>\n")
+			.append("\t</SOAP-ENV:Body>\n")
+			.append("</SOAP-ENV:Envelope>");
+		return sb.toString();
+	}
+
+	/**
+	 * Write a UTF-8 DistributeOrderRequest document of about the given size to a file
+	 * @param path the file
+	 * @param bytes the approximate file size
+	 * @throws IOException
+	 */
+	public static void writeDistributeOrderRequest(Path path, long bytes) throws IOException {
+		Writer writer = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), 1 << 16);
+		try {
+			StringBuilder sb = new StringBuilder(4096);
+			appendHeader(sb, PREFIXED);
+			long written = 0;
+			for (int i = 0; written < bytes; i++) {
+				appendItem(sb, i, PREFIXED);
+				written += sb.length();
+				writer.append(sb);
+				sb.setLength(0);
+			}
+			appendFooter(sb, PREFIXED);
+			writer.append(sb);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void appendHeader(StringBuilder sb, String namespaces) {
+		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		if (NONE.equals(namespaces)) {
+			sb.append("<DistributeOrderRequest>\n");
+		} else {
+			sb.append("<tns:DistributeOrderRequest xmlns:app=\"").append(APP).append("\"")
+				.append(" xmlns:tns=\"").append(TNS).append("\"")
+				.append(" xmlns:ord=\"").append(ORD).append("\">\n");
+		}
+		sb.append('\t');
+		start(sb, "app", APP, "AppInfo", namespaces).append('\n');
+		element(sb, 2, "app", APP, "applicationId", "applicationId", namespaces);
+		element(sb, 2, "app", APP, "globalTransactionId", "4ca2682b-879a-4de2-be4b-f67f9ef9cc7b", namespaces);
+		element(sb, 2, "app", APP, "requestTime", "2011-01-14T15:42:07.875-05:00", namespaces);
+		element(sb, 2, "app", APP, "endUserId", "endUserId", namespaces);
+		sb.append('\t');
+		end(sb, "app", "AppInfo", namespaces).append('\n');
+		sb.append('\t');
+		start(sb, "ord", ORD, "Order", namespaces).append('\n');
+		element(sb, 2, "ord", ORD, "id", "5", namespaces);
+		element(sb, 2, "ord", ORD, "customerId", "customerFor-5", namespaces);
+		element(sb, 2, "ord", ORD, "dateTime", "2011-01-14T15:41:57.607-05:00", namespaces);
+	}
+
+	private static void appendItem(StringBuilder sb, int i, String namespaces) {
+		String sku = String.format("%06d", (i * 7919) % 1000000);
+		sb.append("\t\t");
+		start(sb, "ord", ORD, "item", namespaces).append('\n');
+		element(sb, 3, "ord", ORD, "quantity", String.valueOf(1 + (i * 31) % 500), namespaces);
+		element(sb, 3, "ord", ORD, "sku", sku, namespaces);
+		element(sb, 3, "ord", ORD, "description", "description for " + sku, namespaces);
+		sb.append("\t\t");
+		end(sb, "ord", "item", namespaces).append('\n');
+	}
+
+	private static void appendFooter(StringBuilder sb, String namespaces) {
+		sb.append('\t');
+		end(sb, "ord", "Order", namespaces).append('\n');
+		end(sb, "tns", "DistributeOrderRequest", namespaces);
+	}
+
+	private static void element(StringBuilder sb, int indent, String prefix, String namespaceURI, String localName,
+			String text, String namespaces) {
+		for (int i = 0; i < indent; i++) {
+			sb.append('\t');
+		}
+		start(sb, prefix, namespaceURI, localName, namespaces).append(text);
+		end(sb, prefix, localName, namespaces).append('\n');
+	}
+
+	private static StringBuilder start(StringBuilder sb, String prefix, String namespaceURI, String localName,
+			String namespaces) {
+		sb.append('<');
+		qname(sb, prefix, localName, namespaces);
+		if (DENSE.equals(namespaces)) {
+			sb.append(" xmlns:").append(prefix).append("=\"").append(namespaceURI).append('"');
+		}
+		return sb.append('>');
+	}
+
+	private static StringBuilder end(StringBuilder sb, String prefix, String localName, String namespaces) {
+		sb.append("</");
+		qname(sb, prefix, localName, namespaces);
+		return sb.append('>');
+	}
+
+	private static void qname(StringBuilder sb, String prefix, String localName, String namespaces) {
+		if (!NONE.equals(namespaces)) {
+			sb.append(prefix).append(':');
+		}
+		sb.append(localName);
+	}
+}
@@ -0,0 +1,101 @@
+package staxparser.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.MappedFileContentExtractor;
+import staxparser.xml.PartitionedFileContentExtractor;
+import staxparser.xml.PathExpression;
+import staxparser.xml.PathExpressionMatchHandler;
+import staxparser.xml.XMLInputFactoryProvider;
+
+/**
+ * Time to pass every item sku of a large file to a handler, parsing the file sequentially compared to parsing 
+ * partitions of it on a number of threads. Scaling stops at the number of available cores, so run it on a multi-core 
+ * host, e.g., with <code>-p threads=1,2,4,8</code>. Run with a size that fits in the page cache to measure parsing 
+ * rather than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PartitionedFileBenchmark {
+
+	@Param({ "256" })
+	public int megabytes;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	private Path file;
+	private ExecutorService executor;
+	private MappedFileContentExtractor sequentialExtractor;
+	private PartitionedFileContentExtractor partitionedExtractor;
+
+	@Setup
+	public void setUp() throws XMLStreamException, IOException {
+		file = Files.createTempFile("distribute-order-request", ".xml");
+		OrderDocuments.writeDistributeOrderRequest(file, megabytes * (1L << 20));
+		PathExpression px = new PathExpression("/DistributeOrderRequest/Order/item/sku");
+		executor = Executors.newFixedThreadPool(threads);
+		sequentialExtractor = new MappedFileContentExtractor(Collections.singleton(px));
+		partitionedExtractor = new PartitionedFileContentExtractor(Collections.singleton(px), 
+				new PathExpression("/DistributeOrderRequest/Order/item"), XMLInputFactoryProvider.getFactory(), 
+				executor, PartitionedFileContentExtractor.DEFAULT_PARTITION_SIZE);
+		long expected = sequential();
+		if (expected == 0 || partitioned() != expected) {
+			throw new IllegalStateException("the partitioned parse does not find the " + expected + " skus");
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		executor.shutdownNow();
+		Files.delete(file);
+	}
+
+	@Benchmark
+	public long sequential() throws XMLStreamException, IOException {
+		Counter counter = new Counter();
+		sequentialExtractor.extractAllElementText(file, counter);
+		return counter.count;
+	}
+
+	@Benchmark
+	public long partitioned() throws XMLStreamException, IOException {
+		Counter counter = new Counter();
+		partitionedExtractor.extractAllElementText(file, counter);
+		return counter.count;
+	}
+
+	private static final class Counter implements PathExpressionMatchHandler<String> {
+		private long count;
+
+		@Override
+		public void match(PathExpression expression, String content) {
+			count++;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package staxparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.PathExpression;
+
+/**
+ * Parsing and matching {@link PathExpression}s
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathExpressionBenchmark {
+	private static final String ORD = "http://acme.com/nouns/order";
+
+	/*
+	 * The element path being matched, with and without namespaces
+	 */
+	private PathExpression path;
+	private PathExpression plainPath;
+
+	private PathExpression absolute;
+	private PathExpression absoluteNamespaced;
+	private PathExpression relative;
+	private PathExpression relativeNamespaced;
+	private PathExpression otherLastStep;
+	private PathExpression otherParent;
+
+	@Setup
+	public void setUp() {
+		path = new PathExpression("/{http://acme.com/messages/request/distributeorder}DistributeOrderRequest/{"
+				+ ORD + "}Order/{" + ORD + "}item/{" + ORD + "}sku");
+		plainPath = new PathExpression("/DistributeOrderRequest/Order/item/sku");
+		absolute = new PathExpression("/DistributeOrderRequest/Order/item/sku");
+		absoluteNamespaced = new PathExpression("/{http://acme.com/messages/request/distributeorder}"
+				+ "DistributeOrderRequest/{" + ORD + "}Order/{" + ORD + "}item/{" + ORD + "}sku");
+		relative = new PathExpression("//item/sku");
+		relativeNamespaced = new PathExpression("//{" + ORD + "}Order/{" + ORD + "}item/{" + ORD + "}sku");
+		otherLastStep = new PathExpression("//item/quantity");
+		otherParent = new PathExpression("//Order/sku");
+	}
+
+	@Benchmark
+	public PathExpression parse() {
+		return new PathExpression("//{" + ORD + "}Order/{" + ORD + "}item/{" + ORD + "}sku");
+	}
+
+	@Benchmark
+	public PathExpression valueOf() {
+		return PathExpression.valueOf("//{" + ORD + "}Order/{" + ORD + "}item/{" + ORD + "}sku");
+	}
+
+	@Benchmark
+	public boolean matchesAbsolute() {
+		return absolute.matches(plainPath);
+	}
+
+	@Benchmark
+	public boolean matchesAbsoluteNamespaced() {
+		return absoluteNamespaced.matches(path);
+	}
+
+	@Benchmark
+	public boolean matchesRelative() {
+		return relative.matches(plainPath);
+	}
+
+	@Benchmark
+	public boolean matchesRelativeNamespaced() {
+		return relativeNamespaced.matches(path);
+	}
+
+	@Benchmark
+	public boolean rejectsLastStep() {
+		return otherLastStep.matches(path);
+	}
+
+	@Benchmark
+	public boolean rejectsParent() {
+		return otherParent.matches(path);
+	}
+
+	@Benchmark
+	public PathExpression pushPop() {
+		return path.push(new QName(ORD, "quantity")).pop();
+	}
+}
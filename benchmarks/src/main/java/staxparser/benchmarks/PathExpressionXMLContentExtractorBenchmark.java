@@ -0,0 +1,123 @@
+package staxparser.benchmarks;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.ElementHandle;
+import staxparser.xml.ExtractionResults;
+import staxparser.xml.PathExpression;
+import staxparser.xml.PathExpressionMatchHandler;
+import staxparser.xml.PathExpressionXMLContentExtractor;
+
+/**
+ * {@link PathExpressionXMLContentExtractor} with an increasing number of expressions. Expressions beyond those 
+ * matching the document select elements it does not contain, so every document is read to the end.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathExpressionXMLContentExtractorBenchmark {
+	private static final String[] MATCHING = {
+		"/DistributeOrderRequest/Order/customerId",
+		"//AppInfo/globalTransactionId",
+		"//item/sku",
+		"/DistributeOrderRequest/AppInfo/applicationId",
+		"//Order/dateTime",
+		"//item/description",
+		"/DistributeOrderRequest/Order/id",
+		"//AppInfo/requestTime",
+		"//quantity",
+		"//AppInfo/endUserId" };
+
+	@Param({ "1", "10", "100", "300" })
+	public int expressions;
+
+	private PathExpressionXMLContentExtractor extractor;
+
+	@Setup
+	public void setUp() {
+		Set<PathExpression> set = new HashSet<PathExpression>();
+		for (int i = 0; i < expressions; i++) {
+			if (i < MATCHING.length) {
+				set.add(new PathExpression(MATCHING[i]));
+			} else if (i % 2 == 0) {
+				set.add(new PathExpression("/DistributeOrderRequest/Order/item/missing" + i));
+			} else {
+				set.add(new PathExpression("//item/missing" + i));
+			}
+		}
+		extractor = new PathExpressionXMLContentExtractor(set);
+	}
+
+	@Benchmark
+	public Map<PathExpression, String> extractElementText(OrderDocumentState document) throws XMLStreamException {
+		return extractor.extractElementText(document.xml);
+	}
+
+	@Benchmark
+	public ExtractionResults<String> extractElementTextIntoResults(OrderDocumentState document, 
+			ResultsState results) throws XMLStreamException {
+		ExtractionResults<String> reused = results.get(extractor);
+		extractor.extractElementText(document.xml, reused);
+		return reused;
+	}
+
+	@Benchmark
+	public Map<PathExpression, String> extractElements(OrderDocumentState document) throws XMLStreamException {
+		return extractor.extractElements(document.xml, String.class);
+	}
+
+	@Benchmark
+	public Map<PathExpression, ElementHandle> extractElementHandles(OrderDocumentState document) 
+			throws XMLStreamException {
+		return extractor.extractElementHandles(document.xml);
+	}
+
+	@Benchmark
+	public int extractAllElementText(OrderDocumentState document) throws XMLStreamException {
+		final int[] matches = new int[1];
+		extractor.extractAllElementText(document.xml, new PathExpressionMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content) {
+				matches[0]++;
+			}
+		});
+		return matches[0];
+	}
+
+	/**
+	 * A results container per benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class ResultsState {
+		private ExtractionResults<String> results;
+		private PathExpressionXMLContentExtractor extractor;
+
+		ExtractionResults<String> get(PathExpressionXMLContentExtractor extractor) {
+			if (this.extractor != extractor) {
+				this.extractor = extractor;
+				results = extractor.newResults();
+			}
+			return results;
+		}
+	}
+}
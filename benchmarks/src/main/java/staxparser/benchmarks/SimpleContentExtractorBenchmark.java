@@ -0,0 +1,47 @@
+package staxparser.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Element;
+
+import staxparser.xml.SimpleContentExtractor;
+
+/**
+ * Single value extraction with {@link SimpleContentExtractor}, including the cost of compiling the selector
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleContentExtractorBenchmark {
+
+	@Benchmark
+	public String extractElementText(OrderDocumentState document) throws XMLStreamException {
+		return new SimpleContentExtractor("/DistributeOrderRequest/Order/customerId").extractElementText(document.xml);
+	}
+
+	@Benchmark
+	public String extractLastElementText(OrderDocumentState document) throws XMLStreamException {
+		return new SimpleContentExtractor("//Order/missing").extractElementText(document.xml);
+	}
+
+	@Benchmark
+	public String extractLastAbsoluteElementText(OrderDocumentState document) throws XMLStreamException {
+		return new SimpleContentExtractor("/DistributeOrderRequest/Order/missing").extractElementText(document.xml);
+	}
+
+	@Benchmark
+	public Element extractElement(OrderDocumentState document) throws XMLStreamException {
+		return new SimpleContentExtractor("//AppInfo").extractElement(document.xml, Element.class);
+	}
+}
@@ -0,0 +1,56 @@
+package staxparser.benchmarks;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.PathExpression;
+import staxparser.xml.PathExpressionXMLContentExtractor;
+import staxparser.xml.TextValues;
+
+/**
+ * Reading numeric fields as text and parsing them, or into a reusable {@link TextValues} record
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextValuesBenchmark {
+	private final PathExpression id = new PathExpression("/DistributeOrderRequest/Order/id");
+	private final PathExpression quantity = new PathExpression("//item/quantity");
+	private final PathExpression sku = new PathExpression("//item/sku");
+	private final PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+			new HashSet<PathExpression>(Arrays.asList(id, quantity, sku)));
+	private final TextValues values = extractor.newTextValues();
+	private final int idIndex = extractor.indexOf(id);
+	private final int quantityIndex = extractor.indexOf(quantity);
+	private final int skuIndex = extractor.indexOf(sku);
+
+	@Benchmark
+	public long extractElementText(OrderDocumentState document) throws XMLStreamException {
+		Map<PathExpression, String> results = extractor.extractElementText(document.xml);
+		return Long.parseLong(results.get(id)) + Long.parseLong(results.get(quantity)) 
+				+ Long.parseLong(results.get(sku));
+	}
+
+	@Benchmark
+	public long extractValues(OrderDocumentState document) throws XMLStreamException {
+		extractor.extractValues(document.xml, values);
+		return values.getLong(idIndex) + values.getLong(quantityIndex) + values.getLong(skuIndex);
+	}
+}
@@ -0,0 +1,57 @@
+package staxparser.benchmarks;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.XMLInputFactoryProvider;
+import staxparser.xml.XMLStreamReaderTemplate;
+
+/**
+ * Per-document cost of creating an XMLInputFactory for every document (the previous behavior of
+ * {@link XMLStreamReaderTemplate}) compared to drawing it from {@link XMLInputFactoryProvider}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLInputFactoryBenchmark {
+
+	@Param({ "1", "10" })
+	public int items;
+
+	private String xml;
+
+	@Setup
+	public void setUp() {
+		xml = OrderDocuments.distributeOrderRequest(items);
+	}
+
+	@Benchmark
+	public int newFactoryPerDocument() throws XMLStreamException {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		return new XMLStreamReaderTemplate(factory, new StringReader(xml)).count("quantity");
+	}
+
+	@Benchmark
+	public int sharedFactory() throws XMLStreamException {
+		return new XMLStreamReaderTemplate(XMLInputFactoryProvider.getFactory(), new StringReader(xml))
+			.count("quantity");
+	}
+}
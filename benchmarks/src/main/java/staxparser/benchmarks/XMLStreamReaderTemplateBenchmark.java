@@ -0,0 +1,116 @@
+package staxparser.benchmarks;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import staxparser.xml.PathExpression;
+import staxparser.xml.PathExpressionXMLContentExtractor;
+import staxparser.xml.XMLInputFactoryProvider;
+import staxparser.xml.XMLStreamReaderTemplate;
+import staxparser.xml.XMLStreamReaderTemplateProvider;
+
+/**
+ * Scanning, counting and serializing with {@link XMLStreamReaderTemplate}. nextElementPooled reuses the template of
+ * the thread, compare with nextElement using -prof gc. countPath and countAll match element paths rather than names;
+ * countPathPooled reuses the pooled template
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class XMLStreamReaderTemplateBenchmark {
+	private static final String ORD = "http://acme.com/nouns/order";
+	private static final PathExpression ITEMS = PathExpression.valueOf("/DistributeOrderRequest/Order/item");
+	private static final PathExpression SKUS = PathExpression.valueOf("/DistributeOrderRequest/Order/item/sku");
+	private static final PathExpressionXMLContentExtractor COUNTER = new PathExpressionXMLContentExtractor(
+			new HashSet<PathExpression>(Arrays.asList(ITEMS, SKUS)));
+
+	@Benchmark
+	public int nextElement(OrderDocumentState document) throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(document.xml);
+		int elements = 0;
+		while (template.nextElement()) {
+			elements++;
+		}
+		template.close();
+		return elements;
+	}
+
+	@Benchmark
+	public int nextElementPooled(OrderDocumentState document) throws XMLStreamException {
+		XMLStreamReaderTemplate template = XMLStreamReaderTemplateProvider.getTemplate(
+				XMLInputFactoryProvider.getFactory(), new StringReader(document.xml));
+		int elements = 0;
+		while (template.nextElement()) {
+			elements++;
+		}
+		XMLStreamReaderTemplateProvider.release(template);
+		return elements;
+	}
+
+	@Benchmark
+	public int count(OrderDocumentState document) throws XMLStreamException {
+		return new XMLStreamReaderTemplate(document.xml).count("sku");
+	}
+
+	@Benchmark
+	public int countNamespaced(OrderDocumentState document) throws XMLStreamException {
+		return new XMLStreamReaderTemplate(document.xml).count("sku", ORD);
+	}
+
+	@Benchmark
+	public int countPath(OrderDocumentState document) throws XMLStreamException {
+		return new XMLStreamReaderTemplate(document.xml).count(SKUS);
+	}
+
+	@Benchmark
+	public int countPathPooled(OrderDocumentState document) throws XMLStreamException {
+		XMLStreamReaderTemplate template = XMLStreamReaderTemplateProvider.getTemplate(
+				XMLInputFactoryProvider.getFactory(), new StringReader(document.xml));
+		int count = template.count(SKUS);
+		XMLStreamReaderTemplateProvider.release(template);
+		return count;
+	}
+
+	@Benchmark
+	public int countAll(OrderDocumentState document) throws XMLStreamException {
+		int[] counts = COUNTER.countAll(document.xml);
+		return counts[0] + counts[1];
+	}
+
+	@Benchmark
+	public String writeElement(OrderDocumentState document) throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(document.xml);
+		template.nextElement("Order");
+		StringWriter writer = new StringWriter();
+		template.writeElement(writer);
+		template.close();
+		return writer.toString();
+	}
+
+	@Benchmark
+	public int writeNextElement(OrderDocumentState document) throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(document.xml);
+		StringWriter writer = new StringWriter();
+		int elements = 0;
+		while (template.writeNextElement(writer, "item")) {
+			elements++;
+		}
+		template.close();
+		return elements + writer.getBuffer().length();
+	}
+}
@@ -0,0 +1,70 @@
+package staxparser.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An InputStream reading the remaining bytes of a {@link java.nio.ByteBuffer}. The stream reads from a duplicate,
+ * so the position of the given buffer is not changed. Supports direct and memory mapped buffers. Not thread safe.
+ */
+public class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+    private int mark = -1;
+
+    /**
+     * 
+     * @param buffer the buffer. Bytes between its position and limit are read
+     */
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        mark = buffer.position();
+    }
+
+    @Override
+    public void reset() throws IOException {
+        if (mark < 0) {
+            throw new IOException("mark not set");
+        }
+        buffer.position(mark);
+    }
+}
@@ -0,0 +1,166 @@
+package staxparser.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read only, memory mapped file. Files larger than the chunk size (by default 1 GB) are mapped as consecutive
+ * chunks, so files over 2 GB are supported. The mapping is released when the buffers are garbage collected;
+ * {@link #close()} closes the file channel.
+ */
+public class MappedFile implements Closeable {
+    /**
+     * The default chunk size, 1 GB
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] chunks;
+    private final int chunkSize;
+    private final long size;
+
+    /**
+     *
+     * @param path the file
+     * @throws IOException
+     */
+    public MappedFile(Path path) throws IOException {
+        this(path, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     *
+     * @param path the file
+     * @param chunkSize the maximum number of bytes mapped by a single buffer
+     * @throws IOException
+     */
+    public MappedFile(Path path, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            chunks = new MappedByteBuffer[(int) ((size + chunkSize - 1) / chunkSize)];
+            for (int i = 0; i < chunks.length; i++) {
+                long position = (long) i * chunkSize;
+                chunks[i] = channel.map(MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     *
+     * @return the file size in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     *
+     * @param offset the byte offset in the file
+     * @return the byte at the offset
+     */
+    public byte get(long offset) {
+        if (offset < chunkSize) {
+            return chunks[0].get((int) offset);
+        }
+        return chunks[(int) (offset / chunkSize)].get((int) (offset % chunkSize));
+    }
+
+    /**
+     *
+     * @return a new InputStream reading the file from the start
+     */
+    public InputStream newInputStream() {
+        return new MappedInputStream(0, size);
+    }
+
+    /**
+     *
+     * @param start the offset of the first byte
+     * @param end the offset after the last byte
+     * @return a new InputStream reading part of the file
+     */
+    public InputStream newInputStream(long start, long end) {
+        if (start < 0 || end > size || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", size " + size);
+        }
+        return new MappedInputStream(start, end);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /*
+     * Reads duplicates of the chunks in sequence, so each stream has its own position
+     */
+    private class MappedInputStream extends InputStream {
+        private int chunk;
+        private ByteBuffer current = ByteBuffer.allocate(0);
+        private final long end;
+
+        MappedInputStream(long start, long end) {
+            this.end = end;
+            chunk = (int) (start / chunkSize) - 1;
+            if (start < end) {
+                nextChunk();
+                current.position((int) (start % chunkSize));
+            }
+        }
+
+        @Override
+        public int read() {
+            return nextChunk() ? current.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return nextChunk() ? current.remaining() : 0;
+        }
+
+        /*
+         * Move to the next chunk if the current one is exhausted. Returns false at the end of the file
+         */
+        private boolean nextChunk() {
+            while (!current.hasRemaining()) {
+                if (chunk + 1 == chunks.length || (long) (chunk + 1) * chunkSize >= end) {
+                    return false;
+                }
+                current = chunks[++chunk].duplicate();
+                long limit = end - (long) chunk * chunkSize;
+                if (limit < current.limit()) {
+                    current.limit((int) limit);
+                }
+            }
+            return true;
+        }
+    }
+}
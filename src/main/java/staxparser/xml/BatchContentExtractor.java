@@ -0,0 +1,351 @@
+package staxparser.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import staxparser.util.ByteBufferInputStream;
+
+/**
+ * A wrapper for {@link PathExpressionXMLContentExtractor} processing many documents in parallel. The expressions 
+ * are compiled once and shared by every task, and each document is parsed by its own reader on one of the 
+ * executor's threads.
+ * 
+ * <p>Inputs may be any of the types accepted by the extract... methods of 
+ * {@link PathExpressionXMLContentExtractor}: <code>String, Reader, InputStream, byte[], ByteBuffer</code> or 
+ * <code>Path</code>. Readers and streams given as inputs are not closed.
+ * 
+ * <p>The executor is {@link ForkJoinPool#commonPool()} by default. Any executor may be given instead, e.g., a fixed 
+ * thread pool to bound the parallelism or, on JDK 21, <code>Executors.newVirtualThreadPerTaskExecutor()</code> when 
+ * the inputs are read from blocking sources.
+ * 
+ * <p>At most <code>maxInFlight</code> documents are submitted to the executor and not yet handled at any time; the 
+ * next input is submitted when a result has been taken. A Stream of inputs is consumed lazily at the same pace, so 
+ * only the documents in flight are held in memory.
+ * 
+ * <p>If a document fails, the remaining tasks are cancelled and the failure is thrown to the caller. An input of 
+ * any other type is rejected with an IllegalArgumentException, before any document is submitted for a Collection 
+ * and when it is reached for a Stream.
+ * 
+ * <p>This class is thread safe.
+ * 
+ * @see PathExpressionXMLContentExtractor
+ */
+public class BatchContentExtractor {
+	/**
+	 * The default maximum number of documents submitted and not yet handled
+	 */
+	public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+	private final PathExpressionXMLContentExtractor pathExpressionExtractor;
+	private final XMLInputFactory factory;
+	private final Executor executor;
+	private final int maxInFlight;
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s 
+	 */
+	public BatchContentExtractor(Set<PathExpression> expressions) {
+		this(expressions, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s 
+	 * @param executor runs a task for each document
+	 */
+	public BatchContentExtractor(Set<PathExpression> expressions, Executor executor) {
+		this(expressions, XMLInputFactoryProvider.getFactory(), executor);
+	}
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s 
+	 * @param factory A configured XMLInputFactory used for every document
+	 * @param executor runs a task for each document
+	 */
+	public BatchContentExtractor(Set<PathExpression> expressions, XMLInputFactory factory, Executor executor) {
+		this(expressions, factory, executor, DEFAULT_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s 
+	 * @param factory A configured XMLInputFactory used for every document
+	 * @param executor runs a task for each document
+	 * @param maxInFlight the maximum number of documents submitted and not yet handled
+	 */
+	public BatchContentExtractor(Set<PathExpression> expressions, XMLInputFactory factory, Executor executor, 
+			int maxInFlight) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("maxInFlight must be positive");
+		}
+		this.factory = factory;
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions, factory);
+	}
+
+	/**
+	 * Returns the first element matching each {@link PathExpression} for every document
+	 * @param inputs The XML documents
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return a result map for each document, in input order
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public <T> List<Map<PathExpression, T>> extractElements(Collection<?> inputs, Class<T> requiredType) 
+	throws XMLStreamException, IOException {
+		validateInputTypes(inputs);
+		List<Map<PathExpression, T>> results = new ArrayList<Map<PathExpression, T>>(inputs.size());
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.returnTypeFor(requiredType), 
+				inInputOrder(results));
+		return results;
+	}
+
+	/**
+	 * Returns the first element matching each {@link PathExpression} for every document
+	 * @param inputs The XML documents, consumed as documents complete
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return a result map for each document, in input order
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public <T> List<Map<PathExpression, T>> extractElements(Stream<?> inputs, Class<T> requiredType) 
+	throws XMLStreamException, IOException {
+		List<Map<PathExpression, T>> results = new ArrayList<Map<PathExpression, T>>();
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.returnTypeFor(requiredType), 
+				inInputOrder(results));
+		return results;
+	}
+
+	/**
+	 * Returns the text of the first element matching each {@link PathExpression} for every document
+	 * @param inputs The XML documents
+	 * @return a result map for each document, in input order
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public List<Map<PathExpression, String>> extractElementText(Collection<?> inputs) 
+	throws XMLStreamException, IOException {
+		validateInputTypes(inputs);
+		List<Map<PathExpression, String>> results = new ArrayList<Map<PathExpression, String>>(inputs.size());
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.RETURN_TYPE.text, inInputOrder(results));
+		return results;
+	}
+
+	/**
+	 * Returns the text of the first element matching each {@link PathExpression} for every document
+	 * @param inputs The XML documents, consumed as documents complete
+	 * @return a result map for each document, in input order
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public List<Map<PathExpression, String>> extractElementText(Stream<?> inputs) 
+	throws XMLStreamException, IOException {
+		List<Map<PathExpression, String>> results = new ArrayList<Map<PathExpression, String>>();
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.RETURN_TYPE.text, inInputOrder(results));
+		return results;
+	}
+
+	/**
+	 * Passes the first element matching each {@link PathExpression} for every document to the handler, in the order 
+	 * the documents complete. The handler is called on the calling thread
+	 * @param inputs The XML documents
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives the results of each document
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public <T> void extractElements(Collection<?> inputs, Class<T> requiredType, BatchResultHandler<T> handler) 
+	throws XMLStreamException, IOException {
+		validateInputTypes(inputs);
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.returnTypeFor(requiredType), handler);
+	}
+
+	/**
+	 * Passes the first element matching each {@link PathExpression} for every document to the handler, in the order 
+	 * the documents complete. The handler is called on the calling thread
+	 * @param inputs The XML documents, consumed as documents complete
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives the results of each document
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public <T> void extractElements(Stream<?> inputs, Class<T> requiredType, BatchResultHandler<T> handler) 
+	throws XMLStreamException, IOException {
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.returnTypeFor(requiredType), handler);
+	}
+
+	/**
+	 * Passes the text of the first element matching each {@link PathExpression} for every document to the handler, 
+	 * in the order the documents complete. The handler is called on the calling thread
+	 * @param inputs The XML documents
+	 * @param handler receives the results of each document
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public void extractElementText(Collection<?> inputs, BatchResultHandler<String> handler) 
+	throws XMLStreamException, IOException {
+		validateInputTypes(inputs);
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.RETURN_TYPE.text, handler);
+	}
+
+	/**
+	 * Passes the text of the first element matching each {@link PathExpression} for every document to the handler, 
+	 * in the order the documents complete. The handler is called on the calling thread
+	 * @param inputs The XML documents, consumed as documents complete
+	 * @param handler receives the results of each document
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public void extractElementText(Stream<?> inputs, BatchResultHandler<String> handler) 
+	throws XMLStreamException, IOException {
+		evaluate(inputs.iterator(), PathExpressionXMLContentExtractor.RETURN_TYPE.text, handler);
+	}
+
+	/*
+	 * Keeps a window of at most maxInFlight submitted documents, submitting the next input whenever a result is taken
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> void evaluate(Iterator<?> inputs, final PathExpressionXMLContentExtractor.RETURN_TYPE returnType, 
+			BatchResultHandler<T> handler) throws XMLStreamException, IOException {
+		CompletionService<DocumentResult> completionService = new ExecutorCompletionService<DocumentResult>(executor);
+		Set<Future<DocumentResult>> inFlight = new HashSet<Future<DocumentResult>>();
+		try {
+			int index = 0;
+			while (true) {
+				while (inFlight.size() < maxInFlight && inputs.hasNext()) {
+					final Object input = inputs.next();
+					validateInputType(input);
+					final int position = index++;
+					inFlight.add(completionService.submit(new Callable<DocumentResult>() {
+						@Override
+						public DocumentResult call() throws XMLStreamException, IOException {
+							return new DocumentResult(position,
+									pathExpressionExtractor.evaluate(newTemplate(input), returnType));
+						}
+					}));
+				}
+				if (inFlight.isEmpty()) {
+					break;
+				}
+				Future<DocumentResult> future = completionService.take();
+				inFlight.remove(future);
+				DocumentResult result = future.get();
+				handler.result(result.index, (Map<PathExpression, T>) result.result);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new XMLStreamException("interrupted while waiting for results", e);
+		} catch (ExecutionException e) {
+			/*
+			 * The template wraps parse errors in RuntimeExceptions and some executors wrap the failure again
+			 */
+			for (Throwable t = e.getCause(); t != null; t = t.getCause()) {
+				if (t instanceof XMLStreamException) {
+					throw (XMLStreamException) t;
+				}
+				if (t instanceof IOException) {
+					throw (IOException) t;
+				}
+			}
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new XMLStreamException(cause);
+		} finally {
+			for (Future<DocumentResult> future : inFlight) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/*
+	 * Sets each result at its input index. Results complete out of order, so the list grows with nulls
+	 */
+	private static <T> BatchResultHandler<T> inInputOrder(final List<Map<PathExpression, T>> results) {
+		return new BatchResultHandler<T>() {
+			@Override
+			public void result(int index, Map<PathExpression, T> result) {
+				while (results.size() <= index) {
+					results.add(null);
+				}
+				results.set(index, result);
+			}
+		};
+	}
+
+	/*
+	 * Templates for in memory inputs are pooled per worker thread, see XMLStreamReaderTemplateProvider. The input 
+	 * type has been validated
+	 */
+	private XMLStreamReaderTemplate newTemplate(Object input) throws IOException, XMLStreamException {
+		if (input instanceof String) {
+			return XMLStreamReaderTemplateProvider.getTemplate(factory, new StringReader((String) input));
+		}
+		if (input instanceof Reader) {
+			return XMLStreamReaderTemplateProvider.getTemplate(factory, (Reader) input);
+		}
+		if (input instanceof InputStream) {
+			return XMLStreamReaderTemplateProvider.getTemplate(factory, (InputStream) input);
+		}
+		if (input instanceof byte[]) {
+			return XMLStreamReaderTemplateProvider.getTemplate(factory, new ByteArrayInputStream((byte[]) input));
+		}
+		if (input instanceof ByteBuffer) {
+			return XMLStreamReaderTemplateProvider.getTemplate(factory, new ByteBufferInputStream((ByteBuffer) input));
+		}
+		return new XMLStreamReaderTemplate(factory, (Path) input);
+	}
+
+	private static void validateInputTypes(Collection<?> inputs) {
+		for (Object input : inputs) {
+			validateInputType(input);
+		}
+	}
+
+	private static void validateInputType(Object input) {
+		if (!(input instanceof String || input instanceof Reader || input instanceof InputStream 
+				|| input instanceof byte[] || input instanceof ByteBuffer || input instanceof Path)) {
+			throw new IllegalArgumentException("unsupported input type " 
+					+ (input == null ? "null" : input.getClass().getName()));
+		}
+	}
+
+	/*
+	 * The results of the document at an index of the inputs
+	 */
+	private static final class DocumentResult {
+		final int index;
+		final Map<PathExpression, ?> result;
+
+		DocumentResult(int index, Map<PathExpression, ?> result) {
+			this.index = index;
+			this.result = result;
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package staxparser.xml;
+
+import java.util.Map;
+
+/**
+ * Callback interface used with {@link BatchContentExtractor} to receive the results of each document as soon as 
+ * it has been processed
+ * @param <T> the result type: <code>String</code> for element text or element strings, 
+ * <code>Element</code> or <code>Node</code>
+ */
+public interface BatchResultHandler<T> {
+    /**
+     * 
+     * @param index the position of the document in the input
+     * @param results the results for the document, as returned by the extract... methods of 
+     * {@link PathExpressionXMLContentExtractor}
+     */
+    public void result(int index, Map<PathExpression, T> results);
+}
@@ -0,0 +1,427 @@
+package staxparser.xml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * A thread per document adapter that feeds a document arriving in pieces, e.g., from a non blocking socket or a 
+ * chunked HTTP body, to the blocking StAX reader. The caller pushes byte chunks with 
+ * {@link #feed(byte[], int, int)} as they arrive and calls {@link #endOfInput()} after the last one. Every element 
+ * matching a {@link PathExpression} is passed to the handler as soon as it has been parsed, as by the extractAll... 
+ * methods of {@link PathExpressionXMLContentExtractor}, so matches are delivered before the document is complete.
+ *
+ * <p>This is not an asynchronous parser. The StAX reader is a pull parser with no asynchronous mode, so the 
+ * document is parsed by a task on the executor that reads the chunks from a queue. The task blocks an executor 
+ * thread while it waits for the next chunk, until the document ends: one parked thread per document in progress. 
+ * The executor must therefore have a thread for every concurrent document, e.g., a cached pool or a pool sized to 
+ * the document limit; a smaller pool starves, with documents waiting for a thread while their chunks fill the 
+ * queue. A {@link ForkJoinPool}, such as the common pool, is rejected. The matching state is that of a single parse 
+ * across all chunks. The handler is called on the executor's thread.
+ *
+ * <p>The number of documents in progress is limited by a {@link Semaphore} with a permit for each document, shared 
+ * by the instances that use the same executor. A permit is taken by the first call to feed or endOfInput and 
+ * returned when the parsing task ends. When none is available, that call throws a 
+ * {@link RejectedExecutionException} without taking the chunk; the caller may feed the document again later. 
+ * Instances created without a semaphore share one of {@link #DEFAULT_MAX_DOCUMENTS} permits.
+ *
+ * <p>The caller is never blocked. At most <code>maxPendingChunks</code> chunks wait in the queue, bounding the 
+ * memory held for a document; when the queue is full, feed returns <code>false</code> without taking the chunk. The 
+ * caller then stops reading its input, e.g., removes the read interest of its channel, until {@link #needsInput()} 
+ * is <code>true</code> again or the listener set with {@link #setNeedsInputListener(Runnable)} is called, and feeds 
+ * the chunk again.
+ *
+ * <p>A parse error, or an exception thrown by the handler, is thrown by the next call to feed, endOfInput or
+ * {@link #await()}. Chunks fed after the parser has finished are ignored.
+ *
+ * <p>An instance processes one document. {@link #feed(byte[], int, int)} and {@link #endOfInput()} must be called
+ * by one thread at a time.
+ *
+ * @see PathExpressionXMLContentExtractor
+ */
+public class BlockingPushContentExtractor implements Closeable {
+	/**
+	 * The default maximum number of chunks waiting to be parsed
+	 */
+	public static final int DEFAULT_MAX_PENDING_CHUNKS = 64;
+
+	/**
+	 * The number of documents in progress, across all instances created without a semaphore
+	 */
+	public static final int DEFAULT_MAX_DOCUMENTS = 64;
+
+	private static final Semaphore DEFAULT_DOCUMENTS = new Semaphore(DEFAULT_MAX_DOCUMENTS);
+
+	private static final byte[] END_OF_INPUT = new byte[0];
+	private static final byte[] CLOSED = new byte[0];
+
+	private final PathExpressionXMLContentExtractor pathExpressionExtractor;
+	private final Class<?> requiredType;
+	private final PathExpressionMatchHandler<?> handler;
+	private final Executor executor;
+	private final int maxPendingChunks;
+	private final Semaphore documents;
+	/*
+	 * One slot more than maxPendingChunks, so END_OF_INPUT and CLOSED can always be queued
+	 */
+	private final BlockingQueue<byte[]> chunks;
+	private final CountDownLatch finished = new CountDownLatch(1);
+	private volatile Runnable needsInputListener;
+	/*
+	 * Set when a chunk was refused, so the parsing task calls the listener when it takes the next chunk
+	 */
+	private volatile boolean refused;
+	private volatile Throwable failure;
+	private volatile boolean done;
+	private boolean started;
+	private boolean ended;
+
+	/**
+	 * Passes the text of every matching element to the handler
+	 * @param pathExpressionExtractor the extractor, which may be shared by any number of documents
+	 * @param handler receives each match
+	 * @param executor runs the parsing task
+	 */
+	public BlockingPushContentExtractor(PathExpressionXMLContentExtractor pathExpressionExtractor,
+			PathExpressionMatchHandler<String> handler, Executor executor) {
+		this(pathExpressionExtractor, null, handler, executor, DEFAULT_MAX_PENDING_CHUNKS, DEFAULT_DOCUMENTS);
+	}
+
+	/**
+	 * Passes the text of every matching element to the handler
+	 * @param pathExpressionExtractor the extractor, which may be shared by any number of documents
+	 * @param handler receives each match
+	 * @param executor runs the parsing task
+	 * @param maxPendingChunks the maximum number of chunks waiting to be parsed
+	 */
+	public BlockingPushContentExtractor(PathExpressionXMLContentExtractor pathExpressionExtractor,
+			PathExpressionMatchHandler<String> handler, Executor executor, int maxPendingChunks) {
+		this(pathExpressionExtractor, null, handler, executor, maxPendingChunks, DEFAULT_DOCUMENTS);
+	}
+
+	/**
+	 * Passes every matching element to the handler
+	 * @param pathExpressionExtractor the extractor, which may be shared by any number of documents
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives each match
+	 * @param executor runs the parsing task
+	 */
+	public <T> BlockingPushContentExtractor(PathExpressionXMLContentExtractor pathExpressionExtractor,
+			Class<T> requiredType, PathExpressionMatchHandler<T> handler, Executor executor) {
+		this(pathExpressionExtractor, requiredType, handler, executor, DEFAULT_MAX_PENDING_CHUNKS, DEFAULT_DOCUMENTS);
+	}
+
+	/**
+	 * Passes every matching element to the handler
+	 * @param pathExpressionExtractor the extractor, which may be shared by any number of documents
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>), or
+	 * <code>null</code> for the element text
+	 * @param handler receives each match
+	 * @param executor runs the parsing task, with a thread for every concurrent document. Not a ForkJoinPool
+	 * @param maxPendingChunks the maximum number of chunks waiting to be parsed
+	 */
+	public <T> BlockingPushContentExtractor(PathExpressionXMLContentExtractor pathExpressionExtractor,
+			Class<T> requiredType, PathExpressionMatchHandler<T> handler, Executor executor, int maxPendingChunks) {
+		this(pathExpressionExtractor, requiredType, handler, executor, maxPendingChunks, DEFAULT_DOCUMENTS);
+	}
+
+	/**
+	 * Passes every matching element to the handler
+	 * @param pathExpressionExtractor the extractor, which may be shared by any number of documents
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>), or
+	 * <code>null</code> for the element text
+	 * @param handler receives each match
+	 * @param executor runs the parsing task, with a thread for every permit of <code>documents</code>. Not a 
+	 * ForkJoinPool
+	 * @param maxPendingChunks the maximum number of chunks waiting to be parsed
+	 * @param documents a permit for each document that may be in progress, shared by the instances using the executor
+	 */
+	public <T> BlockingPushContentExtractor(PathExpressionXMLContentExtractor pathExpressionExtractor,
+			Class<T> requiredType, PathExpressionMatchHandler<T> handler, Executor executor, int maxPendingChunks,
+			Semaphore documents) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor must not be null");
+		}
+		if (executor instanceof ForkJoinPool) {
+			throw new IllegalArgumentException("the parsing task blocks while waiting for input; a ForkJoinPool "
+					+ "would be starved");
+		}
+		if (documents == null) {
+			throw new IllegalArgumentException("documents must not be null");
+		}
+		if (maxPendingChunks <= 0) {
+			throw new IllegalArgumentException("maxPendingChunks must be positive");
+		}
+		if (requiredType != null) {
+			XMLStreamReaderTemplate.validateRequiredTypeIsSupported(requiredType);
+		}
+		this.pathExpressionExtractor = pathExpressionExtractor;
+		this.requiredType = requiredType;
+		this.handler = handler;
+		this.executor = executor;
+		this.maxPendingChunks = maxPendingChunks;
+		this.documents = documents;
+		this.chunks = new ArrayBlockingQueue<byte[]>(maxPendingChunks + 1);
+	}
+
+	/**
+	 * Push the next chunk of the document. The bytes are copied if the chunk is taken
+	 * @param b the buffer
+	 * @param off the offset of the chunk in the buffer
+	 * @param len the length of the chunk
+	 * @return <code>false</code> if the queue is full and the chunk was not taken
+	 * @throws XMLStreamException if parsing has failed
+	 */
+	public boolean feed(byte[] b, int off, int len) throws XMLStreamException {
+		if (len == 0) {
+			checkFailure();
+			return true;
+		}
+		checkInputOpen();
+		byte[] chunk = new byte[len];
+		System.arraycopy(b, off, chunk, 0, len);
+		return enqueue(chunk);
+	}
+
+	/**
+	 * Push the next chunk of the document, the remaining bytes of the buffer. If the chunk is taken, the bytes are 
+	 * copied and the buffer position is moved to its limit
+	 * @param buffer the chunk
+	 * @return <code>false</code> if the queue is full and the chunk was not taken. The buffer is unchanged
+	 * @throws XMLStreamException if parsing has failed
+	 */
+	public boolean feed(ByteBuffer buffer) throws XMLStreamException {
+		if (!buffer.hasRemaining()) {
+			checkFailure();
+			return true;
+		}
+		checkInputOpen();
+		byte[] chunk = new byte[buffer.remaining()];
+		buffer.duplicate().get(chunk);
+		if (enqueue(chunk)) {
+			buffer.position(buffer.limit());
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * 
+	 * @return <code>true</code> if the next chunk will be taken by feed
+	 */
+	public boolean needsInput() {
+		return done || chunks.size() < maxPendingChunks;
+	}
+
+	/**
+	 * Set a listener called, on the executor's thread, when the parser takes a chunk after feed has refused one. 
+	 * The listener may be called when there is no room, in which case feed refuses the chunk again
+	 * @param listener the listener, or <code>null</code>
+	 */
+	public void setNeedsInputListener(Runnable listener) {
+		this.needsInputListener = listener;
+	}
+
+	/**
+	 * Signal that the whole document has been fed. Matches may still be delivered until {@link #await()} returns
+	 * @throws XMLStreamException if parsing has failed
+	 */
+	public void endOfInput() throws XMLStreamException {
+		if (!ended) {
+			start();
+			ended = true;
+			chunks.offer(END_OF_INPUT);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Wait until the document has been parsed and every match delivered
+	 * @throws XMLStreamException if parsing has failed
+	 * @throws InterruptedException
+	 */
+	public void await() throws XMLStreamException, InterruptedException {
+		if (!started) {
+			throw new IllegalStateException("no input has been fed");
+		}
+		finished.await();
+		checkFailure();
+	}
+
+	/**
+	 * Stop parsing. The parsing task ends without delivering further matches
+	 */
+	@Override
+	public void close() {
+		done = true;
+		chunks.clear();
+		chunks.offer(CLOSED);
+	}
+
+	private void checkInputOpen() throws XMLStreamException {
+		if (ended) {
+			throw new IllegalStateException("input has ended");
+		}
+		checkFailure();
+	}
+
+	/*
+	 * Only this thread adds chunks, so the room seen cannot be taken by another chunk before the offer
+	 */
+	private boolean enqueue(byte[] chunk) throws XMLStreamException {
+		start();
+		if (done) {
+			return true;
+		}
+		if (chunks.size() >= maxPendingChunks) {
+			refused = true;
+			/*
+			 * The parser may have taken a chunk before it could see the flag
+			 */
+			if (chunks.size() >= maxPendingChunks) {
+				return false;
+			}
+		}
+		chunks.offer(chunk);
+		checkFailure();
+		return true;
+	}
+
+	private void start() {
+		if (started) {
+			return;
+		}
+		if (!documents.tryAcquire()) {
+			throw new RejectedExecutionException("too many documents in progress");
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					parse();
+				}
+			});
+		} catch (RuntimeException e) {
+			documents.release();
+			throw e;
+		}
+		started = true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void parse() {
+		try {
+			InputStream inputStream = new ChunkInputStream();
+			if (requiredType == null) {
+				pathExpressionExtractor.extractAllElementText(inputStream,
+						(PathExpressionMatchHandler<String>) handler);
+			} else {
+				pathExpressionExtractor.extractAllElements(inputStream, (Class<Object>) requiredType,
+						(PathExpressionMatchHandler<Object>) handler);
+			}
+		} catch (Throwable t) {
+			if (!done) {
+				failure = t;
+			}
+		} finally {
+			done = true;
+			chunks.clear();
+			documents.release();
+			finished.countDown();
+		}
+	}
+
+	/*
+	 * The template wraps parse errors in RuntimeExceptions
+	 */
+	private void checkFailure() throws XMLStreamException {
+		Throwable t = failure;
+		if (t == null) {
+			return;
+		}
+		for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+			if (cause instanceof XMLStreamException) {
+				throw (XMLStreamException) cause;
+			}
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException) t;
+		}
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		throw new XMLStreamException(t);
+	}
+
+	/*
+	 * Reads the chunks in order, waiting for the next one
+	 */
+	private class ChunkInputStream extends InputStream {
+		private byte[] chunk = new byte[0];
+		private int position;
+
+		@Override
+		public int read() throws IOException {
+			return nextChunk() ? chunk[position++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int n = Math.min(len, chunk.length - position);
+			System.arraycopy(chunk, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (chunk == END_OF_INPUT || chunk == CLOSED) ? 0 : chunk.length - position;
+		}
+
+		/*
+		 * Returns false at the end of the input
+		 */
+		private boolean nextChunk() throws IOException {
+			while (position == chunk.length) {
+				if (chunk == END_OF_INPUT) {
+					return false;
+				}
+				if (chunk == CLOSED) {
+					throw new IOException("closed");
+				}
+				try {
+					chunk = chunks.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted while waiting for input");
+				}
+				position = 0;
+				if (refused) {
+					refused = false;
+					Runnable listener = needsInputListener;
+					if (listener != null) {
+						listener.run();
+					}
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package staxparser.xml;
+
+import javax.xml.stream.Location;
+
+import staxparser.util.MappedFile;
+
+/**
+ * Converts the line and column of a {@link javax.xml.stream.Location} into a byte offset in a {@link MappedFile}.
+ * Locations must be requested in document order: a cursor moves forward through the file, so each byte is scanned
+ * about once regardless of line length. UTF-8 and single byte encodings are supported.
+ */
+final class ByteOffsetLocator {
+	private final MappedFile file;
+	private final boolean utf8;
+	/*
+	 * The cursor: a byte offset and its line and column
+	 */
+	private long offset;
+	private int line = 1;
+	private int column = 1;
+
+	private ByteOffsetLocator(MappedFile file, boolean utf8) {
+		this.file = file;
+		this.utf8 = utf8;
+		if (utf8 && file.size() >= 3 && file.get(0) == (byte) 0xEF && file.get(1) == (byte) 0xBB
+				&& file.get(2) == (byte) 0xBF) {
+			offset = 3;
+		}
+	}
+
+	/**
+	 *
+	 * @param file the file being parsed
+	 * @param encoding the input encoding reported by the reader
+	 * @return a locator, or <code>null</code> if byte offsets cannot be computed for the encoding
+	 */
+	static ByteOffsetLocator forEncoding(MappedFile file, String encoding) {
+		String name = (encoding == null) ? "UTF-8" : encoding.toUpperCase();
+		if (name.equals("UTF-8") || name.equals("UTF8")) {
+			return new ByteOffsetLocator(file, true);
+		}
+		if (name.equals("US-ASCII") || name.equals("ASCII") || name.startsWith("ISO-8859-")
+				|| name.startsWith("ISO8859") || name.startsWith("WINDOWS-125") || name.startsWith("CP125")) {
+			return new ByteOffsetLocator(file, false);
+		}
+		return null;
+	}
+
+	/**
+	 * Return the byte offset of the start tag ending at the given location
+	 * @param location the location of a START_ELEMENT event, just after the start tag
+	 * @return the offset of the '&lt;' opening the start tag, or -1 if the location is unknown
+	 */
+	long startTagOffset(Location location) {
+		int targetLine = location.getLineNumber();
+		int targetColumn = location.getColumnNumber();
+		if (targetLine < line || (targetLine == line && targetColumn < column)) {
+			return -1;
+		}
+		long size = file.size();
+		while (line < targetLine && offset < size) {
+			byte b = file.get(offset++);
+			if (b == '\n') {
+				newLine();
+			} else if (b == '\r') {
+				if (offset < size && file.get(offset) == '\n') {
+					offset++;
+				}
+				newLine();
+			}
+		}
+		while (column < targetColumn && offset < size) {
+			byte b = file.get(offset);
+			if (!utf8 || b >= 0) {
+				offset++;
+				column++;
+			} else if ((b & 0xE0) == 0xC0) {
+				offset += 2;
+				column++;
+			} else if ((b & 0xF0) == 0xE0) {
+				offset += 3;
+				column++;
+			} else {
+				/*
+				 * Supplementary characters are two UTF-16 chars
+				 */
+				offset += 4;
+				column += 2;
+			}
+		}
+
+		long start = offset - 1;
+		while (start > 0 && file.get(start) != '<') {
+			start--;
+		}
+		return start;
+	}
+
+	private void newLine() {
+		line++;
+		column = 1;
+	}
+}
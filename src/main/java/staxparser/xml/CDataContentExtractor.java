@@ -2,6 +2,7 @@ package staxparser.xml;
 
 import java.util.Properties;
 
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.XMLEvent;
@@ -11,6 +12,25 @@ import javax.xml.stream.events.XMLEvent;
  *
  */
 public class CDataContentExtractor {
+    private static final Properties CDATA_FACTORY_PROPERTIES = new Properties();
+    static {
+        CDATA_FACTORY_PROPERTIES.put("http://java.sun.com/xml/stream/properties/report-cdata-event", Boolean.TRUE);
+    }
+
+    private final XMLInputFactory factory;
+
+    public CDataContentExtractor() {
+        this(XMLInputFactoryProvider.getFactory(CDATA_FACTORY_PROPERTIES));
+    }
+
+    /**
+     * 
+     * @param factory a configured XMLInputFactory. It should report CDATA events
+     */
+    public CDataContentExtractor(XMLInputFactory factory) {
+        this.factory = factory;
+    }
+
     /**
      * 
      * @param cdata an element containing CDATA
@@ -22,9 +42,7 @@ public class CDataContentExtractor {
         String result = null;
         try {
 
-            Properties factoryProperties = new Properties();
-            factoryProperties.put("http://java.sun.com/xml/stream/properties/report-cdata-event", Boolean.TRUE);
-            template = new XMLStreamReaderTemplate(cdata, factoryProperties);
+            template = new XMLStreamReaderTemplate(factory, cdata);
 
             result = (String)template.executeCallBack(new XMLStreamReaderCallback() {
 
@@ -0,0 +1,57 @@
+package staxparser.xml;
+
+import javax.xml.stream.Location;
+
+/**
+ * Converts the line and column of a {@link javax.xml.stream.Location} into a character offset in a String input.
+ * {@link javax.xml.stream.Location#getCharacterOffset()} is not reliable for the JDK reader, so the offset is found 
+ * by counting lines. Locations must be requested in document order: a cursor moves forward through the input, so 
+ * each character is scanned about once.
+ */
+final class CharOffsetLocator {
+	private final String source;
+	/*
+	 * The cursor: the offset of the start of a line and its line number
+	 */
+	private int lineStart;
+	private int line = 1;
+
+	CharOffsetLocator(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * Return the character offset of a location
+	 * @param location a location reported by the reader of the source
+	 * @return the offset, or -1 if the location is unknown or precedes an earlier location
+	 */
+	int offset(Location location) {
+		int targetLine = location.getLineNumber();
+		if (targetLine < line || location.getColumnNumber() < 1) {
+			return -1;
+		}
+		int length = source.length();
+		int offset = lineStart;
+		while (line < targetLine && offset < length) {
+			char c = source.charAt(offset++);
+			if (c == '\n') {
+				newLine(offset);
+			} else if (c == '\r') {
+				if (offset < length && source.charAt(offset) == '\n') {
+					offset++;
+				}
+				newLine(offset);
+			}
+		}
+		if (line < targetLine) {
+			return -1;
+		}
+		offset = lineStart + location.getColumnNumber() - 1;
+		return (offset > length) ? -1 : offset;
+	}
+
+	private void newLine(int offset) {
+		line++;
+		lineStart = offset;
+	}
+}
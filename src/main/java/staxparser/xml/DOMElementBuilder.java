@@ -0,0 +1,181 @@
+package staxparser.xml;
+
+import java.util.Arrays;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Builds an {@link org.w3c.dom.Element} directly from the events of an {@link javax.xml.stream.XMLStreamReader},
+ * without serializing the element and parsing it again. Text is handled as in
+ * {@link XMLStreamReaderTemplate#writeElement(java.io.Writer)}: whitespace is dropped and text is trimmed.
+ *
+ * <p>Each element is the document element of a new {@link org.w3c.dom.Document} of its own, so results do not keep
+ * each other reachable and may be modified or passed to other threads independently. The DocumentBuilder that 
+ * creates the documents is reused by each thread.
+ */
+final class DOMElementBuilder {
+	private static final DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+	static {
+		documentBuilderFactory.setNamespaceAware(true);
+	}
+
+	private static final ThreadLocal<DocumentBuilder> documentBuilders = new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				synchronized (documentBuilderFactory) {
+					return documentBuilderFactory.newDocumentBuilder();
+				}
+			} catch (ParserConfigurationException e) {
+				throw new RuntimeException("failed to create a new DocumentBuilder", e);
+			}
+		}
+	};
+
+	/*
+	 * Namespace declarations in scope for the element being built, as parallel prefix/URI arrays.
+	 */
+	private String[] prefixes = new String[8];
+	private String[] namespaceURIs = new String[8];
+	private int declared;
+
+	private DOMElementBuilder() {
+	}
+
+	/**
+	 * Build the element at the current START_ELEMENT. On return the reader is positioned at the matching END_ELEMENT
+	 * @param xmlStreamReader the reader
+	 * @return the element
+	 * @throws XMLStreamException
+	 */
+	static Element buildElement(XMLStreamReader xmlStreamReader) throws XMLStreamException {
+		Document document = documentBuilders.get().newDocument();
+		Element element = new DOMElementBuilder().build(document, xmlStreamReader);
+		document.appendChild(element);
+		return element;
+	}
+
+	private Element build(Document document, XMLStreamReader xmlStreamReader) throws XMLStreamException {
+		Element root = createElement(document, xmlStreamReader);
+		/*
+		 * scope[depth] is the number of declarations in scope for the open element at that depth
+		 */
+		int[] scope = new int[16];
+		scope[0] = declared;
+		Node current = root;
+		int depth = 0;
+		while (depth >= 0) {
+			switch (xmlStreamReader.next()) {
+			case XMLEvent.START_ELEMENT:
+				Element element = createElement(document, xmlStreamReader);
+				current.appendChild(element);
+				current = element;
+				if (++depth == scope.length) {
+					scope = Arrays.copyOf(scope, depth * 2);
+				}
+				scope[depth] = declared;
+				break;
+			case XMLEvent.END_ELEMENT:
+				current = current.getParentNode();
+				if (--depth >= 0) {
+					declared = scope[depth];
+				}
+				break;
+			case XMLEvent.CDATA:
+				current.appendChild(document.createCDATASection(xmlStreamReader.getText()));
+				break;
+			case XMLEvent.CHARACTERS:
+				if (!xmlStreamReader.isWhiteSpace()) {
+					current.appendChild(document.createTextNode(xmlStreamReader.getText().trim()));
+				}
+				break;
+			case XMLEvent.END_DOCUMENT:
+				throw new XMLStreamException("END_DOCUMENT reached before the end of the element");
+			}
+		}
+		return root;
+	}
+
+	/*
+	 * Create an element with its attributes and the namespace declarations it needs
+	 */
+	private Element createElement(Document document, XMLStreamReader xmlStreamReader) {
+		String prefix = xmlStreamReader.getPrefix();
+		String namespaceURI = xmlStreamReader.getNamespaceURI();
+		Element element = document.createElementNS(emptyToNull(namespaceURI),
+				qualifiedName(prefix, xmlStreamReader.getLocalName()));
+
+		for (int i = 0; i < xmlStreamReader.getNamespaceCount(); i++) {
+			declareNamespace(element, xmlStreamReader.getNamespacePrefix(i), xmlStreamReader.getNamespaceURI(i));
+		}
+		declareNamespaceIfNecessary(element, prefix, namespaceURI);
+
+		for (int i = 0; i < xmlStreamReader.getAttributeCount(); i++) {
+			String attributeNamespace = xmlStreamReader.getAttributeNamespace(i);
+			if (attributeNamespace == null || attributeNamespace.length() == 0) {
+				element.setAttributeNS(null, xmlStreamReader.getAttributeLocalName(i),
+						xmlStreamReader.getAttributeValue(i));
+			} else {
+				String attributePrefix = xmlStreamReader.getAttributePrefix(i);
+				declareNamespaceIfNecessary(element, attributePrefix, attributeNamespace);
+				element.setAttributeNS(attributeNamespace,
+						qualifiedName(attributePrefix, xmlStreamReader.getAttributeLocalName(i)),
+						xmlStreamReader.getAttributeValue(i));
+			}
+		}
+		return element;
+	}
+
+	private void declareNamespaceIfNecessary(Element element, String prefix, String namespaceURI) {
+		prefix = (prefix == null) ? "" : prefix;
+		namespaceURI = (namespaceURI == null) ? "" : namespaceURI;
+		if (!namespaceURI.equals(lookupNamespaceURI(prefix))) {
+			declareNamespace(element, prefix, namespaceURI);
+		}
+	}
+
+	private void declareNamespace(Element element, String prefix, String namespaceURI) {
+		prefix = (prefix == null) ? "" : prefix;
+		namespaceURI = (namespaceURI == null) ? "" : namespaceURI;
+		if (prefix.length() == 0) {
+			element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE, namespaceURI);
+		} else {
+			element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+					namespaceURI);
+		}
+		if (declared == prefixes.length) {
+			prefixes = Arrays.copyOf(prefixes, declared * 2);
+			namespaceURIs = Arrays.copyOf(namespaceURIs, declared * 2);
+		}
+		prefixes[declared] = prefix;
+		namespaceURIs[declared] = namespaceURI;
+		declared++;
+	}
+
+	private String lookupNamespaceURI(String prefix) {
+		for (int i = declared - 1; i >= 0; i--) {
+			if (prefixes[i].equals(prefix)) {
+				return namespaceURIs[i];
+			}
+		}
+		return "";
+	}
+
+	private static String qualifiedName(String prefix, String localName) {
+		return (prefix == null || prefix.length() == 0) ? localName : prefix + ":" + localName;
+	}
+
+	private static String emptyToNull(String namespaceURI) {
+		return (namespaceURI == null || namespaceURI.length() == 0) ? null : namespaceURI;
+	}
+}
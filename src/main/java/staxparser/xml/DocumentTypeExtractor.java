@@ -1,12 +1,54 @@
 package staxparser.xml;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 /**
- * Extract document type (Root element QName) from an XML document
+ * Extract document type (Root element QName) from an XML document.
+ * 
+ * <p>Only the prolog and the root start tag are read, from a bounded prefix of the input. Documents the prefix scan
+ * cannot handle (e.g., with a DOCTYPE, in UTF-16, or with a root start tag extending beyond the prefix) are read 
+ * with a StAX reader instead.
+ * 
  * @author David Turanski
  *
  */
 public class DocumentTypeExtractor {
+    /**
+     * The default maximum number of chars or bytes scanned before falling back to a StAX reader
+     */
+    public static final int DEFAULT_PREFIX_LENGTH = 8192;
+
+    private final XMLInputFactory factory;
+    private final int prefixLength;
+
+    public DocumentTypeExtractor() {
+        this(XMLInputFactoryProvider.getFactory());
+    }
+
+    /**
+     * 
+     * @param factory a configured XMLInputFactory
+     */
+    public DocumentTypeExtractor(XMLInputFactory factory) {
+        this(factory, DEFAULT_PREFIX_LENGTH);
+    }
+
+    /**
+     * 
+     * @param factory a configured XMLInputFactory
+     * @param prefixLength the maximum number of chars or bytes scanned before falling back to the factory's reader
+     */
+    public DocumentTypeExtractor(XMLInputFactory factory, int prefixLength) {
+        this.factory = factory;
+        this.prefixLength = prefixLength;
+    }
+
     /**
      * 
      * @param xml - XML document as String
@@ -14,12 +56,64 @@ public class DocumentTypeExtractor {
      * @throws XMLStreamException
      */
     public String extractDocumentType(String xml) throws XMLStreamException {
-        XMLStreamReaderTemplate template = null;
+        RootElementScanner scanner = RootElementScanner.scan(xml, Math.min(xml.length(), prefixLength));
+        if (scanner.getResult() == RootElementScanner.FOUND) {
+            return scanner.getDocumentType();
+        }
+        return extractDocumentType(new XMLStreamReaderTemplate(factory, xml));
+    }
+
+    /**
+     * 
+     * @param xml - XML document as bytes. The encoding is detected from the byte order mark or the XML declaration
+     * @return - the fully qualified type of the root element as a QName String
+     * @throws XMLStreamException
+     */
+    public String extractDocumentType(byte[] xml) throws XMLStreamException {
+        RootElementScanner scanner = RootElementScanner.scan(xml, Math.min(xml.length, prefixLength));
+        if (scanner.getResult() == RootElementScanner.FOUND) {
+            return scanner.getDocumentType();
+        }
+        return extractDocumentType(new XMLStreamReaderTemplate(factory, xml));
+    }
+
+    /**
+     * Read the document type from a stream. The stream is read in blocks, up to <code>prefixLength</code> bytes in 
+     * all, and further if the prefix scan falls back to a StAX reader, so its position afterwards is undefined: it 
+     * may be anywhere past the end of the root start tag. It is not closed
+     * @param inputStream - XML document as an InputStream. The encoding is detected from the byte order mark or the 
+     * XML declaration
+     * @return - the fully qualified type of the root element as a QName String
+     * @throws XMLStreamException
+     * @throws IOException
+     */
+    public String extractDocumentType(InputStream inputStream) throws XMLStreamException, IOException {
+        byte[] prefix = new byte[Math.min(512, prefixLength)];
+        int length = 0;
+        int count;
+        while (length < prefixLength 
+                && (count = inputStream.read(prefix, length, Math.min(prefix.length, prefixLength) - length)) >= 0) {
+            length += count;
+            RootElementScanner scanner = RootElementScanner.scan(prefix, length);
+            if (scanner.getResult() == RootElementScanner.FOUND) {
+                return scanner.getDocumentType();
+            }
+            if (scanner.getResult() == RootElementScanner.FAILED) {
+                break;
+            }
+            if (length == prefix.length && length < prefixLength) {
+                prefix = Arrays.copyOf(prefix, Math.min(prefix.length * 2, prefixLength));
+            }
+        }
+        return extractDocumentType(new XMLStreamReaderTemplate(factory, 
+                new SequenceInputStream(new ByteArrayInputStream(prefix, 0, length), inputStream)));
+    }
+
+    private String extractDocumentType(XMLStreamReaderTemplate template) throws XMLStreamException {
        try {
-        template = new XMLStreamReaderTemplate(xml); 
         template.nextElement();
        } finally {
-           if (template != null) template.close();
+           template.close();
        }
        return template.getQNameAsString();
     }
@@ -0,0 +1,142 @@
+package staxparser.xml;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * A matched element that is read only when its content is requested. The handle retains the element's 
+ * {@link ElementSlice} and the namespaces in scope. The text, String or <code>Element</code> is parsed from the 
+ * slice on first access and cached, so extracting many expressions costs little more than locating them. 
+ * 
+ * <p>The results are the same as those of the eager extract...methods. This class is not thread safe.
+ *
+ * @see PathExpressionXMLContentExtractor#extractElementHandles(String)
+ */
+public final class ElementHandle {
+	private final ElementSlice slice;
+	private final String[] namespaces;
+	private final XMLInputFactory factory;
+	private String text;
+	private String string;
+	private Object element;
+
+	ElementHandle(ElementSlice slice, String[] namespaces, XMLInputFactory factory) {
+		this.slice = slice;
+		this.namespaces = namespaces;
+		this.factory = factory;
+	}
+
+	/**
+	 *
+	 * @return the source text of the element
+	 */
+	public ElementSlice getSlice() {
+		return slice;
+	}
+
+	/**
+	 * 
+	 * @return the text of the element
+	 * @throws XMLStreamException
+	 */
+	public String getElementText() throws XMLStreamException {
+		if (text == null) {
+			XMLStreamReaderTemplate template = open();
+			try {
+				text = template.getElementText();
+			} finally {
+				template.close();
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * The same instance is returned on each call, so changes to a returned <code>Element</code> are visible to 
+	 * later callers
+	 * @param requiredType The result type one of: <code>String.class, Element.class, Node.class</code>
+	 * @return the element
+	 * @throws XMLStreamException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T getElement(Class<T> requiredType) throws XMLStreamException {
+		XMLStreamReaderTemplate.validateRequiredTypeIsSupported(requiredType);
+		boolean asString = requiredType.equals(String.class);
+		if (asString ? string == null : element == null) {
+			XMLStreamReaderTemplate template = open();
+			try {
+				if (asString) {
+					string = template.getElement(String.class);
+				} else {
+					element = template.getElement(requiredType);
+				}
+			} finally {
+				template.close();
+			}
+		}
+		return (T) (asString ? string : element);
+	}
+
+	/**
+	 * 
+	 * @return the source text of the element
+	 */
+	@Override
+	public String toString() {
+		return slice.toString();
+	}
+
+	/*
+	 * Parse the slice inside an element declaring the namespaces in scope, and position the cursor at the slice
+	 */
+	private XMLStreamReaderTemplate open() throws XMLStreamException {
+		XMLStreamReaderTemplate template;
+		if (namespaces.length == 0) {
+			template = new XMLStreamReaderTemplate(factory, slice.toString());
+		} else {
+			Map<String, String> bindings = new LinkedHashMap<String, String>();
+			for (int i = 0; i < namespaces.length; i += 2) {
+				bindings.put(namespaces[i], namespaces[i + 1]);
+			}
+			StringBuilder sb = new StringBuilder(slice.length() + 64 * bindings.size());
+			sb.append("<scope");
+			for (Entry<String, String> binding : bindings.entrySet()) {
+				if (binding.getKey().length() == 0) {
+					sb.append(" xmlns=\"");
+				} else if (binding.getValue().length() == 0) {
+					continue;
+				} else {
+					sb.append(" xmlns:").append(binding.getKey()).append("=\"");
+				}
+				appendEscaped(sb, binding.getValue()).append('"');
+			}
+			sb.append('>');
+			slice.appendTo(sb);
+			sb.append("</scope>");
+			template = new XMLStreamReaderTemplate(factory, sb.toString());
+			template.nextElement();
+		}
+		template.nextElement();
+		return template;
+	}
+
+	private static StringBuilder appendEscaped(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '&') {
+				sb.append("&amp;");
+			} else if (c == '<') {
+				sb.append("&lt;");
+			} else if (c == '"') {
+				sb.append("&quot;");
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb;
+	}
+}
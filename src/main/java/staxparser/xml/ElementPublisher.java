@@ -0,0 +1,188 @@
+package staxparser.xml;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * A {@link Flow.Publisher} of the elements of one document matching the {@link PathExpression}s of a 
+ * {@link PathExpressionXMLContentExtractor}, in document order. Matches are found as by the extractAll... methods, 
+ * but the parser is only advanced while the subscriber has outstanding demand: when demand is exhausted, the 
+ * reader is not pulled again until {@link Flow.Subscription#request(long)} is called. A slow subscriber therefore 
+ * holds only the unparsed input, not a backlog of matches.
+ * 
+ * <p>Signals are delivered by tasks on the executor, one at a time. The document is read once, so a publisher 
+ * accepts a single subscriber; any other subscriber receives <code>onError</code>. Cancelling the subscription 
+ * closes the reader. A parse error is passed to <code>onError</code>. A subscriber that throws from 
+ * <code>onNext</code> is treated as having cancelled: the reader is closed and no further signal is sent.
+ * 
+ * @see PathExpressionXMLContentExtractor#publishElementText(XMLStreamReaderTemplate, Executor)
+ * @param <T> the content type
+ */
+public final class ElementPublisher<T> implements Flow.Publisher<PathExpressionMatch<T>> {
+	private final PathExpressionXMLContentExtractor pathExpressionExtractor;
+	private final XMLStreamReaderTemplate template;
+	private final PathExpressionXMLContentExtractor.RETURN_TYPE returnType;
+	private final Executor executor;
+	private final AtomicBoolean subscribed = new AtomicBoolean();
+
+	ElementPublisher(PathExpressionXMLContentExtractor pathExpressionExtractor, XMLStreamReaderTemplate template,
+			PathExpressionXMLContentExtractor.RETURN_TYPE returnType, Executor executor) {
+		this.pathExpressionExtractor = pathExpressionExtractor;
+		this.template = template;
+		this.returnType = returnType;
+		this.executor = executor;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super PathExpressionMatch<T>> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("the document has already been published"));
+			return;
+		}
+		MatchSubscription subscription = new MatchSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	/*
+	 * The subscription drains matches while there is demand. Only one drain task runs at a time, so the iterator 
+	 * and the terminal state are confined to it
+	 */
+	private final class MatchSubscription implements Flow.Subscription, Runnable {
+		private final Flow.Subscriber<? super PathExpressionMatch<T>> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger pending = new AtomicInteger();
+		private volatile boolean cancelled;
+		private volatile Throwable invalidRequest;
+		private PathExpressionXMLContentExtractor.MatchIterator matches;
+		private boolean terminated;
+
+		MatchSubscription(Flow.Subscriber<? super PathExpressionMatch<T>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException("request must be positive: " + n);
+			} else {
+				long current;
+				do {
+					current = demand.get();
+				} while (!demand.compareAndSet(current, (current + n < 0) ? Long.MAX_VALUE : current + n));
+			}
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (pending.getAndIncrement() == 0) {
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				if (!terminated) {
+					drain();
+				}
+				missed = pending.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		@SuppressWarnings("unchecked")
+		private void drain() {
+			if (matches == null) {
+				try {
+					matches = pathExpressionExtractor.new MatchIterator(template, returnType, null);
+				} catch (Exception e) {
+					/*
+					 * The iterator has released the template
+					 */
+					terminated = true;
+					signalQuietly(e);
+					return;
+				}
+			}
+			while (!cancelled && invalidRequest == null && demand.get() > 0) {
+				PathExpressionMatch<T> match;
+				try {
+					if (!matches.next()) {
+						terminated = true;
+						signalQuietly(null);
+						return;
+					}
+					match = new PathExpressionMatch<T>(matches.getExpression(), (T) matches.getContent());
+				} catch (Throwable t) {
+					terminate();
+					signalQuietly(t);
+					return;
+				}
+				demand.decrementAndGet();
+				try {
+					subscriber.onNext(match);
+				} catch (Throwable t) {
+					/*
+					 * Rule 2.13: a subscriber throwing from onNext is treated as having cancelled and is not signalled 
+					 * again
+					 */
+					cancelled = true;
+				}
+			}
+			if (cancelled) {
+				terminate();
+			} else if (invalidRequest != null) {
+				terminate();
+				signalQuietly(invalidRequest);
+			}
+		}
+
+		/*
+		 * Signal onComplete, or onError with the failure. The subscription has terminated, so an exception thrown by 
+		 * the subscriber is dropped
+		 */
+		private void signalQuietly(Throwable failure) {
+			try {
+				if (failure == null) {
+					subscriber.onComplete();
+				} else {
+					subscriber.onError(failure);
+				}
+			} catch (Throwable t) {
+				// rule 2.13, the subscription is already terminated
+			}
+		}
+
+		private void terminate() {
+			terminated = true;
+			try {
+				matches.close();
+			} catch (XMLStreamException e) {
+				// the subscriber is no longer interested
+			}
+		}
+	}
+}
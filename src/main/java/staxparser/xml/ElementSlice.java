@@ -0,0 +1,87 @@
+package staxparser.xml;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The source text of an element, from the '&lt;' of its start tag through the '&gt;' of its end tag, exactly as it
+ * appears in the XML input. This is a view of the input: no characters are copied until {@link #toString()} is
+ * called, and whitespace, entity references, CDATA sections and comments are preserved.
+ *
+ * <p>Slices are only available for String input, the one input whose characters can be viewed without decoding. 
+ * For byte[], ByteBuffer, InputStream and file input, {@link XMLStreamReaderTemplate#getElementSlice()} throws 
+ * IllegalStateException; {@link MappedFileContentExtractor} gives the byte offset of each matched element in a 
+ * file instead, but not its length.
+ *
+ * @see XMLStreamReaderTemplate#getElementSlice()
+ */
+public final class ElementSlice implements CharSequence {
+	private final CharSequence source;
+	private final int offset;
+	private final int length;
+
+	ElementSlice(CharSequence source, int offset, int length) {
+		this.source = source;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	/**
+	 *
+	 * @return the offset of the first character in the XML input
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 *
+	 * @return the number of characters
+	 */
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		return source.charAt(offset + index);
+	}
+
+	/**
+	 *
+	 * @return a view of part of this slice
+	 */
+	@Override
+	public ElementSlice subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+		}
+		return new ElementSlice(source, offset + start, end - start);
+	}
+
+	/**
+	 * Write the characters to a Writer without creating a String
+	 * @param writer the Writer
+	 * @throws IOException
+	 */
+	public void writeTo(Writer writer) throws IOException {
+		if (source instanceof String) {
+			writer.write((String) source, offset, length);
+		} else {
+			writer.append(source, offset, offset + length);
+		}
+	}
+
+	void appendTo(StringBuilder sb) {
+		sb.append(source, offset, offset + length);
+	}
+
+	@Override
+	public String toString() {
+		return source.subSequence(offset, offset + length).toString();
+	}
+}
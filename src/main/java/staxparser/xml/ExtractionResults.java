@@ -0,0 +1,176 @@
+package staxparser.xml;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The first result for each {@link PathExpression} of a {@link PathExpressionXMLContentExtractor}, held in an 
+ * array. Each expression has a fixed slot, {@link PathExpressionXMLContentExtractor#indexOf(PathExpression)}, 
+ * assigned when the extractor is created. A results instance may be reused for any number of documents, so 
+ * extraction allocates no result objects. {@link #asMap()} provides a read only Map view for code written against 
+ * the Map results of the extract...methods.
+ * 
+ * <p>The results are cleared by each extraction. This class is not thread safe: use one instance per thread.
+ *
+ * @see PathExpressionXMLContentExtractor#extractElementText(String, ExtractionResults)
+ * @param <T> the result type
+ */
+public final class ExtractionResults<T> {
+	private final PathExpressionMatcher matcher;
+	private final Object[] values;
+	private int unresolved;
+	private Map<PathExpression, T> map;
+
+	ExtractionResults(PathExpressionMatcher matcher) {
+		this.matcher = matcher;
+		values = new Object[matcher.size()];
+		unresolved = values.length;
+	}
+
+	/**
+	 *
+	 * @return the number of expressions
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the expression
+	 */
+	public PathExpression getExpression(int index) {
+		return matcher.getExpression(index);
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the result, or <code>null</code> if no match was found
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int index) {
+		return (T) values[index];
+	}
+
+	/**
+	 *
+	 * @param expression the expression
+	 * @return the result, or <code>null</code> if no match was found or the expression is not extracted
+	 */
+	public T get(PathExpression expression) {
+		int index = matcher.indexOf(expression);
+		return (index < 0) ? null : get(index);
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return <code>true</code> if a match was found
+	 */
+	public boolean isPresent(int index) {
+		return values[index] != null;
+	}
+
+	/**
+	 * A view of the results, keyed by expression. As for the Map returned by the extract...methods, every 
+	 * expression is a key and a <code>null</code> value means no match was found. The view is read only and 
+	 * reflects later extractions
+	 * @return the view
+	 */
+	public Map<PathExpression, T> asMap() {
+		if (map == null) {
+			map = new MapView();
+		}
+		return map;
+	}
+
+	/**
+	 * Remove all results
+	 */
+	public void clear() {
+		Arrays.fill(values, null);
+		unresolved = values.length;
+	}
+
+	/*
+	 * The number of expressions without a result
+	 */
+	int unresolved() {
+		return unresolved;
+	}
+
+	void set(int index, Object value) {
+		if (values[index] == null && value != null) {
+			unresolved--;
+		}
+		values[index] = value;
+	}
+
+	/*
+	 * The extractor the results were created by
+	 */
+	boolean isFor(PathExpressionMatcher matcher) {
+		return this.matcher == matcher;
+	}
+
+	private final class MapView extends AbstractMap<PathExpression, T> {
+		@Override
+		public int size() {
+			return values.length;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof PathExpression && matcher.indexOf((PathExpression) key) >= 0;
+		}
+
+		@Override
+		public T get(Object key) {
+			return (key instanceof PathExpression) ? ExtractionResults.this.get((PathExpression) key) : null;
+		}
+
+		@Override
+		public Set<Entry<PathExpression, T>> entrySet() {
+			return new AbstractSet<Entry<PathExpression, T>>() {
+				@Override
+				public int size() {
+					return values.length;
+				}
+
+				@Override
+				public Iterator<Entry<PathExpression, T>> iterator() {
+					return new Iterator<Entry<PathExpression, T>>() {
+						private int index;
+
+						@Override
+						public boolean hasNext() {
+							return index < values.length;
+						}
+
+						@Override
+						public Entry<PathExpression, T> next() {
+							if (index >= values.length) {
+								throw new NoSuchElementException();
+							}
+							int i = index++;
+							return new SimpleImmutableEntry<PathExpression, T>(getExpression(i), 
+									ExtractionResults.this.get(i));
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package staxparser.xml;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import staxparser.util.MappedFile;
+
+/**
+ * A wrapper for {@link PathExpressionXMLContentExtractor} reading XML files through a memory mapping rather than a
+ * buffered stream. The file is read directly from the page cache, so files of several gigabytes can be scanned 
+ * without copying them through intermediate buffers.
+ * 
+ * <p>The extractAll... methods can also report the byte offset of each matched element, which can be used to 
+ * revisit the element later without parsing the file again. Offsets are computed from the reader's line and column
+ * numbers and are available for UTF-8 and single byte encodings. For other encodings the offset is -1.
+ * 
+ * @see PathExpressionXMLContentExtractor
+ * @see staxparser.util.MappedFile
+ */
+public class MappedFileContentExtractor {
+	private final PathExpressionXMLContentExtractor pathExpressionExtractor;
+	private final XMLInputFactory factory;
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s 
+	 */
+	public MappedFileContentExtractor(Set<PathExpression> expressions) {
+		this(expressions, XMLInputFactoryProvider.getFactory());
+	}
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s 
+	 * @param factory A configured XMLInputFactory used for every extraction
+	 */
+	public MappedFileContentExtractor(Set<PathExpression> expressions, XMLInputFactory factory) {
+		this.factory = factory;
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions, factory);
+	}
+
+	/**
+	 * Returns a map containing the first element matching each {@link PathExpression} 
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Map<PathExpression, T> extractElements(Path path, Class<T> requiredType) 
+	throws XMLStreamException, IOException {
+		return (Map<PathExpression, T>) evaluate(path, PathExpressionXMLContentExtractor.returnTypeFor(requiredType));
+	}
+
+	/**
+	 * Returns a map containing the text of first element matching each {@link PathExpression} 
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<PathExpression, String> extractElementText(Path path) throws XMLStreamException, IOException {
+		return (Map<PathExpression, String>) evaluate(path, PathExpressionXMLContentExtractor.RETURN_TYPE.text);
+	}
+
+	/**
+	 * Passes every element matching any {@link PathExpression} to the handler, in document order
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public <T> void extractAllElements(Path path, Class<T> requiredType, final PathExpressionMatchHandler<T> handler) 
+	throws XMLStreamException, IOException {
+		evaluateAll(path, PathExpressionXMLContentExtractor.returnTypeFor(requiredType), 
+				new PathExpressionOffsetMatchHandler<T>() {
+			@Override
+			public void match(PathExpression expression, T content, long offset) throws XMLStreamException {
+				handler.match(expression, content);
+			}
+		}, false);
+	}
+
+	/**
+	 * Passes every element matching any {@link PathExpression} to the handler with its byte offset, in document order
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public <T> void extractAllElements(Path path, Class<T> requiredType, PathExpressionOffsetMatchHandler<T> handler) 
+	throws XMLStreamException, IOException {
+		evaluateAll(path, PathExpressionXMLContentExtractor.returnTypeFor(requiredType), handler, true);
+	}
+
+	/**
+	 * Passes the text of every element matching any {@link PathExpression} to the handler, in document order
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public void extractAllElementText(Path path, final PathExpressionMatchHandler<String> handler) 
+	throws XMLStreamException, IOException {
+		evaluateAll(path, PathExpressionXMLContentExtractor.RETURN_TYPE.text, 
+				new PathExpressionOffsetMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content, long offset) throws XMLStreamException {
+				handler.match(expression, content);
+			}
+		}, false);
+	}
+
+	/**
+	 * Passes the text of every element matching any {@link PathExpression} to the handler with its byte offset, 
+	 * in document order
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public void extractAllElementText(Path path, PathExpressionOffsetMatchHandler<String> handler) 
+	throws XMLStreamException, IOException {
+		evaluateAll(path, PathExpressionXMLContentExtractor.RETURN_TYPE.text, handler, true);
+	}
+
+	private Map<PathExpression, ?> evaluate(Path path, PathExpressionXMLContentExtractor.RETURN_TYPE returnType) 
+	throws XMLStreamException, IOException {
+		MappedFile file = new MappedFile(path);
+		try {
+			return pathExpressionExtractor.evaluate(new XMLStreamReaderTemplate(factory, file.newInputStream()), 
+					returnType);
+		} finally {
+			file.close();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void evaluateAll(Path path, PathExpressionXMLContentExtractor.RETURN_TYPE returnType, 
+			PathExpressionOffsetMatchHandler<?> handler, boolean locate) throws XMLStreamException, IOException {
+		MappedFile file = new MappedFile(path);
+		try {
+			XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(factory, file.newInputStream());
+			ByteOffsetLocator locator = locate ? ByteOffsetLocator.forEncoding(file, template.getEncoding()) : null;
+			pathExpressionExtractor.evaluateAll(template, returnType, (PathExpressionOffsetMatchHandler<Object>) handler, 
+					locator);
+		} finally {
+			file.close();
+		}
+	}
+}
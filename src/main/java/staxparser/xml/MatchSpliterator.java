@@ -0,0 +1,96 @@
+package staxparser.xml;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import javax.xml.stream.XMLStreamException;
+
+/*
+ * A Spliterator over the matches of one document. The document can only be read sequentially, so trySplit() parses 
+ * the next batch of matches into an array that another thread may process, as Spliterators.spliteratorUnknownSize() 
+ * does for an Iterator. Batches grow by BATCH_UNIT with each split, so small documents are split into small batches 
+ * while large feeds amortize the hand off. XMLStreamExceptions are thrown as RuntimeExceptions
+ */
+final class MatchSpliterator<T> implements Spliterator<T> {
+	static final int BATCH_UNIT = 64;
+	static final int MAX_BATCH = 1 << 16;
+
+	private final PathExpressionXMLContentExtractor.MatchIterator matches;
+	private final boolean withExpressions;
+	private int batch;
+
+	/*
+	 * With expressions, each element is a PathExpressionMatch, otherwise the content
+	 */
+	MatchSpliterator(PathExpressionXMLContentExtractor.MatchIterator matches, boolean withExpressions) {
+		this.matches = matches;
+		this.withExpressions = withExpressions;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		if (!advance()) {
+			return false;
+		}
+		action.accept(current());
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super T> action) {
+		while (advance()) {
+			action.accept(current());
+		}
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+		Object[] buffer = new Object[n];
+		int size = 0;
+		while (size < n && advance()) {
+			buffer[size++] = current();
+		}
+		if (size == 0) {
+			return null;
+		}
+		batch = n;
+		return Spliterators.spliterator(buffer, 0, size, ORDERED);
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED;
+	}
+
+	/*
+	 * Release the template if the stream is closed before the end of the document
+	 */
+	void close() {
+		try {
+			matches.close();
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean advance() {
+		try {
+			return matches.next();
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T current() {
+		Object content = matches.getContent();
+		return (T) (withExpressions ? new PathExpressionMatch<Object>(matches.getExpression(), content) : content);
+	}
+}
@@ -0,0 +1,59 @@
+package staxparser.xml;
+
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The namespace declarations of the open elements, so the namespaces in scope at an element can be captured. 
+ * {@link javax.xml.namespace.NamespaceContext} cannot list the prefixes it binds.
+ */
+final class NamespaceStack {
+	/*
+	 * prefix, namespace URI pairs in document order. The default namespace has the prefix ""
+	 */
+	private String[] bindings = new String[16];
+	private int size;
+	private int[] counts = new int[16];
+	private int depth;
+
+	/**
+	 * Add the declarations of the element at a START_ELEMENT
+	 * @param reader the reader
+	 */
+	void push(XMLStreamReader reader) {
+		int count = reader.getNamespaceCount();
+		if (depth == counts.length) {
+			counts = Arrays.copyOf(counts, depth * 2);
+		}
+		counts[depth++] = count;
+		if (count == 0) {
+			return;
+		}
+		if (size + count * 2 > bindings.length) {
+			bindings = Arrays.copyOf(bindings, Math.max(bindings.length * 2, size + count * 2));
+		}
+		for (int i = 0; i < count; i++) {
+			String prefix = reader.getNamespacePrefix(i);
+			String namespaceURI = reader.getNamespaceURI(i);
+			bindings[size++] = (prefix == null) ? "" : prefix;
+			bindings[size++] = (namespaceURI == null) ? "" : namespaceURI;
+		}
+	}
+
+	/**
+	 * Remove the declarations of the element at an END_ELEMENT
+	 */
+	void pop() {
+		size -= counts[--depth] * 2;
+	}
+
+	/**
+	 *
+	 * @return the declarations in scope, as prefix, namespace URI pairs. A prefix may occur more than once; the 
+	 * last binding is in effect
+	 */
+	String[] snapshot() {
+		return Arrays.copyOf(bindings, size);
+	}
+}
@@ -0,0 +1,533 @@
+package staxparser.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+
+import staxparser.util.MappedFile;
+
+/**
+ * A wrapper for {@link PathExpressionXMLContentExtractor} parsing a single large XML file on several threads. The
+ * file must consist of many sibling records selected by a record {@link PathExpression}, e.g.,
+ * <code>/Catalog/Item</code>.
+ *
+ * <p>The file is memory mapped and parsed up to the first record, which gives the encoding and the start tags of
+ * the enclosing elements with their namespace declarations. The rest of the file is divided into partitions of about
+ * <code>partitionSize</code> bytes, each starting at a record start tag found by scanning the bytes for
+ * <code>&lt;</code> followed by the record's qualified name. Every partition is parsed by a task on the executor as
+ * a document of its own, wrapped in the enclosing start and end tags so the namespace context and the element paths
+ * are those of the whole file. Matches are passed to the handler on the calling thread, in document order.
+ *
+ * <p>The results are those of {@link PathExpressionXMLContentExtractor#extractAllElements(java.io.InputStream,
+ * Class, PathExpressionMatchHandler)}. The scan for record start tags skips comments, CDATA sections and processing
+ * instructions, but may still cut at a nested element with the record's name. Such a cut makes the partition before
+ * it malformed, so when a partition fails to parse, the file is parsed sequentially from the start of that partition
+ * on the calling thread, and a parse error there is reported as an XMLStreamException. The whole file is parsed
+ * sequentially if it is no larger than a partition, if its encoding is not UTF-8 or a single byte encoding, if it has
+ * a DOCTYPE declaration (entities may be declared), if an expression matches an element enclosing the records, or if
+ * no record is found.
+ *
+ * <p>The matches of a partition are held until the handler has received those of the partitions before it. While 
+ * the handler receives the matches of one partition, at most <code>maxPendingPartitions</code> further partitions 
+ * are parsed or waiting, so the results of up to <code>maxPendingPartitions + 1</code> partitions are held at once. 
+ * Their size depends on the matches per partition and the result type, and may exceed the partition size, e.g., 
+ * for Elements. The default is twice the number of available processors; lower it, or the partition size, to hold 
+ * less.
+ *
+ * <p>This class is thread safe.
+ *
+ * @see PathExpressionXMLContentExtractor
+ * @see MappedFileContentExtractor
+ */
+public class PartitionedFileContentExtractor {
+	/**
+	 * The default partition size, 8 MB
+	 */
+	public static final int DEFAULT_PARTITION_SIZE = 8 << 20;
+
+	private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+	/*
+	 * The states of the record scan: in text or a tag, after '<', in the record tag, after "<!", after "<!-", and in a
+	 * comment, CDATA section or processing instruction
+	 */
+	private static final int CONTENT = 0;
+	private static final int OPEN = 1;
+	private static final int TAG = 2;
+	private static final int DECLARATION = 3;
+	private static final int COMMENT_START = 4;
+	private static final int COMMENT = 5;
+	private static final int CDATA = 6;
+	private static final int PI = 7;
+
+	private final PathExpressionXMLContentExtractor pathExpressionExtractor;
+	private final PathExpressionMatcher matcher;
+	private final PathExpressionMatcher recordMatcher;
+	private final XMLInputFactory factory;
+	private final Executor executor;
+	private final long partitionSize;
+	private final int maxPendingPartitions;
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s
+	 * @param recordExpression selects the repeating records, which need not be matched by the expressions
+	 */
+	public PartitionedFileContentExtractor(Set<PathExpression> expressions, PathExpression recordExpression) {
+		this(expressions, recordExpression, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s
+	 * @param recordExpression selects the repeating records, which need not be matched by the expressions
+	 * @param executor runs a task for each partition
+	 */
+	public PartitionedFileContentExtractor(Set<PathExpression> expressions, PathExpression recordExpression,
+			Executor executor) {
+		this(expressions, recordExpression, XMLInputFactoryProvider.getFactory(), executor, DEFAULT_PARTITION_SIZE);
+	}
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s
+	 * @param recordExpression selects the repeating records, which need not be matched by the expressions
+	 * @param factory A configured XMLInputFactory used for every partition
+	 * @param executor runs a task for each partition
+	 * @param partitionSize the approximate number of bytes in a partition
+	 */
+	public PartitionedFileContentExtractor(Set<PathExpression> expressions, PathExpression recordExpression,
+			XMLInputFactory factory, Executor executor, long partitionSize) {
+		this(expressions, recordExpression, factory, executor, partitionSize,
+				2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param expressions A set of {@link PathExpression}s
+	 * @param recordExpression selects the repeating records, which need not be matched by the expressions
+	 * @param factory A configured XMLInputFactory used for every partition
+	 * @param executor runs a task for each partition
+	 * @param partitionSize the approximate number of bytes in a partition
+	 * @param maxPendingPartitions the maximum number of partitions parsed ahead of the handler
+	 */
+	public PartitionedFileContentExtractor(Set<PathExpression> expressions, PathExpression recordExpression,
+			XMLInputFactory factory, Executor executor, long partitionSize, int maxPendingPartitions) {
+		if (recordExpression.getAttribute() != null) {
+			throw new IllegalArgumentException("the record expression cannot select an attribute");
+		}
+		if (partitionSize <= 0) {
+			throw new IllegalArgumentException("partition size must be positive");
+		}
+		if (maxPendingPartitions <= 0) {
+			throw new IllegalArgumentException("maxPendingPartitions must be positive");
+		}
+		this.pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions, factory);
+		this.matcher = (expressions == null) ? null : new PathExpressionMatcher(expressions);
+		this.recordMatcher = new PathExpressionMatcher(Collections.singleton(recordExpression));
+		this.factory = factory;
+		this.executor = executor;
+		this.partitionSize = partitionSize;
+		this.maxPendingPartitions = maxPendingPartitions;
+	}
+
+	/**
+	 * Passes every element matching any {@link PathExpression} to the handler, in document order
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives each match on the calling thread
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void extractAllElements(Path path, Class<T> requiredType, PathExpressionMatchHandler<T> handler)
+	throws XMLStreamException, IOException {
+		evaluateAll(path, PathExpressionXMLContentExtractor.returnTypeFor(requiredType),
+				(PathExpressionMatchHandler<Object>) handler);
+	}
+
+	/**
+	 * Passes the text of every element matching any {@link PathExpression} to the handler, in document order
+	 * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param handler receives each match on the calling thread
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public void extractAllElementText(Path path, PathExpressionMatchHandler<String> handler)
+	throws XMLStreamException, IOException {
+		evaluateAll(path, PathExpressionXMLContentExtractor.RETURN_TYPE.text,
+				(PathExpressionMatchHandler<Object>) (PathExpressionMatchHandler<?>) handler);
+	}
+
+	private void evaluateAll(Path path, PathExpressionXMLContentExtractor.RETURN_TYPE returnType,
+			PathExpressionMatchHandler<Object> handler) throws XMLStreamException, IOException {
+		MappedFile file = new MappedFile(path);
+		try {
+			Layout layout = (file.size() <= partitionSize) ? null : scan(file);
+			if (layout == null) {
+				pathExpressionExtractor.evaluateAll(new XMLStreamReaderTemplate(factory, file.newInputStream()),
+						returnType, handler);
+			} else {
+				evaluatePartitions(file, layout, partition(file, layout), returnType, handler);
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/*
+	 * The offsets of the record start tags beginning each partition after the first, which holds the prolog
+	 */
+	private List<Long> partition(MappedFile file, Layout layout) throws IOException {
+		List<Long> starts = new ArrayList<Long>();
+		long start = layout.firstRecord;
+		while (start >= 0) {
+			starts.add(start);
+			start = nextRecord(file, start, start + partitionSize, layout.recordTag);
+		}
+		return starts;
+	}
+
+	private void evaluatePartitions(final MappedFile file, final Layout layout, List<Long> starts,
+			final PathExpressionXMLContentExtractor.RETURN_TYPE returnType, PathExpressionMatchHandler<Object> handler)
+	throws XMLStreamException, IOException {
+		List<FutureTask<List<PathExpressionMatch<Object>>>> tasks =
+				new ArrayList<FutureTask<List<PathExpressionMatch<Object>>>>(starts.size() + 1);
+		for (int i = 0; i <= starts.size(); i++) {
+			final long start = partitionStart(starts, i);
+			final long end = (i < starts.size()) ? starts.get(i) : file.size();
+			final boolean first = (i == 0);
+			final boolean last = (i == starts.size());
+			tasks.add(new FutureTask<List<PathExpressionMatch<Object>>>(
+					new Callable<List<PathExpressionMatch<Object>>>() {
+				@Override
+				public List<PathExpressionMatch<Object>> call() throws XMLStreamException {
+					final List<PathExpressionMatch<Object>> results = new ArrayList<PathExpressionMatch<Object>>();
+					evaluatePartition(file, layout, start, end, first, last, returnType,
+							new PathExpressionMatchHandler<Object>() {
+						@Override
+						public void match(PathExpression expression, Object content) {
+							results.add(new PathExpressionMatch<Object>(expression, content));
+						}
+					});
+					return results;
+				}
+			}));
+		}
+		/*
+		 * The first partition that failed to parse, or -1
+		 */
+		int failed = -1;
+		try {
+			int submitted = 0;
+			for (; submitted < Math.min(maxPendingPartitions, tasks.size()); submitted++) {
+				executor.execute(tasks.get(submitted));
+			}
+			for (int i = 0; i < tasks.size(); i++) {
+				List<PathExpressionMatch<Object>> results;
+				try {
+					results = tasks.get(i).get();
+				} catch (ExecutionException e) {
+					if (!(e.getCause() instanceof XMLStreamException)) {
+						throw e;
+					}
+					failed = i;
+					break;
+				}
+				tasks.set(i, null);
+				if (submitted < tasks.size()) {
+					executor.execute(tasks.get(submitted++));
+				}
+				for (PathExpressionMatch<Object> match : results) {
+					handler.match(match.getExpression(), match.getContent());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new XMLStreamException("interrupted while waiting for results", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new XMLStreamException(cause);
+		} finally {
+			for (FutureTask<?> task : tasks) {
+				if (task != null) {
+					task.cancel(true);
+				}
+			}
+		}
+		if (failed >= 0) {
+			/*
+			 * The partitions before it were cut at records and their matches are already passed to the handler. The
+			 * failed partition also starts at a record, since a wrong cut would have made the one before it malformed
+			 */
+			evaluatePartition(file, layout, partitionStart(starts, failed), file.size(), failed == 0, true,
+					returnType, handler);
+		}
+	}
+
+	private static long partitionStart(List<Long> starts, int partition) {
+		return (partition == 0) ? 0 : starts.get(partition - 1);
+	}
+
+	/*
+	 * Parse the bytes from start to end, wrapped in the enclosing start and end tags. The first partition starts with
+	 * the file's own prolog and start tags, and the last ends with its end tags
+	 */
+	private void evaluatePartition(MappedFile file, Layout layout, long start, long end, boolean first, boolean last,
+			PathExpressionXMLContentExtractor.RETURN_TYPE returnType, PathExpressionMatchHandler<Object> handler)
+	throws XMLStreamException {
+		InputStream input = file.newInputStream(start, end);
+		if (!last) {
+			input = new SequenceInputStream(input, new ByteArrayInputStream(layout.endTags));
+		}
+		XMLStreamReaderTemplate template;
+		if (first) {
+			template = new XMLStreamReaderTemplate(factory, input);
+		} else {
+			input = new SequenceInputStream(new ByteArrayInputStream(layout.startTags), input);
+			template = new XMLStreamReaderTemplate(factory, input, layout.encoding);
+		}
+		try {
+			pathExpressionExtractor.evaluateAll(template, returnType, handler);
+		} catch (RuntimeException e) {
+			/*
+			 * The reader may fail this way after a parse error in element content
+			 */
+			throw new XMLStreamException("failed to parse the partition at byte offset " + start, e);
+		}
+	}
+
+	/*
+	 * Parse the file up to the first record. Returns null if the file cannot be partitioned
+	 */
+	private Layout scan(MappedFile file) throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(factory, file.newInputStream());
+		try {
+			String encoding = template.getEncoding();
+			ByteOffsetLocator locator = ByteOffsetLocator.forEncoding(file, encoding);
+			if (locator == null || matcher == null) {
+				return null;
+			}
+			XMLStreamReader reader = template.xmlStreamReader;
+			PathExpressionMatcher.Cursor records = recordMatcher.newCursor();
+			PathExpressionMatcher.Cursor cursor = matcher.newCursor();
+			List<String> names = new ArrayList<String>();
+			StringBuilder startTags = new StringBuilder();
+			List<Integer> startTagLengths = new ArrayList<Integer>();
+			/*
+			 * The open elements matched by an element expression
+			 */
+			BitSet matched = new BitSet();
+			int event;
+			while ((event = template.next()) != XMLEvent.END_DOCUMENT) {
+				switch (event) {
+				case XMLEvent.DTD:
+					return null;
+				case XMLEvent.START_ELEMENT:
+					String name = qualifiedName(reader.getPrefix(), reader.getLocalName());
+					if (records.startElement(reader.getLocalName(), reader.getNamespaceURI()) > 0) {
+						long firstRecord = locator.startTagOffset(reader.getLocation());
+						if (firstRecord < 0 || names.isEmpty() || !matched.isEmpty()) {
+							return null;
+						}
+						return new Layout(encoding, firstRecord, startTags.toString(), names, name);
+					}
+					int matches = cursor.startElement(reader.getLocalName(), reader.getNamespaceURI());
+					for (int i = 0; i < matches; i++) {
+						if (matcher.getAttribute(cursor.match(i)) == null) {
+							matched.set(names.size());
+						}
+					}
+					names.add(name);
+					startTagLengths.add(startTags.length());
+					appendStartTag(startTags, name, reader);
+					if (!records.canMatchDescendants()) {
+						template.skipElement();
+						endElement(records, cursor, names, startTags, startTagLengths, matched);
+					}
+					break;
+				case XMLEvent.END_ELEMENT:
+					endElement(records, cursor, names, startTags, startTagLengths, matched);
+					break;
+				}
+			}
+			return null;
+		} catch (UnsupportedEncodingException e) {
+			return null;
+		} finally {
+			template.close();
+		}
+	}
+
+	private static void endElement(PathExpressionMatcher.Cursor records, PathExpressionMatcher.Cursor cursor,
+			List<String> names, StringBuilder startTags, List<Integer> startTagLengths, BitSet matched) {
+		records.endElement();
+		cursor.endElement();
+		int depth = names.size() - 1;
+		names.remove(depth);
+		startTags.setLength(startTagLengths.remove(depth));
+		matched.clear(depth);
+	}
+
+	/*
+	 * A start tag declaring the element's own namespaces. Other attributes are omitted
+	 */
+	private static void appendStartTag(StringBuilder sb, String name, XMLStreamReader reader) {
+		sb.append('<').append(name);
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			String prefix = reader.getNamespacePrefix(i);
+			String uri = reader.getNamespaceURI(i);
+			sb.append(' ').append((prefix == null || prefix.length() == 0) ? "xmlns" : "xmlns:" + prefix).append("=\"");
+			for (int j = 0; uri != null && j < uri.length(); j++) {
+				char c = uri.charAt(j);
+				if (c == '&') {
+					sb.append("&amp;");
+				} else if (c == '<') {
+					sb.append("&lt;");
+				} else if (c == '"') {
+					sb.append("&quot;");
+				} else {
+					sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+		sb.append('>');
+	}
+
+	private static String qualifiedName(String prefix, String localName) {
+		return (prefix == null || prefix.length() == 0) ? localName : prefix + ":" + localName;
+	}
+
+	/*
+	 * The offset of the first '<' at or after target followed by the record name and a delimiter, or -1. The scan
+	 * starts at an earlier record start tag, so it knows when it is inside a comment, CDATA section or processing
+	 * instruction, where the record name may appear as text
+	 */
+	private static long nextRecord(MappedFile file, long from, long target, byte[] tag) throws IOException {
+		InputStream input = file.newInputStream(from, file.size());
+		byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+		int state = CONTENT;
+		/*
+		 * The bytes of the record tag or of the terminator matched so far
+		 */
+		int matched = 0;
+		long tagStart = -1;
+		long offset = from;
+		int n;
+		while ((n = input.read(buffer)) > 0) {
+			for (int i = 0; i < n; i++) {
+				if (state == CONTENT) {
+					while (i < n && buffer[i] != '<') {
+						i++;
+					}
+					if (i < n) {
+						state = OPEN;
+						tagStart = offset + i;
+					}
+					continue;
+				}
+				byte b = buffer[i];
+				switch (state) {
+				case OPEN:
+					if (b == '!') {
+						state = DECLARATION;
+					} else if (b == '?') {
+						state = PI;
+						matched = 0;
+					} else if (tagStart >= target && b == tag[1]) {
+						state = TAG;
+						matched = 2;
+					} else {
+						state = CONTENT;
+					}
+					break;
+				case TAG:
+					if (matched < tag.length) {
+						if (b == tag[matched]) {
+							matched++;
+						} else {
+							state = CONTENT;
+						}
+					} else if (b == '>' || b == '/' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+						return tagStart;
+					} else {
+						state = CONTENT;
+					}
+					break;
+				case DECLARATION:
+					state = (b == '-') ? COMMENT_START : (b == '[') ? CDATA : CONTENT;
+					matched = 0;
+					break;
+				case COMMENT_START:
+					state = COMMENT;
+					break;
+				case COMMENT:
+				case CDATA:
+					if (b == ((state == COMMENT) ? '-' : ']')) {
+						matched = Math.min(matched + 1, 2);
+					} else {
+						if (b == '>' && matched == 2) {
+							state = CONTENT;
+						}
+						matched = 0;
+					}
+					break;
+				case PI:
+					if (b == '>' && matched == 1) {
+						state = CONTENT;
+					}
+					matched = (b == '?') ? 1 : 0;
+					break;
+				}
+			}
+			offset += n;
+		}
+		return -1;
+	}
+
+	/*
+	 * What the prefix parse learned about the file
+	 */
+	private static final class Layout {
+		final String encoding;
+		final long firstRecord;
+		final byte[] startTags;
+		final byte[] endTags;
+		final byte[] recordTag;
+
+		Layout(String encoding, long firstRecord, String startTags, List<String> names, String recordName)
+				throws UnsupportedEncodingException {
+			this.encoding = (encoding == null) ? "UTF-8" : encoding;
+			this.firstRecord = firstRecord;
+			this.startTags = startTags.getBytes(this.encoding);
+			StringBuilder sb = new StringBuilder();
+			for (int i = names.size() - 1; i >= 0; i--) {
+				sb.append("</").append(names.get(i)).append('>');
+			}
+			this.endTags = sb.toString().getBytes(this.encoding);
+			this.recordTag = ("<" + recordName).getBytes(this.encoding);
+		}
+	}
+}
@@ -2,8 +2,10 @@ package staxparser.xml;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
 
 /**
@@ -14,7 +16,8 @@ import javax.xml.namespace.QName;
  * <p>
  * // Relative path. Selects any descendant of the root that matches
  * <p>
- * @ Selects attributes
+ * @ Selects attributes. The attribute name follows the last element step and matches
+ * an attribute with that local name in any namespace
  * 
  * <p>
  * Examples :<br>
@@ -34,17 +37,13 @@ import javax.xml.namespace.QName;
  * 
  */
 public class PathExpression {
-	/*
-	 *  Using possessive quantifier on nested \w quantifier to avoid catastrophic backtrack.
-	 *  Avoids giving back matched chars on backtrack when no match.
-	 *  See http://www.regular-expressions.info/catastrophic.html
-	 */
-    private static final String patternStr = "^/|(/{1,2})((\\{([\\w:/.])+\\})?\\w++(/?))*(\\{([\\w:/.])+\\})?\\w+(@\\w+)?$";
+    /**
+     * The maximum number of expressions cached by {@link #valueOf(String)}
+     */
+    public static final int MAX_CACHE_SIZE = 1024;
 
-    private static final Pattern pattern = Pattern.compile(patternStr);
-    
-    private static final Pattern validChars = Pattern.compile("[\\w:\\.\\{\\}\\/@]+");
-  
+    private static final ConcurrentMap<String, PathExpression> cache = 
+        new ConcurrentHashMap<String, PathExpression>();
 
     private final String selector;
 
@@ -52,6 +51,15 @@ public class PathExpression {
 
     private final boolean relative;
 
+    private final String attribute;
+
+    /*
+     * The steps as an array for matching, and the hash of the last local name for fast rejection
+     */
+    private final QName[] steps;
+
+    private final int lastLocalNameHash;
+
     /**
      * 
      * @param selector
@@ -71,11 +79,41 @@ public class PathExpression {
             selector = "//" + selector;
         }
 
-        validateSelector(selector);
+        SelectorParser parser = new SelectorParser(selector);
         this.selector = selector;
-        qnames = parse(selector);
+        qnames = parser.qnames;
+        attribute = parser.attribute;
 
-        relative = selector.startsWith("//");
+        relative = parser.relative;
+        steps = qnames.toArray(new QName[qnames.size()]);
+        lastLocalNameHash = lastLocalNameHash(steps);
+    }
+
+    /**
+     * Returns a shared instance for the selector. Expressions are immutable, so callers creating expressions from
+     * the same configuration strings may share them. Up to {@link #MAX_CACHE_SIZE} selectors are cached, after which
+     * new instances are returned.
+     * 
+     * @param selector
+     *            A valid selector. If no prefix is provided, it will be treated
+     *            as a relative path.
+     * @return the expression
+     */
+    public static PathExpression valueOf(String selector) {
+        if (selector == null) {
+            throw new IllegalArgumentException("selector cannot be null");
+        }
+        PathExpression expression = cache.get(selector);
+        if (expression == null) {
+            expression = new PathExpression(selector);
+            if (cache.size() < MAX_CACHE_SIZE) {
+                PathExpression cached = cache.putIfAbsent(selector, expression);
+                if (cached != null) {
+                    expression = cached;
+                }
+            }
+        }
+        return expression;
     }
 
     /**
@@ -89,9 +127,29 @@ public class PathExpression {
      *            absolute
      */
     public PathExpression(List<QName> qnames, boolean relative) {
+        this(qnames, relative, null);
+    }
+
+    /**
+     * Creates a relative or absolute PathExpression selecting an attribute
+     * 
+     * @param qnames
+     *            A list of {@link javax.xml.namespace.QName}. The
+     *            PathExpression will be built from the list.
+     * @param relative
+     *            Indicates whether the expression should be relative or
+     *            absolute
+     * @param attribute
+     *            The local name of the attribute of the last element, or
+     *            <code>null</code> to select the element
+     */
+    public PathExpression(List<QName> qnames, boolean relative, String attribute) {
         this.qnames = qnames;
         this.relative = relative;
+        this.attribute = attribute;
         this.selector = buildSelector();
+        steps = qnames.toArray(new QName[qnames.size()]);
+        lastLocalNameHash = lastLocalNameHash(steps);
     }
 
     /**
@@ -102,9 +160,7 @@ public class PathExpression {
      *            PathExpression will be built from the list.
      */
     public PathExpression(List<QName> qnames) {
-        this.qnames = qnames;
-        this.relative = false;
-        this.selector = buildSelector();
+        this(qnames, false, null);
     }
 
     @Override
@@ -132,7 +188,8 @@ public class PathExpression {
 
     /**
      * <p>
-     * Creates a new instance with the QName appended to the current path.
+     * Creates a new instance with the QName appended to the current path. An
+     * attribute selector is not carried over.
      * <p>
      * <code>
      * /* result is "/foo/bar" *&#47;<br> 
@@ -153,7 +210,8 @@ public class PathExpression {
 
     /**
      * <p>
-     * Creates a new instance removing the last node from the path
+     * Creates a new instance removing the last node from the path. An
+     * attribute selector is not carried over.
      * <p>
      * <code>
      * /* result is "/foo" *&#47;<br> 
@@ -213,85 +271,71 @@ public class PathExpression {
      * @return
      */
     public boolean matches(PathExpression expression) {
+        int i = steps.length - 1;
+        int j = expression.steps.length - 1;
 
-        if (!(this.relative || expression.relative) && qnames.size() != expression.qnames.size()) {
+        if (!(this.relative || expression.relative) && i != j) {
             return false;
         }
 
-        boolean match = true;
-
-        List<QName> qnames1 = new ArrayList<QName>(this.qnames);
-        List<QName> qnames2 = new ArrayList<QName>(expression.qnames);
+        if (attribute != null && expression.attribute != null && !attribute.equals(expression.attribute)) {
+            return false;
+        }
 
-        while (match && qnames1.size() > 0 && qnames2.size() > 0) {
-            int last1 = qnames1.size() - 1;
-            int last2 = qnames2.size() - 1;
-            QName qn1 = qnames1.get(last1);
-            QName qn2 = qnames2.get(last2);
+        if (i >= 0 && j >= 0 && lastLocalNameHash != expression.lastLocalNameHash) {
+            return false;
+        }
 
-            match = qn1.equals(qn2);
-            /**
-             * No namespace matches any namespace
-             */
-            if (!match) {
-                if (qn1.getLocalPart().equals(qn2.getLocalPart())) {
-                    match = (qn1.getNamespaceURI().length() == 0 || qn2.getNamespaceURI().length() == 0);
-                }
+        /*
+         * Compare from the last step until either path is exhausted
+         */
+        for (; i >= 0 && j >= 0; i--, j--) {
+            if (!stepMatches(steps[i], expression.steps[j])) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            /**
-             * if match keep going
-             */
-            if (match) {
-                qnames1.remove(last1);
-                qnames2.remove(last2);
-            }
+    /*
+     * No namespace matches any namespace
+     */
+    private static boolean stepMatches(QName qn1, QName qn2) {
+        if (!qn1.getLocalPart().equals(qn2.getLocalPart())) {
+            return false;
         }
-        // }
-        return match;
+        String ns1 = qn1.getNamespaceURI();
+        String ns2 = qn2.getNamespaceURI();
+        return ns1.length() == 0 || ns2.length() == 0 || ns1.equals(ns2);
+    }
+
+    private static int lastLocalNameHash(QName[] steps) {
+        return (steps.length == 0) ? 0 : steps[steps.length - 1].getLocalPart().hashCode();
     }
 
     /**
-     * Convert a selector to a List&lt;QName&gt;
+     * Convert a selector to a List&lt;QName&gt;. An attribute selector is not
+     * included
      * 
      * @param selector
      * @return - QName list
      */
     static List<QName> parse(String selector) {
-        // {http://com.example/order}foo/{http://com.example/orderitem}bar
         if (selector == null) {
             throw new IllegalArgumentException("constructor argument cannot be null");
         }
-        selector = selector.trim();
-        validateSelector(selector);
-        List<QName> qnames = new ArrayList<QName>();
-        while (selector.length() > 0) {
-            while (selector.startsWith("/")) {
-                selector = selector.replaceFirst("/", "");
-            }
+        return new SelectorParser(selector.trim()).qnames;
+    }
 
-            int last = selector.indexOf('/');
-            
-            if (last < 0) {
-                last = selector.length();
-            }
-            
-            if (selector.startsWith("{")) {
-                int closeBrace = selector.indexOf('}');
-                int remaining = selector.substring(closeBrace).indexOf('/');
-                if (remaining > 0) {
-                    last = closeBrace + remaining;
-                } else {
-                    last = selector.length();
-                }
-            }
-            String qnameStr = selector.substring(0, last);
-            if (qnameStr.length() > 0) {
-                qnames.add(QName.valueOf(qnameStr));
-            }
-            selector = selector.substring(last);
-        }
-        return qnames;
+    /**
+     * Returns the attribute name of a selector such as <code>/foo/bar@attr</code>
+     * 
+     * @param selector
+     * @return - the attribute name, or <code>null</code> if the selector
+     *         selects an element
+     */
+    static String parseAttribute(String selector) {
+        return new SelectorParser(selector.trim()).attribute;
     }
 
     /*
@@ -300,22 +344,18 @@ public class PathExpression {
     List<QName> getQNames() {
         return qnames;
     }
+
+    /**
+     * 
+     * @return the local name of the selected attribute, or <code>null</code>
+     *         if the expression selects an element
+     */
+    String getAttribute() {
+        return attribute;
+    }
     
     static void validateSelector(String selector) {
-    	/*
-    	 * Got bit by  http://www.regular-expressions.info/catastrophic.html
-    	 * First do a basic character validation
-    	 */
-    	if (!validChars.matcher(selector).matches()) {
-            throw new IllegalArgumentException(selector + " is not a valid path expression");
-        }
-    	
-    	/*
-    	 * Now check the format 
-    	 */
-    	if (!pattern.matcher(selector).matches()) {
-            throw new IllegalArgumentException(selector + " is not a valid path expression");
-        }
+        new SelectorParser(selector);
     }
 
     boolean isRelative() {
@@ -338,7 +378,88 @@ public class PathExpression {
             }
         }
 
+        if (attribute != null) {
+            sb.append('@').append(attribute);
+        }
+
         return sb.toString();
     }
 
+    /*
+     * Parses and validates a selector in a single pass:
+     * 
+     * "/" | ("/" | "//") step ("/" step)* ("@" name)?
+     * step = ("{" namespace "}")? name
+     * 
+     * Names are word characters, namespaces are word characters, ':', '/' and '.'
+     */
+    private static final class SelectorParser {
+        final List<QName> qnames = new ArrayList<QName>();
+        final boolean relative;
+        String attribute;
+
+        SelectorParser(String selector) {
+            int length = selector.length();
+            if (length == 0 || selector.charAt(0) != '/') {
+                throw invalid(selector);
+            }
+            relative = length > 1 && selector.charAt(1) == '/';
+            if (length == 1) {
+                return;
+            }
+            int i = relative ? 2 : 1;
+            while (true) {
+                String namespaceURI = XMLConstants.NULL_NS_URI;
+                if (i < length && selector.charAt(i) == '{') {
+                    int start = ++i;
+                    while (i < length && isNamespaceChar(selector.charAt(i))) {
+                        i++;
+                    }
+                    if (i == start || i == length || selector.charAt(i) != '}') {
+                        throw invalid(selector);
+                    }
+                    namespaceURI = selector.substring(start, i++);
+                }
+                int start = i;
+                while (i < length && isWordChar(selector.charAt(i))) {
+                    i++;
+                }
+                if (i == start) {
+                    throw invalid(selector);
+                }
+                qnames.add(new QName(namespaceURI, selector.substring(start, i)));
+                if (i == length) {
+                    return;
+                }
+                char c = selector.charAt(i++);
+                if (c == '@') {
+                    start = i;
+                    while (i < length && isWordChar(selector.charAt(i))) {
+                        i++;
+                    }
+                    if (i == start || i != length) {
+                        throw invalid(selector);
+                    }
+                    attribute = selector.substring(start);
+                    return;
+                }
+                if (c != '/') {
+                    throw invalid(selector);
+                }
+            }
+        }
+
+        private static boolean isWordChar(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+        }
+
+        private static boolean isNamespaceChar(char c) {
+            return isWordChar(c) || c == ':' || c == '/' || c == '.';
+        }
+
+        private static IllegalArgumentException invalid(String selector) {
+            return new IllegalArgumentException(selector + " is not a valid path expression");
+        }
+    }
+
 }
@@ -0,0 +1,118 @@
+package staxparser.xml;
+
+import java.util.Collections;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Finds the elements matching a {@link PathExpression} in turn, matching the path of each element from the document
+ * root rather than its name alone. Element content is not read and subtrees in which the expression cannot match are
+ * skipped. For an attribute expression, the elements having the attribute are found.
+ *
+ * <p>A cursor is created by {@link XMLStreamReaderTemplate#newCursor(PathExpression)} at the start of a document and
+ * holds the path of the reader's position. While it is in use, the reader must only be moved by its methods:
+ * {@link #next()} positions the reader at the START_ELEMENT of the next match, and the match may be read with
+ * {@link #getElement(Class)}, {@link #getElementText()} or {@link #skipElement()}. Calling next() again without
+ * reading the match continues with its descendants.
+ *
+ * <p>This class is not thread safe.
+ *
+ * @see XMLStreamReaderTemplate#count(PathExpression)
+ */
+public final class PathExpressionCursor {
+	private final XMLStreamReaderTemplate template;
+	private final XMLStreamReader xmlStreamReader;
+	private final PathExpressionMatcher matcher;
+	private final PathExpressionMatcher.Cursor cursor;
+	private final int[] counts = new int[1];
+	private boolean atMatch;
+
+	PathExpressionCursor(XMLStreamReaderTemplate template, PathExpression expression) {
+		this.template = template;
+		this.xmlStreamReader = template.xmlStreamReader;
+		this.matcher = new PathExpressionMatcher(Collections.singleton(expression));
+		this.cursor = matcher.newCursor();
+	}
+
+	/**
+	 * Position the reader at the next matching element
+	 * @return <code>true</code> if an element was found, <code>false</code> at the end of the document
+	 * @throws XMLStreamException
+	 */
+	public boolean next() throws XMLStreamException {
+		validateReader();
+		atMatch = PathExpressionXMLContentExtractor.evaluateCounts(template, matcher, cursor, counts, true);
+		return atMatch;
+	}
+
+	/**
+	 * Count the remaining matching elements, reading to the end of the document. A match found by
+	 * {@link #next()} and not read is not counted, but its matching descendants are
+	 * @return the number of elements
+	 * @throws XMLStreamException
+	 */
+	public int count() throws XMLStreamException {
+		validateReader();
+		counts[0] = 0;
+		PathExpressionXMLContentExtractor.evaluateCounts(template, matcher, cursor, counts, false);
+		atMatch = false;
+		return counts[0];
+	}
+
+	/**
+	 * Read the current match. The reader is positioned at its END_ELEMENT
+	 * @param requiredType The result type one of: <code>String.class, Element.class, Node.class</code>
+	 * @return the element
+	 * @throws XMLStreamException
+	 */
+	public <T> T getElement(Class<T> requiredType) throws XMLStreamException {
+		validateMatch();
+		T element = template.getElement(requiredType);
+		endMatch();
+		return element;
+	}
+
+	/**
+	 * Read the text of the current match, which must contain only text. The reader is positioned at its END_ELEMENT
+	 * @return the text
+	 * @throws XMLStreamException
+	 */
+	public String getElementText() throws XMLStreamException {
+		validateMatch();
+		String text = template.getElementText();
+		endMatch();
+		return text;
+	}
+
+	/**
+	 * Skip the current match, including its descendants. The reader is positioned at its END_ELEMENT
+	 * @throws XMLStreamException
+	 */
+	public void skipElement() throws XMLStreamException {
+		validateMatch();
+		template.skipElement();
+		endMatch();
+	}
+
+	private void endMatch() {
+		cursor.endElement();
+		atMatch = false;
+	}
+
+	private void validateMatch() {
+		validateReader();
+		if (!atMatch) {
+			throw new IllegalStateException("the cursor is not at a matching element");
+		}
+	}
+
+	/*
+	 * reset() replaces the reader
+	 */
+	private void validateReader() {
+		if (template.xmlStreamReader != xmlStreamReader) {
+			throw new IllegalStateException("the template has been reset");
+		}
+	}
+}
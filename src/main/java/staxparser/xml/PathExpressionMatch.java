@@ -0,0 +1,37 @@
+package staxparser.xml;
+
+/**
+ * An element matched by a {@link PathExpression}, as published by {@link ElementPublisher}
+ * @param <T> the content type: <code>String</code> for element text or element strings, 
+ * <code>Element</code> or <code>Node</code>
+ */
+public final class PathExpressionMatch<T> {
+	private final PathExpression expression;
+	private final T content;
+
+	PathExpressionMatch(PathExpression expression, T content) {
+		this.expression = expression;
+		this.content = content;
+	}
+
+	/**
+	 * 
+	 * @return the matching expression
+	 */
+	public PathExpression getExpression() {
+		return expression;
+	}
+
+	/**
+	 * 
+	 * @return the content of the matched element, or <code>null</code> if it could not be read
+	 */
+	public T getContent() {
+		return content;
+	}
+
+	@Override
+	public String toString() {
+		return expression + " = " + content;
+	}
+}
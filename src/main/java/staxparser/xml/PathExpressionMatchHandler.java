@@ -0,0 +1,19 @@
+package staxparser.xml;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Callback interface used with {@link PathExpressionXMLContentExtractor} to receive every match in a document 
+ * as the parser reaches it
+ * @param <T> the content type: <code>String</code> for element text or element strings, 
+ * <code>Element</code> or <code>Node</code>
+ */
+public interface PathExpressionMatchHandler<T> {
+    /**
+     * 
+     * @param expression the matching expression
+     * @param content the content of the matched element
+     * @throws XMLStreamException
+     */
+    public void match(PathExpression expression, T content) throws XMLStreamException;
+}
@@ -0,0 +1,359 @@
+package staxparser.xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+/**
+ * A set of {@link PathExpression}s compiled into an automaton over element names. The expressions are merged into
+ * a trie of steps with two roots: absolute expressions start at the document root while relative expressions
+ * (<code>//</code>) may start below any element, so the relative root is implicitly active at every depth.
+ *
+ * <p>Matching state is held by a {@link Cursor}, which keeps the active trie nodes of every open element on a
+ * reusable int stack. Nodes with many children index them by local name, so per element the work is proportional to
+ * the number of active states and candidate steps rather than the number of expressions, and no objects are
+ * allocated.
+ *
+ * <p>An expression selecting an attribute (<code>/foo/bar@attr</code>) matches its last element step, the caller reads
+ * the attribute value at START_ELEMENT.
+ *
+ * <p>Namespaces follow {@link PathExpression#matches(PathExpression)}: a step without a namespace matches the local
+ * name in any namespace, as does an element without a namespace.
+ *
+ * <p>Instances are immutable and thread safe. Cursors are not.
+ */
+final class PathExpressionMatcher {
+	private static final int ABSOLUTE_ROOT = 0;
+	private static final int RELATIVE_ROOT = 1;
+	private static final int[] NONE = new int[0];
+	/*
+	 * Children are indexed by local name above this count
+	 */
+	private static final int INDEX_THRESHOLD = 4;
+
+	private final PathExpression[] expressions;
+	private final Map<PathExpression, Integer> indexes;
+	private final String[] attributes;
+	private final boolean hasAttributes;
+	private final String[] localNames;
+	private final String[] namespaces;
+	private final int[][] children;
+	private final Map<String, int[]>[] childIndex;
+	private final int[][] accepts;
+	private final boolean hasRelative;
+
+	/**
+	 *
+	 * @param expressions the expressions to compile. The iteration order assigns each expression its index
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	PathExpressionMatcher(Collection<PathExpression> expressions) {
+		this.expressions = expressions.toArray(new PathExpression[expressions.size()]);
+		this.attributes = new String[this.expressions.length];
+		this.indexes = new HashMap<PathExpression, Integer>(this.expressions.length * 2);
+
+		Builder builder = new Builder();
+		boolean relative = false;
+		boolean attribute = false;
+		for (int i = 0; i < this.expressions.length; i++) {
+			PathExpression expression = this.expressions[i];
+			indexes.put(expression, i);
+			attributes[i] = expression.getAttribute();
+			attribute |= attributes[i] != null;
+			List<QName> qnames = expression.getQNames();
+			if (qnames.isEmpty()) {
+				/*
+				 * "/" never selects an element
+				 */
+				continue;
+			}
+			int node = expression.isRelative() ? RELATIVE_ROOT : ABSOLUTE_ROOT;
+			relative |= expression.isRelative();
+			for (QName qname : qnames) {
+				node = builder.child(node, qname.getLocalPart(), qname.getNamespaceURI());
+			}
+			builder.accept(node, i);
+		}
+
+		hasRelative = relative;
+		hasAttributes = attribute;
+		int size = builder.localNames.size();
+		localNames = builder.localNames.toArray(new String[size]);
+		namespaces = builder.namespaces.toArray(new String[size]);
+		children = new int[size][];
+		accepts = new int[size][];
+		childIndex = new Map[size];
+		for (int node = 0; node < size; node++) {
+			children[node] = toArray(builder.children.get(node));
+			accepts[node] = toArray(builder.accepts.get(node));
+			if (children[node].length > INDEX_THRESHOLD) {
+				childIndex[node] = indexByLocalName(children[node]);
+			}
+		}
+	}
+
+	/**
+	 *
+	 * @return the number of compiled expressions
+	 */
+	int size() {
+		return expressions.length;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the expression
+	 */
+	PathExpression getExpression(int index) {
+		return expressions[index];
+	}
+
+	/**
+	 *
+	 * @param expression an expression
+	 * @return the index of the expression, or -1 if it was not compiled
+	 */
+	int indexOf(PathExpression expression) {
+		Integer index = indexes.get(expression);
+		return (index == null) ? -1 : index;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the local name of the attribute selected by the expression, or <code>null</code> if it selects an element
+	 */
+	String getAttribute(int index) {
+		return attributes[index];
+	}
+
+	/**
+	 *
+	 * @return <code>true</code> if any expression selects an attribute
+	 */
+	boolean hasAttributes() {
+		return hasAttributes;
+	}
+
+	/**
+	 *
+	 * @return a new cursor positioned at the document root
+	 */
+	Cursor newCursor() {
+		return new Cursor();
+	}
+
+	/*
+	 * Step comparison. No namespace on either side matches any namespace
+	 */
+	private boolean stepMatches(int node, String localName, String namespaceURI) {
+		String name = localNames[node];
+		if (name != localName && !name.equals(localName)) {
+			return false;
+		}
+		String namespace = namespaces[node];
+		return namespace == namespaceURI || namespace.length() == 0 || namespaceURI.length() == 0 
+				|| namespace.equals(namespaceURI);
+	}
+
+	private Map<String, int[]> indexByLocalName(int[] nodes) {
+		Map<String, int[]> index = new HashMap<String, int[]>();
+		for (int node : nodes) {
+			int[] siblings = index.get(localNames[node]);
+			if (siblings == null) {
+				index.put(localNames[node], new int[] { node });
+			} else {
+				/*
+				 * The same local name in other namespaces
+				 */
+				siblings = Arrays.copyOf(siblings, siblings.length + 1);
+				siblings[siblings.length - 1] = node;
+				index.put(localNames[node], siblings);
+			}
+		}
+		return index;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		if (list == null || list.isEmpty()) {
+			return NONE;
+		}
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Tracks the active states while walking a document. The states of each open element form a frame on an int
+	 * stack. Only trie nodes with children are kept in a frame since no other node can lead to a match.
+	 */
+	final class Cursor {
+		private int[] states = new int[16];
+		private int[] frames = new int[16];
+		private int depth;
+		private int[] matches = new int[Math.max(1, expressions.length)];
+
+		private Cursor() {
+			reset();
+		}
+
+		/**
+		 * Position the cursor at the document root
+		 */
+		void reset() {
+			depth = 0;
+			frames[0] = 0;
+			states[0] = ABSOLUTE_ROOT;
+			frames[1] = 1;
+		}
+
+		/**
+		 * Advance the cursor into a new element.
+		 * @param localName the element local name
+		 * @param namespaceURI the element namespace URI, <code>null</code> or empty if none
+		 * @return the number of expressions matching the element. Their indexes are available from {@link #match(int)}
+		 */
+		int startElement(String localName, String namespaceURI) {
+			if (namespaceURI == null) {
+				namespaceURI = "";
+			}
+			int from = frames[depth];
+			int to = frames[depth + 1];
+			int top = to;
+			int matchCount = 0;
+			for (int i = from; i <= to; i++) {
+				int state;
+				if (i < to) {
+					state = states[i];
+				} else if (hasRelative) {
+					state = RELATIVE_ROOT;
+				} else {
+					break;
+				}
+				int[] next;
+				if (childIndex[state] == null) {
+					next = children[state];
+				} else if ((next = childIndex[state].get(localName)) == null) {
+					continue;
+				}
+				for (int j = 0; j < next.length; j++) {
+					int child = next[j];
+					if (stepMatches(child, localName, namespaceURI)) {
+						int[] accepted = accepts[child];
+						for (int k = 0; k < accepted.length; k++) {
+							matches[matchCount++] = accepted[k];
+						}
+						if (children[child].length > 0) {
+							if (top == states.length) {
+								states = Arrays.copyOf(states, top * 2);
+							}
+							states[top++] = child;
+						}
+					}
+				}
+			}
+			depth++;
+			if (depth + 1 == frames.length) {
+				frames = Arrays.copyOf(frames, frames.length * 2);
+			}
+			frames[depth + 1] = top;
+			return matchCount;
+		}
+
+		/**
+		 * Return the cursor to the parent of the current element
+		 */
+		void endElement() {
+			if (depth > 0) {
+				depth--;
+			}
+		}
+
+		/**
+		 *
+		 * @param i the match number, less than the value returned by {@link #startElement(String, String)}
+		 * @return the index of the matching expression
+		 */
+		int match(int i) {
+			return matches[i];
+		}
+
+		/**
+		 *
+		 * @return <code>false</code> if no expression can match below the current element, so its content may be
+		 * skipped
+		 */
+		boolean canMatchDescendants() {
+			return hasRelative || frames[depth + 1] > frames[depth];
+		}
+
+		/**
+		 *
+		 * @return the number of open elements
+		 */
+		int getDepth() {
+			return depth;
+		}
+	}
+
+	/*
+	 * Accumulates the trie while compiling
+	 */
+	private static final class Builder {
+		private final List<String> localNames = new ArrayList<String>();
+		private final List<String> namespaces = new ArrayList<String>();
+		private final List<List<Integer>> children = new ArrayList<List<Integer>>();
+		private final List<List<Integer>> accepts = new ArrayList<List<Integer>>();
+
+		Builder() {
+			newNode(null, null);
+			newNode(null, null);
+		}
+
+		int child(int parent, String localName, String namespaceURI) {
+			String namespace = (namespaceURI == null) ? "" : namespaceURI;
+			List<Integer> siblings = children.get(parent);
+			if (siblings != null) {
+				for (Integer sibling : siblings) {
+					if (localNames.get(sibling).equals(localName) && namespaces.get(sibling).equals(namespace)) {
+						return sibling;
+					}
+				}
+			} else {
+				siblings = new ArrayList<Integer>();
+				children.set(parent, siblings);
+			}
+			int node = newNode(localName, namespace);
+			siblings.add(node);
+			return node;
+		}
+
+		void accept(int node, int expression) {
+			List<Integer> accepted = accepts.get(node);
+			if (accepted == null) {
+				accepted = new ArrayList<Integer>();
+				accepts.set(node, accepted);
+			}
+			accepted.add(expression);
+		}
+
+		/*
+		 * Names are interned, as are the names reported by the JDK reader, so most comparisons are by identity
+		 */
+		private int newNode(String localName, String namespace) {
+			localNames.add((localName == null) ? null : localName.intern());
+			namespaces.add((namespace == null) ? null : namespace.intern());
+			children.add(null);
+			accepts.add(null);
+			return localNames.size() - 1;
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package staxparser.xml;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Callback interface used with {@link MappedFileContentExtractor} to receive every match in a file together with 
+ * its position
+ * @param <T> the content type: <code>String</code> for element text or element strings, 
+ * <code>Element</code> or <code>Node</code>
+ */
+public interface PathExpressionOffsetMatchHandler<T> {
+    /**
+     * 
+     * @param expression the matching expression
+     * @param content the content of the matched element
+     * @param offset the byte offset of the start tag of the matched element in the file, or -1 if it is unknown
+     * @throws XMLStreamException
+     */
+    public void match(PathExpression expression, T content, long offset) throws XMLStreamException;
+}
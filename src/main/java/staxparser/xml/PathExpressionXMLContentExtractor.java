@@ -1,46 +1,82 @@
 package staxparser.xml;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.XMLEvent;
 
 import org.apache.log4j.Logger;
 import org.w3c.dom.Element;
 
+import staxparser.util.ByteBufferInputStream;
+
 /**
  * <p>An efficient and thread safe XML parser iusing a Stax reader to perform simple content extraction. 
- * Content for multiple nodes in an XML input source (String or Reader) is extracted in a single pass, 
- * selected by one or more {@link PathExpression}s
+ * Content for multiple nodes in an XML input source (String, Reader, InputStream, byte[], ByteBuffer or file Path) 
+ * is extracted in a single pass, selected by one or more {@link PathExpression}s
+ * 
+ * <p>The extract...methods return only the first node that matches each expression. They are designed to match 
+ * content for elements that occur exactly once in the document. The extractAll...methods pass every matching node 
+ * to a {@link PathExpressionMatchHandler} as it is parsed, for repeating elements in documents of any size. 
+ * This is not intended as a complete replacement for XPath. It is designed to perform very basic XML content 
+ * extraction. If more features are needed, consider using XPath or writing a custom parser using the 
+ * {@link XMLStreamReaderTemplate}.
+ * </p>
  * 
- * <p>Only the first node that matches each expression is extracted. It is designed to match content for 
- * elements that occur exactly once in the document. This is not intended as a complete replacement
- * for XPath. It is designed to perform very basic XML content extraction. If more features are needed, consider using 
- * XPath or writing a custom parser using the {@link XMLStreamReaderTemplate}.
+ * <p>An expression selecting an attribute (<code>/foo/bar@attr</code>) yields the attribute value, read directly from 
+ * the start tag. Attribute values are extracted as text or as <code>String</code>; they cannot be extracted as an 
+ * <code>Element</code>.
  * </p>
  * 
- * The constructor accepts a <code>Set&lt;{@link PathExpression}&gt;</code>. Each instance may perform the same extraction on 
- * many XML documents
+ * The constructor accepts a <code>Set&lt;{@link PathExpression}&gt;</code>. The expressions are compiled once, when 
+ * the instance is created, so changes to the Set afterwards have no effect. Each instance may perform the same 
+ * extraction on many XML documents
  *  
  * @author David Turanski
  *
  */
 public class PathExpressionXMLContentExtractor {
-	protected static enum RETURN_TYPE {text, element_as_string, element}
+	protected static enum RETURN_TYPE {text, element_as_string, element, slice, handle}
 	protected final Logger logger = Logger.getLogger(this.getClass());
     private final Set<PathExpression> expressions;
+    private final PathExpressionMatcher matcher;
+    private final XMLInputFactory factory;
  
     /**
 	 * 
 	 * @param expressions A Set of {@link PathExpression} used to select content
 	 */
 	public PathExpressionXMLContentExtractor( Set<PathExpression> expressions) {
-		this.expressions = expressions;	 
+		this(expressions, XMLInputFactoryProvider.getFactory());
+	}
+
+	/**
+	 * 
+	 * @param expressions A Set of {@link PathExpression} used to select content
+	 * @param factory A configured XMLInputFactory shared by all extractions performed by this instance
+	 */
+	public PathExpressionXMLContentExtractor( Set<PathExpression> expressions, XMLInputFactory factory) {
+		this.expressions = expressions;
+		this.matcher = (expressions == null) ? null : new PathExpressionMatcher(expressions);
+		this.factory = factory;
 	}
 
 	/**
@@ -79,13 +115,7 @@ public class PathExpressionXMLContentExtractor {
 	@SuppressWarnings("unchecked")
 	public final <T> Map<PathExpression, T> extractElements(Reader reader, Class<T> requiredType) 
     throws XMLStreamException {
-	
-	   XMLStreamReaderTemplate.validateRequiredTypeIsSupported(requiredType);
-	   if (requiredType.equals(String.class)){
-	      return (Map<PathExpression, T>) this.evaluate(reader,RETURN_TYPE.element_as_string);
-	   } else {
-		 return (Map<PathExpression, T>) this.evaluate(reader, RETURN_TYPE.element); 
-	   }
+	   return (Map<PathExpression, T>) this.evaluate(reader, returnTypeFor(requiredType));
 	}
 	
 	/**
@@ -101,6 +131,653 @@ public class PathExpressionXMLContentExtractor {
 		return (Map<PathExpression,String>) this.evaluate(reader ,RETURN_TYPE.text);
 	}
  	
+	/**
+	 * Returns a map containing the first element matching each {@link PathExpression} 
+     * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+     * XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> Map<PathExpression, T> extractElements(InputStream inputStream, Class<T> requiredType) 
+    throws XMLStreamException {
+		RETURN_TYPE returnType = returnTypeFor(requiredType);
+		return (Map<PathExpression, T>) this.evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream), 
+				returnType);
+	}
+
+	/**
+	 * Returns a map containing the first element matching each {@link PathExpression} 
+     * @param xml The XML input bytes. The encoding is detected from the byte order mark or the XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 */
+	public final <T> Map<PathExpression, T> extractElements(byte[] xml, Class<T> requiredType) 
+    throws XMLStreamException {
+		return extractElements(new ByteArrayInputStream(xml), requiredType);
+	}
+
+	/**
+	 * Returns a map containing the first element matching each {@link PathExpression} 
+     * @param xml The XML input, the remaining bytes of the buffer. The encoding is detected from the byte order mark 
+     * or the XML declaration. The position of the buffer is not changed
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 */
+	public final <T> Map<PathExpression, T> extractElements(ByteBuffer xml, Class<T> requiredType) 
+    throws XMLStreamException {
+		return extractElements(new ByteBufferInputStream(xml), requiredType);
+	}
+
+	/**
+	 * Returns a map containing the first element matching each {@link PathExpression} 
+     * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public final <T> Map<PathExpression, T> extractElements(Path path, Class<T> requiredType) 
+    throws XMLStreamException, IOException {
+		RETURN_TYPE returnType = returnTypeFor(requiredType);
+		return (Map<PathExpression, T>) this.evaluate(new XMLStreamReaderTemplate(factory, path), returnType);
+	}
+
+	/**
+	 * Returns a map containing the text of first element matching each {@link PathExpression} 
+     * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+     * XML declaration
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 */
+	@SuppressWarnings("unchecked")
+	public final Map<PathExpression,String> extractElementText(InputStream inputStream) 
+    throws XMLStreamException {
+		return (Map<PathExpression,String>) this.evaluate(
+				XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream), RETURN_TYPE.text);
+	}
+
+	/**
+	 * Returns a map containing the text of first element matching each {@link PathExpression} 
+     * @param xml The XML input bytes. The encoding is detected from the byte order mark or the XML declaration
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 */
+	public final Map<PathExpression,String> extractElementText(byte[] xml) 
+    throws XMLStreamException {
+		return extractElementText(new ByteArrayInputStream(xml));
+	}
+
+	/**
+	 * Returns a map containing the text of first element matching each {@link PathExpression} 
+     * @param xml The XML input, the remaining bytes of the buffer. The encoding is detected from the byte order mark 
+     * or the XML declaration. The position of the buffer is not changed
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 */
+	public final Map<PathExpression,String> extractElementText(ByteBuffer xml) 
+    throws XMLStreamException {
+		return extractElementText(new ByteBufferInputStream(xml));
+	}
+
+	/**
+	 * Returns a map containing the text of first element matching each {@link PathExpression} 
+     * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public final Map<PathExpression,String> extractElementText(Path path) 
+    throws XMLStreamException, IOException {
+		return (Map<PathExpression,String>) this.evaluate(new XMLStreamReaderTemplate(factory, path), RETURN_TYPE.text);
+	}
+ 	
+	/**
+	 * 
+	 * @return an empty results container for the extract...methods accepting {@link ExtractionResults}. It may be 
+	 * reused for any number of extractions by this instance, by one thread at a time
+	 */
+	public final <T> ExtractionResults<T> newResults() {
+		if (expressions == null || expressions.size() == 0) {
+			throw new IllegalArgumentException("Argument contains no path expressions");
+		}
+		return new ExtractionResults<T>(matcher);
+	}
+
+	/**
+	 * Extracts the text of the first element matching each {@link PathExpression} into a reusable container, 
+	 * without creating a Map
+	 * @param xml The XML input
+	 * @param results a container created by {@link #newResults()}. Previous results are removed
+	 * @throws XMLStreamException
+	 */
+	public final void extractElementText(String xml, ExtractionResults<String> results) throws XMLStreamException {
+		extractElementText(new StringReader(xml), results);
+	}
+
+	/**
+	 * Extracts the text of the first element matching each {@link PathExpression} into a reusable container, 
+	 * without creating a Map
+	 * @param reader A Reader for the XML input stream
+	 * @param results a container created by {@link #newResults()}. Previous results are removed
+	 * @throws XMLStreamException
+	 */
+	public final void extractElementText(Reader reader, ExtractionResults<String> results) throws XMLStreamException {
+		evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, reader), RETURN_TYPE.text, results);
+	}
+
+	/**
+	 * Extracts the text of the first element matching each {@link PathExpression} into a reusable container, 
+	 * without creating a Map
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @param results a container created by {@link #newResults()}. Previous results are removed
+	 * @throws XMLStreamException
+	 */
+	public final void extractElementText(InputStream inputStream, ExtractionResults<String> results) 
+	throws XMLStreamException {
+		evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream), RETURN_TYPE.text, results);
+	}
+
+	/**
+	 * Extracts the first element matching each {@link PathExpression} into a reusable container, without creating 
+	 * a Map
+	 * @param xml The XML input
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param results a container created by {@link #newResults()}. Previous results are removed
+	 * @throws XMLStreamException
+	 */
+	public final <T> void extractElements(String xml, Class<T> requiredType, ExtractionResults<T> results) 
+	throws XMLStreamException {
+		extractElements(new StringReader(xml), requiredType, results);
+	}
+
+	/**
+	 * Extracts the first element matching each {@link PathExpression} into a reusable container, without creating 
+	 * a Map
+	 * @param reader A Reader for the XML input stream
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param results a container created by {@link #newResults()}. Previous results are removed
+	 * @throws XMLStreamException
+	 */
+	public final <T> void extractElements(Reader reader, Class<T> requiredType, ExtractionResults<T> results) 
+	throws XMLStreamException {
+		RETURN_TYPE returnType = returnTypeFor(requiredType);
+		evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, reader), returnType, results);
+	}
+
+	/**
+	 * Extracts the first element matching each {@link PathExpression} into a reusable container, without creating 
+	 * a Map
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param results a container created by {@link #newResults()}. Previous results are removed
+	 * @throws XMLStreamException
+	 */
+	public final <T> void extractElements(InputStream inputStream, Class<T> requiredType, 
+			ExtractionResults<T> results) throws XMLStreamException {
+		RETURN_TYPE returnType = returnTypeFor(requiredType);
+		evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream), returnType, results);
+	}
+
+	/**
+	 * Counts the elements matching each {@link PathExpression} in a single pass. Only element names and paths are 
+	 * compared: element content is not read and subtrees in which no expression can match are skipped. Every 
+	 * matching element is counted, including elements nested in another match. For an attribute expression, the 
+	 * elements having the attribute are counted
+	 * @param xml The XML input
+	 * @return the count for each expression, indexed by {@link #indexOf(PathExpression)}
+	 * @throws XMLStreamException
+	 */
+	public final int[] countAll(String xml) throws XMLStreamException {
+		return countAll(XMLStreamReaderTemplateProvider.getTemplate(factory, xml));
+	}
+
+	/**
+	 * Counts the elements matching each {@link PathExpression} in a single pass. See {@link #countAll(String)}
+	 * @param reader A Reader for the XML input stream
+	 * @return the count for each expression, indexed by {@link #indexOf(PathExpression)}
+	 * @throws XMLStreamException
+	 */
+	public final int[] countAll(Reader reader) throws XMLStreamException {
+		return countAll(XMLStreamReaderTemplateProvider.getTemplate(factory, reader));
+	}
+
+	/**
+	 * Counts the elements matching each {@link PathExpression} in a single pass. See {@link #countAll(String)}
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @return the count for each expression, indexed by {@link #indexOf(PathExpression)}
+	 * @throws XMLStreamException
+	 */
+	public final int[] countAll(InputStream inputStream) throws XMLStreamException {
+		return countAll(XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream));
+	}
+
+	private int[] countAll(XMLStreamReaderTemplate template) throws XMLStreamException {
+		try {
+			if (expressions == null || expressions.size() == 0) {
+				throw new IllegalArgumentException("Argument contains no path expressions");
+			}
+			int[] counts = new int[matcher.size()];
+			evaluateCounts(template, matcher, matcher.newCursor(), counts, false);
+			return counts;
+		} finally {
+			XMLStreamReaderTemplateProvider.release(template);
+		}
+	}
+
+	/*
+	 * The counting algorithm. Adds the matches after the reader's position to the counts, the cursor holding the 
+	 * path to that position. With stopAtFirst, returns true at the first match with the reader at its START_ELEMENT. 
+	 * The template is not released
+	 */
+	static boolean evaluateCounts(XMLStreamReaderTemplate template, PathExpressionMatcher matcher,
+			PathExpressionMatcher.Cursor cursor, int[] counts, boolean stopAtFirst) throws XMLStreamException {
+		XMLStreamReader reader = template.xmlStreamReader;
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLEvent.START_ELEMENT) {
+				int matches = cursor.startElement(reader.getLocalName(), reader.getNamespaceURI());
+				boolean found = false;
+				for (int i = 0; i < matches; i++) {
+					int index = cursor.match(i);
+					String attribute = matcher.getAttribute(index);
+					if (attribute == null || reader.getAttributeValue(null, attribute) != null) {
+						counts[index]++;
+						found = true;
+					}
+				}
+				if (found && stopAtFirst) {
+					return true;
+				}
+				if (!cursor.canMatchDescendants()) {
+					template.skipElement();
+					cursor.endElement();
+				}
+			} else if (event == XMLEvent.END_ELEMENT) {
+				cursor.endElement();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index of an expression in the {@link ExtractionResults} and {@link TextValues} filled by this 
+	 * instance
+	 * @param expression one of the expressions given to the constructor
+	 * @return the index
+	 * @throws IllegalArgumentException if this instance does not extract the expression
+	 */
+	public final int indexOf(PathExpression expression) {
+		int index = (matcher == null) ? -1 : matcher.indexOf(expression);
+		if (index < 0) {
+			throw new IllegalArgumentException("unknown expression " + expression);
+		}
+		return index;
+	}
+
+	/**
+	 * 
+	 * @return an empty record for {@link #extractValues(String, TextValues)}. Records may be reused for any number 
+	 * of extractions by this instance
+	 */
+	public final TextValues newTextValues() {
+		if (expressions == null || expressions.size() == 0) {
+			throw new IllegalArgumentException("Argument contains no path expressions");
+		}
+		return new TextValues(matcher.size());
+	}
+
+	/**
+	 * Extracts the text of the first element or attribute matching each {@link PathExpression} into a reusable 
+	 * record, from which numbers and booleans are read without allocating Strings. Matched elements must contain 
+	 * only text
+	 * @param xml The XML input
+	 * @param values a record created by {@link #newTextValues()}. Previous values are removed
+	 * @throws XMLStreamException
+	 */
+	public final void extractValues(String xml, TextValues values) throws XMLStreamException {
+		evaluateValues(XMLStreamReaderTemplateProvider.getTemplate(factory, new StringReader(xml)), values);
+	}
+
+	/**
+	 * Extracts the text of the first element or attribute matching each {@link PathExpression} into a reusable 
+	 * record, from which numbers and booleans are read without allocating Strings. Matched elements must contain 
+	 * only text
+	 * @param reader A Reader for the XML input stream
+	 * @param values a record created by {@link #newTextValues()}. Previous values are removed
+	 * @throws XMLStreamException
+	 */
+	public final void extractValues(Reader reader, TextValues values) throws XMLStreamException {
+		evaluateValues(XMLStreamReaderTemplateProvider.getTemplate(factory, reader), values);
+	}
+
+	/**
+	 * Extracts the text of the first element or attribute matching each {@link PathExpression} into a reusable 
+	 * record, from which numbers and booleans are read without allocating Strings. Matched elements must contain 
+	 * only text
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @param values a record created by {@link #newTextValues()}. Previous values are removed
+	 * @throws XMLStreamException
+	 */
+	public final void extractValues(InputStream inputStream, TextValues values) throws XMLStreamException {
+		evaluateValues(XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream), values);
+	}
+
+	/**
+	 * Extracts the text of the first element or attribute matching each {@link PathExpression} into a reusable 
+	 * record, from which numbers and booleans are read without allocating Strings. Matched elements must contain 
+	 * only text
+	 * @param xml The XML input bytes. The encoding is detected from the byte order mark or the XML declaration
+	 * @param values a record created by {@link #newTextValues()}. Previous values are removed
+	 * @throws XMLStreamException
+	 */
+	public final void extractValues(byte[] xml, TextValues values) throws XMLStreamException {
+		extractValues(new ByteArrayInputStream(xml), values);
+	}
+
+	/**
+	 * Returns a map containing the source text of the first element matching each {@link PathExpression}, exactly 
+	 * as it appears in the input. The elements are not serialized again, so this is the fastest way to forward 
+	 * extracted elements. Attribute expressions are not supported
+	 * @param xml The XML input
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 * @see ElementSlice
+	 */
+	@SuppressWarnings("unchecked")
+	public final Map<PathExpression, ElementSlice> extractElementSlices(String xml) throws XMLStreamException {
+		return (Map<PathExpression, ElementSlice>) this.evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, 
+				xml), RETURN_TYPE.slice);
+	}
+
+	/**
+	 * Returns a map containing a handle to the first element matching each {@link PathExpression}. The elements are 
+	 * only located; their content is read from the input when it is requested from the handle. Attribute 
+	 * expressions are not supported
+	 * @param xml The XML input
+	 * @return Map containing the results. The keys correspond to the given expressions. 
+	 * A null entry value means no match was found for that expression
+	 * @throws XMLStreamException
+	 * @see ElementHandle
+	 */
+	@SuppressWarnings("unchecked")
+	public final Map<PathExpression, ElementHandle> extractElementHandles(String xml) throws XMLStreamException {
+		return (Map<PathExpression, ElementHandle>) this.evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, 
+				xml), RETURN_TYPE.handle);
+	}
+
+	/**
+	 * Passes every element matching any {@link PathExpression} to the handler, in document order. Only the 
+	 * current match is held in memory, so documents of any size may be processed
+	 * @param xml The XML input
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 */
+	public final <T> void extractAllElements(String xml, Class<T> requiredType, PathExpressionMatchHandler<T> handler) 
+	throws XMLStreamException {
+		extractAllElements(new StringReader(xml), requiredType, handler);
+	}
+
+	/**
+	 * Passes every element matching any {@link PathExpression} to the handler, in document order. Only the 
+	 * current match is held in memory, so documents of any size may be processed
+	 * @param reader A Reader for the XML input stream
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 */
+	public final <T> void extractAllElements(Reader reader, Class<T> requiredType, PathExpressionMatchHandler<T> handler) 
+	throws XMLStreamException {
+		this.evaluateAll(reader, returnTypeFor(requiredType), objectHandler(handler));
+	}
+
+	/**
+	 * Passes every element matching any {@link PathExpression} to the handler, in document order. Only the 
+	 * current match is held in memory, so documents of any size may be processed
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 */
+	public final <T> void extractAllElements(InputStream inputStream, Class<T> requiredType, 
+			PathExpressionMatchHandler<T> handler) throws XMLStreamException {
+		RETURN_TYPE returnType = returnTypeFor(requiredType);
+		this.evaluateAll(XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream), returnType, 
+				objectHandler(handler));
+	}
+
+	/**
+	 * Passes the source text of every element matching any {@link PathExpression} to the handler, in document order,
+	 * exactly as it appears in the input. Attribute expressions are not supported
+	 * @param xml The XML input
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 * @see ElementSlice
+	 */
+	public final void extractAllElementSlices(String xml, PathExpressionMatchHandler<ElementSlice> handler) 
+	throws XMLStreamException {
+		this.evaluateAll(XMLStreamReaderTemplateProvider.getTemplate(factory, xml), RETURN_TYPE.slice, 
+				objectHandler(handler));
+	}
+
+	/**
+	 * Passes a handle to every element matching any {@link PathExpression} to the handler, in document order. The 
+	 * content is read from the input when it is requested from the handle. Attribute expressions are not supported
+	 * @param xml The XML input
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 * @see ElementHandle
+	 */
+	public final void extractAllElementHandles(String xml, PathExpressionMatchHandler<ElementHandle> handler) 
+	throws XMLStreamException {
+		this.evaluateAll(XMLStreamReaderTemplateProvider.getTemplate(factory, xml), RETURN_TYPE.handle, 
+				objectHandler(handler));
+	}
+
+	/**
+	 * Passes the text of every element matching any {@link PathExpression} to the handler, in document order
+	 * @param xml The XML input
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 */
+	public final void extractAllElementText(String xml, PathExpressionMatchHandler<String> handler) 
+	throws XMLStreamException {
+		extractAllElementText(new StringReader(xml), handler);
+	}
+
+	/**
+	 * Passes the text of every element matching any {@link PathExpression} to the handler, in document order
+	 * @param reader A Reader for the XML input stream
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 */
+	public final void extractAllElementText(Reader reader, PathExpressionMatchHandler<String> handler) 
+	throws XMLStreamException {
+		this.evaluateAll(reader, RETURN_TYPE.text, objectHandler(handler));
+	}
+ 	
+	/**
+	 * Passes the text of every element matching any {@link PathExpression} to the handler, in document order
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @param handler receives each match
+	 * @throws XMLStreamException
+	 */
+	public final void extractAllElementText(InputStream inputStream, PathExpressionMatchHandler<String> handler) 
+	throws XMLStreamException {
+		this.evaluateAll(XMLStreamReaderTemplateProvider.getTemplate(factory, inputStream), RETURN_TYPE.text, 
+				objectHandler(handler));
+	}
+ 	
+	/**
+	 * Publishes the text of every element matching any {@link PathExpression}, in document order. The reader is 
+	 * only advanced while the subscriber has outstanding demand. Signals are delivered on 
+	 * {@link ForkJoinPool#commonPool()}
+	 * @param reader A Reader for the XML input stream
+	 * @return a publisher accepting a single subscriber
+	 * @see ElementPublisher
+	 */
+	public final Flow.Publisher<PathExpressionMatch<String>> publishElementText(Reader reader) {
+		return publishElementText(new XMLStreamReaderTemplate(factory, reader), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Publishes the text of every element matching any {@link PathExpression}, in document order. The reader is 
+	 * only advanced while the subscriber has outstanding demand. Signals are delivered on 
+	 * {@link ForkJoinPool#commonPool()}
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @return a publisher accepting a single subscriber
+	 * @see ElementPublisher
+	 */
+	public final Flow.Publisher<PathExpressionMatch<String>> publishElementText(InputStream inputStream) {
+		return publishElementText(new XMLStreamReaderTemplate(factory, inputStream), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Publishes the text of every element matching any {@link PathExpression}, in document order. The template is 
+	 * only advanced while the subscriber has outstanding demand, and is closed when the document ends, fails or the 
+	 * subscription is cancelled
+	 * @param template The template for the XML input
+	 * @param executor delivers the signals
+	 * @return a publisher accepting a single subscriber
+	 * @see ElementPublisher
+	 */
+	public final Flow.Publisher<PathExpressionMatch<String>> publishElementText(XMLStreamReaderTemplate template,
+			Executor executor) {
+		return new ElementPublisher<String>(this, template, RETURN_TYPE.text, executor);
+	}
+
+	/**
+	 * Publishes every element matching any {@link PathExpression}, in document order. The reader is only advanced 
+	 * while the subscriber has outstanding demand. Signals are delivered on {@link ForkJoinPool#commonPool()}
+	 * @param reader A Reader for the XML input stream
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return a publisher accepting a single subscriber
+	 * @see ElementPublisher
+	 */
+	public final <T> Flow.Publisher<PathExpressionMatch<T>> publishElements(Reader reader, Class<T> requiredType) {
+		return publishElements(new XMLStreamReaderTemplate(factory, reader), requiredType, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Publishes every element matching any {@link PathExpression}, in document order. The reader is only advanced 
+	 * while the subscriber has outstanding demand. Signals are delivered on {@link ForkJoinPool#commonPool()}
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return a publisher accepting a single subscriber
+	 * @see ElementPublisher
+	 */
+	public final <T> Flow.Publisher<PathExpressionMatch<T>> publishElements(InputStream inputStream, 
+			Class<T> requiredType) {
+		return publishElements(new XMLStreamReaderTemplate(factory, inputStream), requiredType, 
+				ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Publishes every element matching any {@link PathExpression}, in document order. The template is only 
+	 * advanced while the subscriber has outstanding demand, and is closed when the document ends, fails or the 
+	 * subscription is cancelled
+	 * @param template The template for the XML input
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @param executor delivers the signals
+	 * @return a publisher accepting a single subscriber
+	 * @see ElementPublisher
+	 */
+	public final <T> Flow.Publisher<PathExpressionMatch<T>> publishElements(XMLStreamReaderTemplate template,
+			Class<T> requiredType, Executor executor) {
+		return new ElementPublisher<T>(this, template, returnTypeFor(requiredType), executor);
+	}
+ 	
+	/**
+	 * Returns a lazy, ordered Stream of the text of every element matching any {@link PathExpression}, in document 
+	 * order. The reader is advanced as the stream is consumed. A parallel stream parses batches of matches 
+	 * sequentially and hands them to other threads, so it is suited to CPU intensive processing of each match. The 
+	 * reader is closed at the end of the document or when the stream is closed. Parse errors are thrown as 
+	 * RuntimeExceptions
+	 * @param reader A Reader for the XML input stream
+	 * @return the matches
+	 */
+	public final Stream<PathExpressionMatch<String>> streamElementText(Reader reader) {
+		return stream(new XMLStreamReaderTemplate(factory, reader), RETURN_TYPE.text, true);
+	}
+
+	/**
+	 * Returns a lazy, ordered Stream of the text of every element matching any {@link PathExpression}, in document 
+	 * order. See {@link #streamElementText(Reader)}
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @return the matches
+	 */
+	public final Stream<PathExpressionMatch<String>> streamElementText(InputStream inputStream) {
+		return stream(new XMLStreamReaderTemplate(factory, inputStream), RETURN_TYPE.text, true);
+	}
+
+	/**
+	 * Returns a lazy, ordered Stream of every element matching any {@link PathExpression}, in document order. See 
+	 * {@link #streamElementText(Reader)}
+	 * @param reader A Reader for the XML input stream
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return the matches
+	 */
+	public final <T> Stream<PathExpressionMatch<T>> streamElements(Reader reader, Class<T> requiredType) {
+		RETURN_TYPE returnType = returnTypeFor(requiredType);
+		return stream(new XMLStreamReaderTemplate(factory, reader), returnType, true);
+	}
+
+	/**
+	 * Returns a lazy, ordered Stream of every element matching any {@link PathExpression}, in document order. See 
+	 * {@link #streamElementText(Reader)}
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return the matches
+	 */
+	public final <T> Stream<PathExpressionMatch<T>> streamElements(InputStream inputStream, Class<T> requiredType) {
+		RETURN_TYPE returnType = returnTypeFor(requiredType);
+		return stream(new XMLStreamReaderTemplate(factory, inputStream), returnType, true);
+	}
+
+	/*
+	 * The stream elements are PathExpressionMatches, or the content alone
+	 */
+	final <T> Stream<T> stream(XMLStreamReaderTemplate template, RETURN_TYPE returnType, boolean withExpressions) {
+		MatchIterator matches;
+		try {
+			matches = new MatchIterator(template, returnType, null);
+		} catch (XMLStreamException e) {
+			throw new RuntimeException(e);
+		}
+		final MatchSpliterator<T> spliterator = new MatchSpliterator<T>(matches, withExpressions);
+		return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+			@Override
+			public void run() {
+				spliterator.close();
+			}
+		});
+	}
+ 	
     /**
      * Implements the common processing algorithm for public extract...methods 
      * @param reader A Reader for the XML input stream
@@ -110,38 +787,372 @@ public class PathExpressionXMLContentExtractor {
      */
 	protected final Map<PathExpression,?> evaluate(Reader reader , RETURN_TYPE returnType) 
 	    throws XMLStreamException {
-		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(reader);
-		if (expressions == null || expressions.size() == 0) {
-			throw new IllegalArgumentException("Argument contains no path expressions");
+		return evaluate(XMLStreamReaderTemplateProvider.getTemplate(factory, reader), returnType);
+	}
+
+    /**
+     * Implements the common processing algorithm for public extract...methods. Subtrees in which no expression can 
+     * match are skipped. The template is closed on return
+     * @param template The template for the XML input
+     * @param returnType specifies what type of object to return
+     * @return the results in a map
+     * @throws XMLStreamException
+     */
+	protected final Map<PathExpression,?> evaluate(XMLStreamReaderTemplate template, RETURN_TYPE returnType) 
+	    throws XMLStreamException {
+		ExtractionResults<Object> results = (matcher == null) ? null : new ExtractionResults<Object>(matcher);
+		evaluate(template, returnType, results);
+
+		Map<PathExpression,Object> expressionMap = new HashMap<PathExpression,Object>(results.size() * 4 / 3 + 1);
+		for (int i = 0; i < results.size(); i++) {
+			expressionMap.put(results.getExpression(i), results.get(i));
 		}
+		return expressionMap;
+	}
+
+	/*
+	 * The evaluate algorithm, saving the results in the array
+	 */
+	private void evaluate(XMLStreamReaderTemplate template, RETURN_TYPE returnType, ExtractionResults<?> results)
+		throws XMLStreamException {
+		try {
+			validateExpressions(returnType);
+			if (!results.isFor(matcher)) {
+				throw new IllegalArgumentException("the ExtractionResults were not created by this instance");
+			}
+			results.clear();
+			PathExpressionMatcher.Cursor cursor = matcher.newCursor();
+			NamespaceStack namespaces = returnType.equals(RETURN_TYPE.handle) ? new NamespaceStack() : null;
 
-		Map<PathExpression,Object> expressionMap = new HashMap<PathExpression,Object>();
-		for ( PathExpression expression: expressions ) {
-			expressionMap.put(expression,null);
+			int event;
+
+			boolean searching = true;
+			while (searching && (event = template.next()) != XMLEvent.END_DOCUMENT) {
+				switch (event){
+				case XMLEvent.START_ELEMENT:
+					int matches = cursor.startElement(template.getLocalName(), template.getNamespaceURI());
+					if (namespaces != null) {
+						namespaces.push(template.xmlStreamReader);
+					}
+					if (matches > 0 && saveResults(template, cursor, matches, results, returnType, namespaces)) {
+						/*
+						 * The element content has been consumed
+						 */
+						endElement(cursor, namespaces);
+					} else if (!cursor.canMatchDescendants()) {
+						template.skipElement();
+						endElement(cursor, namespaces);
+					}
+					searching = results.unresolved() > 0;
+					break;
+				case XMLEvent.END_ELEMENT:
+					endElement(cursor, namespaces);
+					break;
+				}
+			}
+		} finally {
+			XMLStreamReaderTemplateProvider.release(template);
 		}
+	}
+	
+    /**
+     * Implements the processing algorithm for the extractAll...methods. A matched element is consumed, so elements 
+     * nested in it are not matched
+     * @param reader A Reader for the XML input stream
+     * @param returnType specifies what type of object to pass to the handler
+     * @param handler receives each match
+     * @throws XMLStreamException
+     */
+	protected final void evaluateAll(Reader reader, RETURN_TYPE returnType, PathExpressionMatchHandler<Object> handler)
+	    throws XMLStreamException {
+		evaluateAll(XMLStreamReaderTemplateProvider.getTemplate(factory, reader), returnType, handler);
+	}
 
-		PathExpression currentPath = new PathExpression("/");
-		
-		
+    /**
+     * Implements the processing algorithm for the extractAll...methods. Subtrees in which no expression can match 
+     * are skipped. The template is closed on return
+     * @param template The template for the XML input
+     * @param returnType specifies what type of object to pass to the handler
+     * @param handler receives each match
+     * @throws XMLStreamException
+     */
+	protected final void evaluateAll(XMLStreamReaderTemplate template, RETURN_TYPE returnType,
+			final PathExpressionMatchHandler<Object> handler) throws XMLStreamException {
+		evaluateAll(template, returnType, new PathExpressionOffsetMatchHandler<Object>() {
+			@Override
+			public void match(PathExpression expression, Object content, long offset) throws XMLStreamException {
+				handler.match(expression, content);
+			}
+		}, null);
+	}
+
+	/*
+	 * The locator, if any, provides the byte offset of each match
+	 */
+	final void evaluateAll(XMLStreamReaderTemplate template, RETURN_TYPE returnType,
+			PathExpressionOffsetMatchHandler<Object> handler, ByteOffsetLocator locator) throws XMLStreamException {
+		MatchIterator matches = new MatchIterator(template, returnType, locator);
+		try {
+			while (matches.next()) {
+				handler.match(matches.getExpression(), matches.getContent(), matches.getOffset());
+			}
+		} finally {
+			matches.close();
+		}
+	}
+
+	/*
+	 * The extractAll algorithm, pulling one match at a time. The parser is only advanced by next(), so a consumer
+	 * may stop between matches. The template is released at the end of the document or by close()
+	 */
+	final class MatchIterator {
+		private final XMLStreamReaderTemplate template;
+		private final RETURN_TYPE returnType;
+		private final ByteOffsetLocator locator;
+		private final PathExpressionMatcher.Cursor cursor;
+		private final NamespaceStack namespaces;
+		/*
+		 * The matches of the current element: expression indexes and their content
+		 */
+		private int[] indexes = new int[4];
+		private Object[] contents = new Object[4];
+		private int count;
+		private int position;
+		private long offset = -1;
+		private boolean finished;
+
+		MatchIterator(XMLStreamReaderTemplate template, RETURN_TYPE returnType, ByteOffsetLocator locator)
+				throws XMLStreamException {
+			this.template = template;
+			this.returnType = returnType;
+			this.locator = locator;
+			try {
+				validateExpressions(returnType);
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+			this.cursor = matcher.newCursor();
+			this.namespaces = returnType.equals(RETURN_TYPE.handle) ? new NamespaceStack() : null;
+		}
+
+		/*
+		 * Advance to the next match. Returns false at the end of the document
+		 */
+		boolean next() throws XMLStreamException {
+			if (position < count) {
+				position++;
+			}
+			if (position < count) {
+				return true;
+			}
+			if (finished) {
+				return false;
+			}
+			try {
+				count = 0;
+				position = 0;
+				int event;
+				while (count == 0 && (event = template.next()) != XMLEvent.END_DOCUMENT) {
+					switch (event){
+					case XMLEvent.START_ELEMENT:
+						if (startElement()) {
+							break;
+						}
+						if (!cursor.canMatchDescendants()) {
+							template.skipElement();
+							endElement(cursor, namespaces);
+						}
+						break;
+					case XMLEvent.END_ELEMENT:
+						endElement(cursor, namespaces);
+						break;
+					}
+				}
+			} catch (XMLStreamException e) {
+				close();
+				throw e;
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+			if (count == 0) {
+				close();
+				return false;
+			}
+			return true;
+		}
+
+		PathExpression getExpression() {
+			return matcher.getExpression(indexes[position]);
+		}
+
+		Object getContent() {
+			return contents[position];
+		}
+
+		long getOffset() {
+			return offset;
+		}
+
+		void close() throws XMLStreamException {
+			if (!finished) {
+				finished = true;
+				count = 0;
+				XMLStreamReaderTemplateProvider.release(template);
+			}
+		}
+
+		/*
+		 * Collect the matches of the current element. Attribute values come first. Returns true if the element 
+		 * content was consumed
+		 */
+		private boolean startElement() {
+			int matches = cursor.startElement(template.getLocalName(), template.getNamespaceURI());
+			if (namespaces != null) {
+				namespaces.push(template.xmlStreamReader);
+			}
+			if (matches == 0) {
+				return false;
+			}
+			offset = (locator == null) ? -1 : locator.startTagOffset(template.getLocation());
+			int elementMatches = 0;
+			for (int i = 0; i < matches; i++) {
+				int index = cursor.match(i);
+				if (matcher.getAttribute(index) == null) {
+					elementMatches++;
+				} else {
+					String value = template.getAttributeValue(null, matcher.getAttribute(index));
+					if (value != null) {
+						add(index, value);
+					}
+				}
+			}
+			if (elementMatches == 0) {
+				return false;
+			}
+			int first = count;
+			for (int i = 0; i < matches; i++) {
+				int index = cursor.match(i);
+				if (matcher.getAttribute(index) == null) {
+					add(index, null);
+				}
+			}
+			Object content = getElementContents(template, returnType, namespaces);
+			for (int i = first; i < count; i++) {
+				contents[i] = content;
+			}
+			endElement(cursor, namespaces);
+			return true;
+		}
+
+		private void add(int index, Object content) {
+			if (count == indexes.length) {
+				indexes = Arrays.copyOf(indexes, count * 2);
+				contents = Arrays.copyOf(contents, count * 2);
+			}
+			indexes[count] = index;
+			contents[count++] = content;
+		}
+	}
+	
+	/*
+	 * The evaluate algorithm, saving text into the record
+	 */
+	private void evaluateValues(XMLStreamReaderTemplate template, TextValues values) throws XMLStreamException {
+		try {
+			validateExpressions(RETURN_TYPE.text);
+			if (values.size() != matcher.size()) {
+				throw new IllegalArgumentException("the TextValues were not created by this instance");
+			}
+			values.clear();
+			PathExpressionMatcher.Cursor cursor = matcher.newCursor();
+			int event;
+			boolean searching = true;
+			while (searching && (event = template.next()) != XMLEvent.END_DOCUMENT) {
+				switch (event){
+				case XMLEvent.START_ELEMENT:
+					int matches = cursor.startElement(template.getLocalName(), template.getNamespaceURI());
+					if (matches > 0 && saveValues(template, cursor, matches, values)) {
+						cursor.endElement();
+					} else if (!cursor.canMatchDescendants()) {
+						template.skipElement();
+						cursor.endElement();
+					}
+					searching = values.unresolved() > 0;
+					break;
+				case XMLEvent.END_ELEMENT:
+					cursor.endElement();
+					break;
+				}
+			}
+		} finally {
+			XMLStreamReaderTemplateProvider.release(template);
+		}
+	}
+
+	/*
+	 * As saveResults, copying the text from the reader's buffer. Returns true if the element content was consumed
+	 */
+	private boolean saveValues(XMLStreamReaderTemplate template, PathExpressionMatcher.Cursor cursor, int matches,
+			TextValues values) throws XMLStreamException {
+		XMLStreamReader reader = template.xmlStreamReader;
+		if (matcher.hasAttributes()) {
+			for (int i = 0; i < matches; i++) {
+				int index = cursor.match(i);
+				String attribute = matcher.getAttribute(index);
+				if (attribute != null && !values.isPresent(index)) {
+					String value = reader.getAttributeValue(null, attribute);
+					if (value != null) {
+						int start = values.startValue();
+						values.append(value);
+						values.assign(index, start);
+					}
+				}
+			}
+		}
+
+		int start = -1;
+		for (int i = 0; i < matches; i++) {
+			int index = cursor.match(i);
+			if (!values.isPresent(index) && matcher.getAttribute(index) == null) {
+				if (start < 0) {
+					start = values.startValue();
+					appendElementText(reader, values);
+				}
+				values.assign(index, start);
+			}
+		}
+		return start >= 0;
+	}
+
+	/*
+	 * Append the text of the current element, as XMLStreamReader.getElementText() reads it
+	 */
+	private static void appendElementText(XMLStreamReader reader, TextValues values) throws XMLStreamException {
 		int event;
-		
-		boolean searching = true;
-		while (searching && (event = template.next()) != XMLEvent.END_DOCUMENT) {
-			switch (event){
-			case XMLEvent.START_ELEMENT:
-				 currentPath = currentPath.push(template.getName());
- 				 currentPath = saveResultIfCurrentPathIsSearchTarget(template, expressionMap, currentPath, returnType);
- 				 searching = !allResultsFound(expressionMap);
+		while ((event = reader.next()) != XMLEvent.END_ELEMENT) {
+			switch (event) {
+			case XMLEvent.CHARACTERS:
+			case XMLEvent.CDATA:
+			case XMLEvent.SPACE:
+				values.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
 				break;
-			case XMLEvent.END_ELEMENT:
-				currentPath = currentPath.pop();
+			case XMLEvent.ENTITY_REFERENCE:
+				values.append(reader.getText());
 				break;
+			case XMLEvent.COMMENT:
+			case XMLEvent.PROCESSING_INSTRUCTION:
+				break;
+			case XMLEvent.END_DOCUMENT:
+				throw new XMLStreamException("unexpected end of document when reading element text", 
+						reader.getLocation());
+			default:
+				throw new XMLStreamException("a text only element was expected", reader.getLocation());
 			}
 		}
-		 template.close();
-		 return expressionMap;
 	}
-	
+
 	/**
 	 * A convenience method to convert result keys from PathExpression to String 
 	 * @param pathExpressionMap - an instance of Map<PathExpression,String>
@@ -171,11 +1182,24 @@ public class PathExpressionXMLContentExtractor {
      * @return
      */
 	protected final Object getElementContents(XMLStreamReaderTemplate template, RETURN_TYPE returnType) {
+		return getElementContents(template, returnType, null);
+	}
+
+	/*
+	 * Handles require the namespaces in scope
+	 */
+	private Object getElementContents(XMLStreamReaderTemplate template, RETURN_TYPE returnType, 
+			NamespaceStack namespaces) {
 		Object result = null;
 
 		try {
 			if (returnType.equals(RETURN_TYPE.text)) {
 				result = template.getElementText();
+			} else if (returnType.equals(RETURN_TYPE.slice)) {
+				result = template.getElementSlice();
+			} else if (returnType.equals(RETURN_TYPE.handle)) {
+				String[] bindings = (namespaces == null) ? new String[0] : namespaces.snapshot();
+				result = new ElementHandle(template.getElementSlice(), bindings, factory);
 			} else {
 				if (returnType.equals(RETURN_TYPE.element)){
 				  result = template.getElement(Element.class); 
@@ -190,64 +1214,81 @@ public class PathExpressionXMLContentExtractor {
 		return result;
 	} 
 
-	//TODO: Check for root node
 	/*
-	 * 
+	 * Only save the first hit for each expression. Attribute values are read at START_ELEMENT. The element 
+	 * content is read once and shared by all unresolved expressions matching the current element. Returns 
+	 * true if the element content was consumed
 	 */
-	private PathExpression saveResultIfCurrentPathIsSearchTarget(
-			XMLStreamReaderTemplate template,
-			Map<PathExpression,Object> expressionMap,
-			PathExpression currentPath, 
-			RETURN_TYPE returnType) throws XMLStreamException {
-		  boolean found = false;
-		/*
-		 * only save the first hit. Do not overwrite
-		 */
-		
-		/*
-		 * look for exact match first
-		 */
-		if(expressionMap.containsKey(currentPath) && expressionMap.get(currentPath)== null){
-			if (logger.isDebugEnabled()) {
-			  logger.debug("saving content for " + currentPath.toString());
-			}
-			
-			expressionMap.put(currentPath, getElementContents(template, returnType));
-			found = true;
-		} else {
-			/**
-			 * look for logical match
-			 */
-		 
-		   for (Entry<PathExpression,?> entry: expressionMap.entrySet()){
-			   if (entry.getValue()==null && entry.getKey().matches(currentPath)){
-				    if (logger.isDebugEnabled()) {
-				      logger.debug("saving content for " + currentPath.toString());
-				    }
-					expressionMap.put(entry.getKey(),getElementContents(template, returnType));
-					found = true;
-				} 
-	 	   }
+	private boolean saveResults(XMLStreamReaderTemplate template, PathExpressionMatcher.Cursor cursor, int matches,
+			ExtractionResults<?> results, RETURN_TYPE returnType, NamespaceStack namespaces) {
+		if (matcher.hasAttributes()) {
+			for (int i = 0; i < matches; i++) {
+				int index = cursor.match(i);
+				String attribute = matcher.getAttribute(index);
+				if (attribute != null && !results.isPresent(index)) {
+					results.set(index, template.getAttributeValue(null, attribute));
+				}
+			}
 		}
-		if (found) {
-		    currentPath = currentPath.pop();
+
+		Object content = null;
+		boolean saved = false;
+		for (int i = 0; i < matches; i++) {
+			int index = cursor.match(i);
+			if (!results.isPresent(index) && matcher.getAttribute(index) == null) {
+				if (!saved) {
+					if (logger.isDebugEnabled()) {
+						logger.debug("saving content for " + matcher.getExpression(index).toString());
+					}
+					content = getElementContents(template, returnType, namespaces);
+					saved = true;
+				}
+				results.set(index, content);
+			}
 		}
-		return currentPath;
+		return saved;
 	}
 	
 	
+	private static void endElement(PathExpressionMatcher.Cursor cursor, NamespaceStack namespaces) {
+		cursor.endElement();
+		if (namespaces != null) {
+			namespaces.pop();
+		}
+	}
+
 	/*
-	 * 
+	 * The handler receives the matches as Objects, which are of the type it was given for
 	 */
-	private boolean allResultsFound(Map<PathExpression,?> expressionMap) {
-		boolean allResultsFound = true;
-		for (Entry<PathExpression,?> entry: expressionMap.entrySet()){
-			if (entry.getValue() == null){
-				allResultsFound = false;
-				break;
-			}
+	@SuppressWarnings("unchecked")
+	private static PathExpressionMatchHandler<Object> objectHandler(PathExpressionMatchHandler<?> handler) {
+		return (PathExpressionMatchHandler<Object>) handler;
+	}
+
+	/*
+	 * Validate the required type and map it to the element return type
+	 */
+	static RETURN_TYPE returnTypeFor(Class<?> requiredType) {
+		XMLStreamReaderTemplate.validateRequiredTypeIsSupported(requiredType);
+		return requiredType.equals(String.class) ? RETURN_TYPE.element_as_string : RETURN_TYPE.element;
+	}
+
+	/*
+	 * Attribute values are Strings so they cannot be returned as an Element
+	 */
+	private void validateExpressions(RETURN_TYPE returnType) {
+		if (expressions == null || expressions.size() == 0) {
+			throw new IllegalArgumentException("Argument contains no path expressions");
+		}
+		if (returnType.equals(RETURN_TYPE.element) && matcher.hasAttributes()) {
+			throw new IllegalArgumentException("attribute expressions cannot be extracted as an Element");
+		}
+		if (returnType.equals(RETURN_TYPE.slice) && matcher.hasAttributes()) {
+			throw new IllegalArgumentException("attribute expressions cannot be extracted as an ElementSlice");
+		}
+		if (returnType.equals(RETURN_TYPE.handle) && matcher.hasAttributes()) {
+			throw new IllegalArgumentException("attribute expressions cannot be extracted as an ElementHandle");
 		}
-		return allResultsFound;
 	}
 
 }
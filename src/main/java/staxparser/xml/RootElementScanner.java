@@ -0,0 +1,468 @@
+package staxparser.xml;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the root element name from the beginning of an XML document without a StAX reader. The prolog (XML 
+ * declaration, processing instructions, comments and whitespace) is skipped and only the first start tag is 
+ * parsed, for its name and the namespace declaration it needs.
+ * 
+ * <p>The scan gives up on anything it does not handle exactly as a parser would: a document type declaration, 
+ * an unsupported encoding, a malformed prolog or comment, an invalid or duplicate attribute name, an attribute with 
+ * a prefix other than xml or xmlns, an attribute value containing an entity reference or '&lt;', or an undeclared 
+ * element prefix. The caller then falls back to a StAX reader, which also reports any errors. A start tag with more 
+ * than {@link #MAX_ATTRIBUTES} attributes is left to the reader as well.
+ * 
+ * <p>Only the prolog and the root start tag are checked. Errors further in the document, and characters that are
+ * not allowed in XML, are not detected, as a StAX reader reading to the root element would not detect them either.
+ * 
+ * <p>Results are kept in a small cache indexed by a hash of the name in the input, so the document type of a
+ * recurring root element is returned without allocating.
+ */
+final class RootElementScanner {
+    /*
+     * Scan results
+     */
+    static final int FOUND = 0;
+    static final int INCOMPLETE = 1;
+    static final int FAILED = 2;
+
+    /*
+     * The attributes checked for duplicates
+     */
+    static final int MAX_ATTRIBUTES = 8;
+    private static final int CACHE_SIZE = 256;
+    private static final Entry[] cache = new Entry[CACHE_SIZE];
+
+    private final byte[] bytes;
+    private final String chars;
+    private final int length;
+    private Charset charset = StandardCharsets.UTF_8;
+    private int result;
+    private String documentType;
+
+    private RootElementScanner(byte[] bytes, String chars, int length) {
+        this.bytes = bytes;
+        this.chars = chars;
+        this.length = length;
+    }
+
+    /**
+     * 
+     * @param xml the document
+     * @param length the number of chars to scan
+     * @return a scanner holding the result of the scan
+     */
+    static RootElementScanner scan(String xml, int length) {
+        RootElementScanner scanner = new RootElementScanner(null, xml, length);
+        scanner.result = scanner.scan();
+        return scanner;
+    }
+
+    /**
+     * 
+     * @param xml the beginning of the document
+     * @param length the number of bytes to scan
+     * @return a scanner holding the result of the scan
+     */
+    static RootElementScanner scan(byte[] xml, int length) {
+        RootElementScanner scanner = new RootElementScanner(xml, null, length);
+        scanner.result = scanner.scan();
+        return scanner;
+    }
+
+    /**
+     * 
+     * @return {@link #FOUND}, {@link #INCOMPLETE} if the start tag does not end within the scanned input, or 
+     * {@link #FAILED}
+     */
+    int getResult() {
+        return result;
+    }
+
+    /**
+     * 
+     * @return the root element QName as a String, if found
+     */
+    String getDocumentType() {
+        return documentType;
+    }
+
+    private int scan() {
+        int i = 0;
+        /*
+         * A Reader does not accept a byte order mark, so it is only skipped in bytes
+         */
+        if (bytes != null && length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB 
+                && bytes[2] == (byte) 0xBF) {
+            i = 3;
+        } else if (bytes != null && length >= 1 && (bytes[0] == 0 || bytes[0] == (byte) 0xFE 
+                || bytes[0] == (byte) 0xFF)) {
+            /*
+             * UTF-16 or UTF-32
+             */
+            return FAILED;
+        }
+
+        int documentStart = i;
+        while (true) {
+            i = skipWhitespace(i);
+            if (i + 1 >= length) {
+                return INCOMPLETE;
+            }
+            if (at(i) != '<') {
+                return FAILED;
+            }
+            int c = at(i + 1);
+            if (c == '?') {
+                int end = indexOf("?>", i + 2);
+                if (end < 0) {
+                    return INCOMPLETE;
+                }
+                if (isXMLDeclaration(i + 2, end)) {
+                    if (i != documentStart || !checkEncoding(i + 2, end)) {
+                        return FAILED;
+                    }
+                }
+                i = end + 2;
+            } else if (c == '!') {
+                if (i + 4 > length) {
+                    return INCOMPLETE;
+                }
+                if (at(i + 2) != '-' || at(i + 3) != '-') {
+                    /*
+                     * A DOCTYPE may declare default attributes, including namespaces
+                     */
+                    return FAILED;
+                }
+                int end = indexOf("-->", i + 4);
+                if (end < 0) {
+                    return INCOMPLETE;
+                }
+                if (indexOf("--", i + 4) != end) {
+                    /*
+                     * "--" is not allowed in a comment
+                     */
+                    return FAILED;
+                }
+                i = end + 3;
+            } else {
+                return scanStartTag(i + 1);
+            }
+        }
+    }
+
+    private int scanStartTag(int start) {
+        int colon = -1;
+        int i = start;
+        for (; i < length; i++) {
+            int c = at(i);
+            if (c == ':') {
+                if (colon >= 0) {
+                    return FAILED;
+                }
+                colon = i;
+            } else if (!isNameChar(c, i == start || i == colon + 1)) {
+                break;
+            }
+        }
+        if (i >= length) {
+            return INCOMPLETE;
+        }
+        if (i == start || colon == i - 1 || colon == start) {
+            return FAILED;
+        }
+        int localStart = (colon < 0) ? start : colon + 1;
+        int localEnd = i;
+
+        int namespaceStart = -1;
+        int namespaceEnd = -1;
+        int[] attributes = null;
+        int attributeCount = 0;
+        while (true) {
+            int next = skipWhitespace(i);
+            if (next >= length) {
+                return INCOMPLETE;
+            }
+            int c = at(next);
+            if (c == '>' || c == '/') {
+                break;
+            }
+            if (next == i) {
+                return FAILED;
+            }
+            int nameStart = next;
+            while (next < length && at(next) != '=' && !isWhitespace(at(next)) && at(next) != '>') {
+                next++;
+            }
+            int nameEnd = next;
+            if (!isAttributeName(nameStart, nameEnd)) {
+                return FAILED;
+            }
+            if (attributeCount == MAX_ATTRIBUTES) {
+                return FAILED;
+            }
+            if (attributes == null) {
+                attributes = new int[2 * MAX_ATTRIBUTES];
+            }
+            for (int j = 0; j < attributeCount; j++) {
+                if (regionEquals(nameStart, nameEnd, attributes[2 * j], attributes[2 * j + 1])) {
+                    return FAILED;
+                }
+            }
+            attributes[2 * attributeCount] = nameStart;
+            attributes[2 * attributeCount + 1] = nameEnd;
+            attributeCount++;
+            next = skipWhitespace(next);
+            if (next + 1 >= length) {
+                return INCOMPLETE;
+            }
+            if (at(next) != '=') {
+                return FAILED;
+            }
+            next = skipWhitespace(next + 1);
+            if (next >= length) {
+                return INCOMPLETE;
+            }
+            int quote = at(next);
+            if (quote != '"' && quote != '\'') {
+                return FAILED;
+            }
+            int valueStart = next + 1;
+            int valueEnd = valueStart;
+            while (valueEnd < length && at(valueEnd) != quote) {
+                valueEnd++;
+            }
+            if (valueEnd >= length) {
+                return INCOMPLETE;
+            }
+            for (int j = valueStart; j < valueEnd; j++) {
+                if (at(j) == '&' || at(j) == '<') {
+                    return FAILED;
+                }
+            }
+            if (declaresNamespace(nameStart, nameEnd, start, colon)) {
+                namespaceStart = valueStart;
+                namespaceEnd = valueEnd;
+            }
+            i = valueEnd + 1;
+        }
+
+        if (namespaceStart < 0) {
+            if (colon >= 0) {
+                return FAILED;
+            }
+            namespaceStart = namespaceEnd = 0;
+        }
+        if (colon >= 0 && namespaceStart == namespaceEnd) {
+            return FAILED;
+        }
+        documentType = documentType(namespaceStart, namespaceEnd, localStart, localEnd);
+        return FOUND;
+    }
+
+    /*
+     * Is the attribute "xmlns" for an unprefixed name or "xmlns:prefix" for the element prefix
+     */
+    private boolean declaresNamespace(int nameStart, int nameEnd, int start, int colon) {
+        if (nameEnd - nameStart < 5 || at(nameStart) != 'x' || at(nameStart + 1) != 'm' || at(nameStart + 2) != 'l'
+                || at(nameStart + 3) != 'n' || at(nameStart + 4) != 's') {
+            return false;
+        }
+        if (colon < 0) {
+            return nameEnd - nameStart == 5;
+        }
+        int prefixLength = colon - start;
+        if (nameEnd - nameStart != 6 + prefixLength || at(nameStart + 5) != ':') {
+            return false;
+        }
+        for (int j = 0; j < prefixLength; j++) {
+            if (at(nameStart + 6 + j) != at(start + j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * A name with at most one colon, whose prefix, if any, is "xml" or "xmlns", the prefixes declared without an 
+     * attribute
+     */
+    private boolean isAttributeName(int from, int to) {
+        int colon = -1;
+        for (int i = from; i < to; i++) {
+            int c = at(i);
+            if (c == ':') {
+                if (colon >= 0) {
+                    return false;
+                }
+                colon = i;
+            } else if (!isNameChar(c, i == from || i == colon + 1)) {
+                return false;
+            }
+        }
+        if (to == from || colon == from || colon == to - 1) {
+            return false;
+        }
+        if (colon < 0) {
+            return true;
+        }
+        int prefixLength = colon - from;
+        return (prefixLength == 3 || prefixLength == 5) && at(from) == 'x' && at(from + 1) == 'm' 
+                && at(from + 2) == 'l' && (prefixLength == 3 || (at(from + 3) == 'n' && at(from + 4) == 's'));
+    }
+
+    private boolean regionEquals(int from, int to, int otherFrom, int otherTo) {
+        if (to - from != otherTo - otherFrom) {
+            return false;
+        }
+        for (int i = 0; i < to - from; i++) {
+            if (at(from + i) != at(otherFrom + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * The processing instruction target is "xml"
+     */
+    private boolean isXMLDeclaration(int from, int to) {
+        return to - from > 3 && at(from) == 'x' && at(from + 1) == 'm' && at(from + 2) == 'l' 
+                && isWhitespace(at(from + 3));
+    }
+
+    /*
+     * Only encodings compatible with US-ASCII are scanned as bytes
+     */
+    private boolean checkEncoding(int from, int to) {
+        if (bytes == null) {
+            return true;
+        }
+        int i = indexOf("encoding", from);
+        if (i < 0 || i > to) {
+            return true;
+        }
+        i = skipWhitespace(i + 8);
+        if (i >= to || at(i) != '=') {
+            return false;
+        }
+        i = skipWhitespace(i + 1);
+        if (i >= to) {
+            return false;
+        }
+        int quote = at(i);
+        int end = indexOf(quote == '"' ? "\"" : "'", i + 1);
+        if (end < 0 || end > to) {
+            return false;
+        }
+        String encoding = new String(bytes, i + 1, end - i - 1, StandardCharsets.US_ASCII);
+        if (encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8")
+                || encoding.equalsIgnoreCase("US-ASCII") || encoding.equalsIgnoreCase("ASCII")) {
+            charset = StandardCharsets.UTF_8;
+            return true;
+        }
+        if (encoding.equalsIgnoreCase("ISO-8859-1") || encoding.equalsIgnoreCase("ISO8859-1") 
+                || encoding.equalsIgnoreCase("ISO8859_1") || encoding.equalsIgnoreCase("LATIN1")) {
+            charset = StandardCharsets.ISO_8859_1;
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Return the cached document type for the name, or create and cache it
+     */
+    private String documentType(int namespaceStart, int namespaceEnd, int localStart, int localEnd) {
+        int hash = hash(namespaceStart, namespaceEnd, hash(localStart, localEnd, 0));
+        int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        Entry entry = cache[index];
+        if (entry != null && regionEquals(localStart, localEnd, entry.localName) 
+                && regionEquals(namespaceStart, namespaceEnd, entry.namespaceURI)) {
+            return entry.documentType;
+        }
+        String namespaceURI = substring(namespaceStart, namespaceEnd);
+        String localName = substring(localStart, localEnd);
+        String documentType = namespaceURI.length() == 0 ? localName : "{" + namespaceURI + "}" + localName;
+        cache[index] = new Entry(namespaceURI, localName, documentType);
+        return documentType;
+    }
+
+    private int hash(int from, int to, int hash) {
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + at(i);
+        }
+        return hash;
+    }
+
+    /*
+     * Non ASCII bytes never compare equal, so such names are not served from the cache
+     */
+    private boolean regionEquals(int from, int to, String s) {
+        if (to - from != s.length()) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            int c = at(i);
+            if (c != s.charAt(i - from) || (bytes != null && c >= 0x80)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String substring(int from, int to) {
+        return bytes == null ? chars.substring(from, to) : new String(bytes, from, to - from, charset);
+    }
+
+    private int at(int i) {
+        return bytes == null ? chars.charAt(i) : bytes[i] & 0xFF;
+    }
+
+    private int indexOf(String s, int from) {
+        int last = length - s.length();
+        outer: for (int i = from; i <= last; i++) {
+            for (int j = 0; j < s.length(); j++) {
+                if (at(i + j) != s.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < length && isWhitespace(at(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /*
+     * Non ASCII characters are accepted, ASCII is checked against the XML name rules
+     */
+    private static boolean isNameChar(int c, boolean first) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c >= 0x80) {
+            return true;
+        }
+        return !first && ((c >= '0' && c <= '9') || c == '-' || c == '.');
+    }
+
+    private static final class Entry {
+        final String namespaceURI;
+        final String localName;
+        final String documentType;
+
+        Entry(String namespaceURI, String localName, String documentType) {
+            this.namespaceURI = namespaceURI;
+            this.localName = localName;
+            this.documentType = documentType;
+        }
+    }
+}
@@ -1,10 +1,16 @@
 package staxparser.xml;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Map;
 
+import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 /**
  * A wrapper for {@link PathExpressionXMLContentExtractor} providing convenience methods 
@@ -23,9 +29,17 @@ public class SimpleContentExtractor {
      * @param selector A String used to create a {@link PathExpression}
      */
     public SimpleContentExtractor(String selector) {
-		expression = new PathExpression(selector);
+		this(selector, XMLInputFactoryProvider.getFactory());
+	}
+
+    /**
+     * @param selector A String used to create a {@link PathExpression}
+     * @param factory A configured XMLInputFactory used for every extraction
+     */
+    public SimpleContentExtractor(String selector, XMLInputFactory factory) {
+		expression = PathExpression.valueOf(selector);
 		pathExpressionExtractor = new PathExpressionXMLContentExtractor(
-				Collections.singleton(expression));
+				Collections.singleton(expression), factory);
 	}
     
     /**
@@ -102,4 +116,221 @@ public class SimpleContentExtractor {
 		Map<PathExpression,String> results = pathExpressionExtractor.extractElementText(reader);
 		return results.get(expression);
 	}
+
+	/**
+	 * Extract the first occurrence of the element matching the selector and return its 
+     * contents as the required type
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the XML declaration
+	 * @param requiredType The return type: String.class, Node.class or Element.class
+	 * @return The target element
+	 * @throws XMLStreamException
+	 */
+	public <T> T extractElement(InputStream inputStream, Class<T> requiredType) throws XMLStreamException {
+		return pathExpressionExtractor.extractElements(inputStream, requiredType).get(expression);
+	}
+
+	/**
+	 * Extract the first occurrence of the element matching the selector and return its 
+     * contents as the required type
+	 * @param xml The XML input bytes. The encoding is detected from the XML declaration
+	 * @param requiredType The return type: String.class, Node.class or Element.class
+	 * @return The target element
+	 * @throws XMLStreamException
+	 */
+	public <T> T extractElement(byte[] xml, Class<T> requiredType) throws XMLStreamException {
+		return pathExpressionExtractor.extractElements(xml, requiredType).get(expression);
+	}
+
+	/**
+	 * Extract the first occurrence of the element matching the selector and return its 
+     * contents as the required type
+	 * @param xml The XML input, the remaining bytes of the buffer. The encoding is detected from the XML declaration
+	 * @param requiredType The return type: String.class, Node.class or Element.class
+	 * @return The target element
+	 * @throws XMLStreamException
+	 */
+	public <T> T extractElement(ByteBuffer xml, Class<T> requiredType) throws XMLStreamException {
+		return pathExpressionExtractor.extractElements(xml, requiredType).get(expression);
+	}
+
+	/**
+	 * Extract the first occurrence of the element matching the selector and return its 
+     * contents as the required type
+	 * @param path The XML file. The encoding is detected from the XML declaration
+	 * @param requiredType The return type: String.class, Node.class or Element.class
+	 * @return The target element
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public <T> T extractElement(Path path, Class<T> requiredType) throws XMLStreamException, IOException {
+		return pathExpressionExtractor.extractElements(path, requiredType).get(expression);
+	}
+
+	/**
+	 * Extract the text contents of the first occurrence of the element matching the 
+	 * selector 
+	 * 
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the XML declaration
+	 * @return The element text
+	 * @throws XMLStreamException
+	 */
+	public String extractElementText(InputStream inputStream) throws XMLStreamException {
+		return pathExpressionExtractor.extractElementText(inputStream).get(expression);
+	}
+
+	/**
+	 * Extract the text contents of the first occurrence of the element matching the 
+	 * selector 
+	 * 
+	 * @param xml The XML input bytes. The encoding is detected from the XML declaration
+	 * @return The element text
+	 * @throws XMLStreamException
+	 */
+	public String extractElementText(byte[] xml) throws XMLStreamException {
+		return pathExpressionExtractor.extractElementText(xml).get(expression);
+	}
+
+	/**
+	 * Extract the text contents of the first occurrence of the element matching the 
+	 * selector 
+	 * 
+	 * @param xml The XML input, the remaining bytes of the buffer. The encoding is detected from the XML declaration
+	 * @return The element text
+	 * @throws XMLStreamException
+	 */
+	public String extractElementText(ByteBuffer xml) throws XMLStreamException {
+		return pathExpressionExtractor.extractElementText(xml).get(expression);
+	}
+
+	/**
+	 * Extract the text contents of the first occurrence of the element matching the 
+	 * selector 
+	 * 
+	 * @param path The XML file. The encoding is detected from the XML declaration
+	 * @return The element text
+	 * @throws XMLStreamException
+	 * @throws IOException
+	 */
+	public String extractElementText(Path path) throws XMLStreamException, IOException {
+		return pathExpressionExtractor.extractElementText(path).get(expression);
+	}
+
+	/**
+	 * Extract the first value matching the selector as a long, without allocating a String
+	 * @param xml The XML input string
+	 * @param defaultValue the result if there is no match
+	 * @return The value
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException if the value is not an integer in the range of a long
+	 * @see TextValues
+	 */
+	public long extractLong(String xml, long defaultValue) throws XMLStreamException {
+		return extractValues(xml).getLong(0, defaultValue);
+	}
+
+	/**
+	 * Extract the first value matching the selector as a long, without allocating a String
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the XML declaration
+	 * @param defaultValue the result if there is no match
+	 * @return The value
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException if the value is not an integer in the range of a long
+	 * @see TextValues
+	 */
+	public long extractLong(InputStream inputStream, long defaultValue) throws XMLStreamException {
+		return extractValues(inputStream).getLong(0, defaultValue);
+	}
+
+	/**
+	 * Extract the first value matching the selector as an int, without allocating a String
+	 * @param xml The XML input string
+	 * @param defaultValue the result if there is no match
+	 * @return The value
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException if the value is not an integer in the range of an int
+	 * @see TextValues
+	 */
+	public int extractInt(String xml, int defaultValue) throws XMLStreamException {
+		return extractValues(xml).getInt(0, defaultValue);
+	}
+
+	/**
+	 * Extract the first value matching the selector as an int, without allocating a String
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the XML declaration
+	 * @param defaultValue the result if there is no match
+	 * @return The value
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException if the value is not an integer in the range of an int
+	 * @see TextValues
+	 */
+	public int extractInt(InputStream inputStream, int defaultValue) throws XMLStreamException {
+		return extractValues(inputStream).getInt(0, defaultValue);
+	}
+
+	/**
+	 * Extract the first value matching the selector as a double, without allocating a String
+	 * @param xml The XML input string
+	 * @param defaultValue the result if there is no match
+	 * @return The value
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException if the value is not a double
+	 * @see TextValues
+	 */
+	public double extractDouble(String xml, double defaultValue) throws XMLStreamException {
+		return extractValues(xml).getDouble(0, defaultValue);
+	}
+
+	/**
+	 * Extract the first value matching the selector as a double, without allocating a String
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the XML declaration
+	 * @param defaultValue the result if there is no match
+	 * @return The value
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException if the value is not a double
+	 * @see TextValues
+	 */
+	public double extractDouble(InputStream inputStream, double defaultValue) throws XMLStreamException {
+		return extractValues(inputStream).getDouble(0, defaultValue);
+	}
+
+	/**
+	 * Extract the first value matching the selector as a boolean, without allocating a String
+	 * @param xml The XML input string
+	 * @param defaultValue the result if there is no match
+	 * @return The value
+	 * @throws XMLStreamException
+	 * @throws IllegalArgumentException if the value is not a boolean
+	 * @see TextValues
+	 */
+	public boolean extractBoolean(String xml, boolean defaultValue) throws XMLStreamException {
+		return extractValues(xml).getBoolean(0, defaultValue);
+	}
+
+	/**
+	 * Extract the first value matching the selector as a BigDecimal
+	 * @param xml The XML input string
+	 * @return The value, or <code>null</code> if there is no match
+	 * @throws XMLStreamException
+	 * @throws NumberFormatException if the value is not a decimal
+	 * @see TextValues
+	 */
+	public BigDecimal extractDecimal(String xml) throws XMLStreamException {
+		return extractValues(xml).getDecimal(0);
+	}
+
+	/*
+	 * The record of the current thread, holding the single expression. It is shared by every instance, as its values 
+	 * are read before the thread extracts again
+	 */
+	private TextValues extractValues(String xml) throws XMLStreamException {
+		TextValues values = XMLStreamReaderTemplateProvider.getTextValues(1);
+		pathExpressionExtractor.extractValues(xml, values);
+		return values;
+	}
+
+	private TextValues extractValues(InputStream inputStream) throws XMLStreamException {
+		TextValues values = XMLStreamReaderTemplateProvider.getTextValues(1);
+		pathExpressionExtractor.extractValues(inputStream, values);
+		return values;
+	}
 }
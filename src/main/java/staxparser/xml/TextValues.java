@@ -0,0 +1,382 @@
+package staxparser.xml;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A reusable record of the text of the first element matching each {@link PathExpression} of a
+ * {@link PathExpressionXMLContentExtractor}, indexed by {@link PathExpressionXMLContentExtractor#indexOf(PathExpression)}.
+ * The text is copied from the reader's character buffer into a buffer owned by this record, and numbers and booleans
+ * are parsed from it, so reading a value allocates no String. Values use the XML Schema lexical forms; surrounding
+ * whitespace is ignored.
+ *
+ * <p>The record is cleared by each extraction. This class is not thread safe: use one instance per thread.
+ *
+ * @see PathExpressionXMLContentExtractor#extractValues(String, TextValues)
+ */
+public final class TextValues {
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private char[] chars = new char[256];
+	private int used;
+	/*
+	 * The text of each expression is chars[starts[i]] to chars[ends[i]]. A start of -1 means no match
+	 */
+	private final int[] starts;
+	private final int[] ends;
+	private int unresolved;
+
+	TextValues(int size) {
+		starts = new int[size];
+		ends = new int[size];
+		clear();
+	}
+
+	/**
+	 *
+	 * @return the number of expressions
+	 */
+	public int size() {
+		return starts.length;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return <code>true</code> if a value was found for the expression
+	 */
+	public boolean isPresent(int index) {
+		return starts[index] >= 0;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the value as a String, or <code>null</code> if no value was found. This allocates a String
+	 */
+	public String getString(int index) {
+		return isPresent(index) ? new String(chars, starts[index], ends[index] - starts[index]) : null;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the value
+	 * @throws NoSuchElementException if no value was found
+	 * @throws NumberFormatException if the value is not an integer in the range of a long
+	 */
+	public long getLong(int index) {
+		int start = trimmedStart(index);
+		int end = trimmedEnd(index);
+		int i = start;
+		boolean negative = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			negative = chars[i++] == '-';
+		}
+		if (i == end) {
+			throw invalid(index, "long");
+		}
+		/*
+		 * Accumulate negatively, so Long.MIN_VALUE can be represented
+		 */
+		long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9 || result < limit / 10) {
+				throw invalid(index, "long");
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw invalid(index, "long");
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @param defaultValue the result if no value was found
+	 * @return the value
+	 * @throws NumberFormatException if the value is not an integer in the range of a long
+	 */
+	public long getLong(int index, long defaultValue) {
+		return isPresent(index) ? getLong(index) : defaultValue;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the value
+	 * @throws NoSuchElementException if no value was found
+	 * @throws NumberFormatException if the value is not an integer in the range of an int
+	 */
+	public int getInt(int index) {
+		long value = getLong(index);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw invalid(index, "int");
+		}
+		return (int) value;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @param defaultValue the result if no value was found
+	 * @return the value
+	 * @throws NumberFormatException if the value is not an integer in the range of an int
+	 */
+	public int getInt(int index, int defaultValue) {
+		return isPresent(index) ? getInt(index) : defaultValue;
+	}
+
+	/**
+	 * Decimal values with up to 15 significant digits are converted directly. Others are converted by
+	 * {@link Double#parseDouble(String)}
+	 * @param index the expression index
+	 * @return the value
+	 * @throws NoSuchElementException if no value was found
+	 * @throws NumberFormatException if the value is not a double
+	 */
+	public double getDouble(int index) {
+		int start = trimmedStart(index);
+		int end = trimmedEnd(index);
+		int i = start;
+		boolean negative = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			negative = chars[i++] == '-';
+		}
+		if (matches(i, end, "INF")) {
+			return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+		}
+		if (i == start && matches(i, end, "NaN")) {
+			return Double.NaN;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean point = false;
+		for (; i < end; i++) {
+			char c = chars[i];
+			if (c >= '0' && c <= '9') {
+				digits++;
+				if (mantissa > 0 || c != '0') {
+					if (++significantDigits > 15) {
+						return parseDouble(index);
+					}
+					mantissa = mantissa * 10 + (c - '0');
+				}
+				if (point) {
+					exponent--;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			throw invalid(index, "double");
+		}
+		if (i < end) {
+			if (chars[i] != 'e' && chars[i] != 'E') {
+				throw invalid(index, "double");
+			}
+			int e = parseExponent(index, i + 1, end);
+			if (e > 400 || e < -400) {
+				return parseDouble(index);
+			}
+			exponent += e;
+		}
+		double value;
+		if (mantissa == 0) {
+			value = 0.0;
+		} else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+			value = mantissa * POWERS_OF_TEN[exponent];
+		} else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+			value = mantissa / POWERS_OF_TEN[-exponent];
+		} else {
+			return parseDouble(index);
+		}
+		return negative ? -value : value;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @param defaultValue the result if no value was found
+	 * @return the value
+	 * @throws NumberFormatException if the value is not a double
+	 */
+	public double getDouble(int index, double defaultValue) {
+		return isPresent(index) ? getDouble(index) : defaultValue;
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return the value, or <code>null</code> if no value was found
+	 * @throws NumberFormatException if the value is not a decimal
+	 */
+	public BigDecimal getDecimal(int index) {
+		if (!isPresent(index)) {
+			return null;
+		}
+		int start = trimmedStart(index);
+		int end = trimmedEnd(index);
+		if (start == end) {
+			throw invalid(index, "decimal");
+		}
+		return new BigDecimal(chars, start, end - start);
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @return <code>true</code> for "true" or "1", <code>false</code> for "false" or "0"
+	 * @throws NoSuchElementException if no value was found
+	 * @throws IllegalArgumentException if the value is not a boolean
+	 */
+	public boolean getBoolean(int index) {
+		int start = trimmedStart(index);
+		int end = trimmedEnd(index);
+		if (matches(start, end, "true") || matches(start, end, "1")) {
+			return true;
+		}
+		if (matches(start, end, "false") || matches(start, end, "0")) {
+			return false;
+		}
+		throw new IllegalArgumentException("not a boolean: \"" + getString(index) + "\"");
+	}
+
+	/**
+	 *
+	 * @param index the expression index
+	 * @param defaultValue the result if no value was found
+	 * @return <code>true</code> for "true" or "1", <code>false</code> for "false" or "0"
+	 * @throws IllegalArgumentException if the value is not a boolean
+	 */
+	public boolean getBoolean(int index, boolean defaultValue) {
+		return isPresent(index) ? getBoolean(index) : defaultValue;
+	}
+
+	/**
+	 * Remove all values
+	 */
+	public void clear() {
+		Arrays.fill(starts, -1);
+		used = 0;
+		unresolved = starts.length;
+	}
+
+	/*
+	 * The number of expressions without a value
+	 */
+	int unresolved() {
+		return unresolved;
+	}
+
+	/*
+	 * Start the text of the next value. Text is appended until it is assigned to one or more expressions
+	 */
+	int startValue() {
+		return used;
+	}
+
+	void append(char[] text, int start, int length) {
+		if (used + length > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, used + length));
+		}
+		System.arraycopy(text, start, chars, used, length);
+		used += length;
+	}
+
+	void append(String text) {
+		if (used + text.length() > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, used + text.length()));
+		}
+		text.getChars(0, text.length(), chars, used);
+		used += text.length();
+	}
+
+	/*
+	 * Assign the text appended since start to an expression without a value
+	 */
+	void assign(int index, int start) {
+		if (starts[index] < 0) {
+			unresolved--;
+		}
+		starts[index] = start;
+		ends[index] = used;
+	}
+
+	private int trimmedStart(int index) {
+		if (!isPresent(index)) {
+			throw new NoSuchElementException("no value for expression " + index);
+		}
+		int i = starts[index];
+		while (i < ends[index] && isWhitespace(chars[i])) {
+			i++;
+		}
+		return i;
+	}
+
+	private int trimmedEnd(int index) {
+		int i = ends[index];
+		while (i > starts[index] && isWhitespace(chars[i - 1])) {
+			i--;
+		}
+		return i;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private boolean matches(int start, int end, String s) {
+		if (end - start != s.length()) {
+			return false;
+		}
+		for (int i = 0; i < s.length(); i++) {
+			if (chars[start + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int parseExponent(int index, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+			negative = chars[i++] == '-';
+		}
+		if (i == end) {
+			throw invalid(index, "double");
+		}
+		int exponent = 0;
+		for (; i < end; i++) {
+			int digit = chars[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw invalid(index, "double");
+			}
+			if (exponent < 10000) {
+				exponent = exponent * 10 + digit;
+			}
+		}
+		return negative ? -exponent : exponent;
+	}
+
+	private double parseDouble(int index) {
+		return Double.parseDouble(getString(index).trim());
+	}
+
+	private NumberFormatException invalid(int index, String type) {
+		return new NumberFormatException("not a " + type + ": \"" + getString(index) + "\"");
+	}
+}
@@ -0,0 +1,270 @@
+package staxparser.xml;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.stream.EventFilter;
+import javax.xml.stream.StreamFilter;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLReporter;
+import javax.xml.stream.XMLResolver;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.XMLEventAllocator;
+import javax.xml.transform.Source;
+
+/**
+ * Provides shared, pre-configured {@link javax.xml.stream.XMLInputFactory} instances.
+ * <code>XMLInputFactory.newInstance()</code> performs a service lookup on every call, so factories are created once for
+ * each distinct set of factory properties and reused by {@link XMLStreamReaderTemplate} and the content extractors.
+ * At most {@link #MAX_FACTORIES} sets of properties are kept; factories for further sets are created on every call.
+ *
+ * <p>The JDK's factory keeps a reference to the last reader it created, and so to that reader's input. When the
+ * lookup finds the JDK implementation, the shared factory therefore creates each reader from a new JDK factory with
+ * the same properties, so no document stays reachable through it. Other implementations are shared as they are.
+ * Factories handed out by this class are shared between threads and cannot be reconfigured.
+ *
+ * <p>This class is thread safe.
+ */
+public final class XMLInputFactoryProvider {
+	/**
+	 * The maximum number of sets of factory properties whose factory is kept
+	 */
+	public static final int MAX_FACTORIES = 64;
+
+	private static final Properties NO_PROPERTIES = new Properties();
+	private static final ConcurrentMap<Properties, XMLInputFactory> factories =
+		new ConcurrentHashMap<Properties, XMLInputFactory>();
+	private static final Class<?> JDK_FACTORY_CLASS = XMLInputFactory.newDefaultFactory().getClass();
+
+	private XMLInputFactoryProvider() {
+	}
+
+	/**
+	 * Returns the shared factory configured with the default properties
+	 * @return the factory
+	 */
+	public static XMLInputFactory getFactory() {
+		return getFactory(null);
+	}
+
+	/**
+	 * Returns the shared factory configured with the given properties, creating it on first use
+	 * @param factoryProperties XMLInputFactory properties, or <code>null</code> for the default factory
+	 * @return the factory
+	 */
+	public static XMLInputFactory getFactory(Properties factoryProperties) {
+		Properties key = (factoryProperties == null) ? NO_PROPERTIES : factoryProperties;
+		XMLInputFactory factory = factories.get(key);
+		if (factory == null) {
+			Properties properties = copyOf(key);
+			factory = createFactory(properties);
+			if (factories.size() < MAX_FACTORIES) {
+				XMLInputFactory existing = factories.putIfAbsent(properties, factory);
+				if (existing != null) {
+					factory = existing;
+				}
+			}
+		}
+		return factory;
+	}
+
+	/*
+	 * Register a configured factory to be returned for the given properties, replacing any factory previously
+	 * provided for them. A registered JDK factory is shared as it is, so it keeps the last document reachable
+	 */
+	static void registerFactory(Properties factoryProperties, XMLInputFactory factory) {
+		if (factory == null) {
+			throw new IllegalArgumentException("factory cannot be null");
+		}
+		factories.put(copyOf(factoryProperties == null ? NO_PROPERTIES : factoryProperties), factory);
+	}
+
+	/*
+	 * Discard all shared and registered factories
+	 */
+	static void clear() {
+		factories.clear();
+	}
+
+	/**
+	 * Create a new factory and apply the given properties
+	 * @param factoryProperties XMLInputFactory properties, may be <code>null</code>
+	 * @return the new factory
+	 */
+	static XMLInputFactory createFactory(Properties factoryProperties) {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		if (factory.getClass() == JDK_FACTORY_CLASS) {
+			return new JDKFactory(factoryProperties);
+		}
+		configure(factory, factoryProperties);
+		return factory;
+	}
+
+	private static void configure(XMLInputFactory factory, Properties factoryProperties) {
+		if (factoryProperties != null) {
+			for (Entry<Object, Object> property : factoryProperties.entrySet()) {
+				factory.setProperty(property.getKey().toString(), property.getValue());
+			}
+		}
+	}
+
+	/*
+	 * Keys are copied so later changes to the caller's Properties do not corrupt the map
+	 */
+	private static Properties copyOf(Properties properties) {
+		Properties copy = new Properties();
+		copy.putAll(properties);
+		return copy;
+	}
+
+	/*
+	 * Creates every reader from a new JDK factory, which is dropped with its reference to the reader. A new default
+	 * factory costs no service lookup
+	 */
+	private static final class JDKFactory extends XMLInputFactory {
+		private final Properties properties;
+		/*
+		 * Answers property queries. It never creates a reader
+		 */
+		private final XMLInputFactory configuration;
+
+		JDKFactory(Properties factoryProperties) {
+			properties = (factoryProperties == null) ? NO_PROPERTIES : copyOf(factoryProperties);
+			configuration = readerFactory();
+		}
+
+		private XMLInputFactory readerFactory() {
+			XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+			configure(factory, properties);
+			return factory;
+		}
+
+		@Override
+		public XMLStreamReader createXMLStreamReader(Reader reader) throws XMLStreamException {
+			return readerFactory().createXMLStreamReader(reader);
+		}
+
+		@Override
+		public XMLStreamReader createXMLStreamReader(Source source) throws XMLStreamException {
+			return readerFactory().createXMLStreamReader(source);
+		}
+
+		@Override
+		public XMLStreamReader createXMLStreamReader(InputStream stream) throws XMLStreamException {
+			return readerFactory().createXMLStreamReader(stream);
+		}
+
+		@Override
+		public XMLStreamReader createXMLStreamReader(InputStream stream, String encoding) throws XMLStreamException {
+			return readerFactory().createXMLStreamReader(stream, encoding);
+		}
+
+		@Override
+		public XMLStreamReader createXMLStreamReader(String systemId, InputStream stream) throws XMLStreamException {
+			return readerFactory().createXMLStreamReader(systemId, stream);
+		}
+
+		@Override
+		public XMLStreamReader createXMLStreamReader(String systemId, Reader reader) throws XMLStreamException {
+			return readerFactory().createXMLStreamReader(systemId, reader);
+		}
+
+		@Override
+		public XMLEventReader createXMLEventReader(Reader reader) throws XMLStreamException {
+			return readerFactory().createXMLEventReader(reader);
+		}
+
+		@Override
+		public XMLEventReader createXMLEventReader(String systemId, Reader reader) throws XMLStreamException {
+			return readerFactory().createXMLEventReader(systemId, reader);
+		}
+
+		@Override
+		public XMLEventReader createXMLEventReader(XMLStreamReader reader) throws XMLStreamException {
+			return readerFactory().createXMLEventReader(reader);
+		}
+
+		@Override
+		public XMLEventReader createXMLEventReader(Source source) throws XMLStreamException {
+			return readerFactory().createXMLEventReader(source);
+		}
+
+		@Override
+		public XMLEventReader createXMLEventReader(InputStream stream) throws XMLStreamException {
+			return readerFactory().createXMLEventReader(stream);
+		}
+
+		@Override
+		public XMLEventReader createXMLEventReader(InputStream stream, String encoding) throws XMLStreamException {
+			return readerFactory().createXMLEventReader(stream, encoding);
+		}
+
+		@Override
+		public XMLEventReader createXMLEventReader(String systemId, InputStream stream) throws XMLStreamException {
+			return readerFactory().createXMLEventReader(systemId, stream);
+		}
+
+		@Override
+		public XMLStreamReader createFilteredReader(XMLStreamReader reader, StreamFilter filter)
+		throws XMLStreamException {
+			return readerFactory().createFilteredReader(reader, filter);
+		}
+
+		@Override
+		public XMLEventReader createFilteredReader(XMLEventReader reader, EventFilter filter)
+		throws XMLStreamException {
+			return readerFactory().createFilteredReader(reader, filter);
+		}
+
+		@Override
+		public XMLResolver getXMLResolver() {
+			return configuration.getXMLResolver();
+		}
+
+		@Override
+		public void setXMLResolver(XMLResolver resolver) {
+			throw new UnsupportedOperationException("a shared XMLInputFactory cannot be reconfigured");
+		}
+
+		@Override
+		public XMLReporter getXMLReporter() {
+			return configuration.getXMLReporter();
+		}
+
+		@Override
+		public void setXMLReporter(XMLReporter reporter) {
+			throw new UnsupportedOperationException("a shared XMLInputFactory cannot be reconfigured");
+		}
+
+		@Override
+		public void setProperty(String name, Object value) {
+			throw new UnsupportedOperationException("a shared XMLInputFactory cannot be reconfigured");
+		}
+
+		@Override
+		public Object getProperty(String name) {
+			return configuration.getProperty(name);
+		}
+
+		@Override
+		public boolean isPropertySupported(String name) {
+			return configuration.isPropertySupported(name);
+		}
+
+		@Override
+		public void setEventAllocator(XMLEventAllocator allocator) {
+			throw new UnsupportedOperationException("a shared XMLInputFactory cannot be reconfigured");
+		}
+
+		@Override
+		public XMLEventAllocator getEventAllocator() {
+			return configuration.getEventAllocator();
+		}
+	}
+}
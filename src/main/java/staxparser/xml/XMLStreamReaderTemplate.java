@@ -1,17 +1,28 @@
 package staxparser.xml;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.Set;
+import java.util.stream.Stream;
 
+import javax.xml.XMLConstants;
 import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -23,12 +34,12 @@ import org.apache.log4j.Logger;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
-import staxparser.util.XMLUtils;
-
+import staxparser.util.ByteBufferInputStream;
 
 /**
  * A wrapper class providing convenience functions over {@link javax.xml.stream.XMLStreamReader}. This class is not 
- * thread safe (e.g., a new instance is required for each thread).
+ * thread safe (e.g., a new instance is required for each thread). An instance may be reused for further documents
+ * on the same thread with reset(), see {@link XMLStreamReaderTemplateProvider}.
  * @author David Turanski
  *
  */
@@ -36,8 +47,25 @@ public class XMLStreamReaderTemplate {
 
 	protected final Logger logger = Logger.getLogger(this.getClass());
 	private final XMLInputFactory factory;
-	private final Set<String> declaredNamespaces;
+	private Set<String> declaredNamespaces;
 	protected XMLStreamReader xmlStreamReader;
+	private Closeable source;
+	/*
+	 * The input, if it is a String, for element slices
+	 */
+	private String sourceText;
+	private CharOffsetLocator sourceLocator;
+	/*
+	 * The XMLStreamWriter used for the last output target, reused while the target is unchanged
+	 */
+	private XMLStreamWriter staxWriter;
+	private Object staxWriterTarget;
+	private String staxWriterEncoding;
+	private StringWriter elementWriter;
+	/*
+	 * XMLOutputFactory.newInstance() is a service lookup. Once configured, the factory is safe to share
+	 */
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
 	private static Set<Class<?>> SUPPORTED_TYPES = new HashSet<Class<?>>(Arrays.asList(
 		new Class<?>[] { String.class, Node.class,Element.class }));
 
@@ -53,15 +81,19 @@ public class XMLStreamReaderTemplate {
      * 
      * @param reader A Reader for the XML input stream
      * @param factoryProperties XMLInputFactory properties
+     * @see XMLInputFactoryProvider
      */
     public XMLStreamReaderTemplate(Reader reader,Properties factoryProperties) {
-        factory = XMLInputFactory.newInstance();
-        if (factoryProperties != null){
-            for ( Entry<Object, Object> property: factoryProperties.entrySet()){
-            factory.setProperty(property.getKey().toString(), property.getValue());
-            }
-        }
-        declaredNamespaces = new HashSet<String>();
+        this(XMLInputFactoryProvider.getFactory(factoryProperties), reader);
+    }
+
+    /**
+     * 
+     * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+     * @param reader A Reader for the XML input stream
+     */
+    public XMLStreamReaderTemplate(XMLInputFactory factory, Reader reader) {
+        this.factory = factory;
         try {
             initializeStreamReader(reader);
         } catch (XMLStreamException e) {
@@ -75,6 +107,7 @@ public class XMLStreamReaderTemplate {
 	 */
 	public XMLStreamReaderTemplate(String xml) {
 		this(new StringReader(xml),null);
+		sourceText = xml;
 	}
 	
 	/**
@@ -84,8 +117,164 @@ public class XMLStreamReaderTemplate {
      */
     public XMLStreamReaderTemplate(String xml, Properties factoryProperties) {
         this(new StringReader(xml),factoryProperties);
+        sourceText = xml;
+    }
+
+    /**
+     * Alternate constructor that creates a StringReader for the given input
+     * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+     * @param xml The XML input string
+     */
+    public XMLStreamReaderTemplate(XMLInputFactory factory, String xml) {
+        this(factory, new StringReader(xml));
+        sourceText = xml;
+    }
+
+    /**
+     * 
+     * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+     * XML declaration
+     */
+    public XMLStreamReaderTemplate(InputStream inputStream) {
+        this(inputStream, (Properties) null);
+    }
+
+    /**
+     * 
+     * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+     * XML declaration
+     * @param factoryProperties XMLInputFactory properties
+     */
+    public XMLStreamReaderTemplate(InputStream inputStream, Properties factoryProperties) {
+        this(XMLInputFactoryProvider.getFactory(factoryProperties), inputStream, null);
+    }
+
+    /**
+     * 
+     * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+     * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+     * XML declaration
+     */
+    public XMLStreamReaderTemplate(XMLInputFactory factory, InputStream inputStream) {
+        this(factory, inputStream, null);
+    }
+
+    /**
+     * 
+     * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+     * @param inputStream An InputStream for the XML input
+     * @param encoding The character encoding of the input, or <code>null</code> to detect it from the byte order mark 
+     * or the XML declaration
+     */
+    public XMLStreamReaderTemplate(XMLInputFactory factory, InputStream inputStream, String encoding) {
+        this(factory, inputStream, encoding, false);
+    }
+
+    /**
+     * Alternate constructor that reads the XML directly from a byte array
+     * @param xml The XML input. The encoding is detected from the byte order mark or the XML declaration
+     */
+    public XMLStreamReaderTemplate(byte[] xml) {
+        this(new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Alternate constructor that reads the XML directly from a byte array
+     * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+     * @param xml The XML input. The encoding is detected from the byte order mark or the XML declaration
+     */
+    public XMLStreamReaderTemplate(XMLInputFactory factory, byte[] xml) {
+        this(factory, new ByteArrayInputStream(xml));
+    }
+
+    /**
+     * Alternate constructor that reads the XML from the remaining bytes of a ByteBuffer. The position of the buffer
+     * is not changed
+     * @param xml The XML input. The encoding is detected from the byte order mark or the XML declaration
+     */
+    public XMLStreamReaderTemplate(ByteBuffer xml) {
+        this(new ByteBufferInputStream(xml));
+    }
+
+    /**
+     * Alternate constructor that reads the XML from the remaining bytes of a ByteBuffer. The position of the buffer
+     * is not changed
+     * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+     * @param xml The XML input. The encoding is detected from the byte order mark or the XML declaration
+     */
+    public XMLStreamReaderTemplate(XMLInputFactory factory, ByteBuffer xml) {
+        this(factory, new ByteBufferInputStream(xml));
+    }
+
+    /**
+     * Alternate constructor that reads the XML from a file. The file is closed by {@link #close()}
+     * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+     * @throws IOException
+     */
+    public XMLStreamReaderTemplate(Path path) throws IOException {
+        this(XMLInputFactoryProvider.getFactory(), path);
+    }
+
+    /**
+     * Alternate constructor that reads the XML from a file. The file is closed by {@link #close()}
+     * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+     * @param path The XML file. The encoding is detected from the byte order mark or the XML declaration
+     * @throws IOException
+     */
+    public XMLStreamReaderTemplate(XMLInputFactory factory, Path path) throws IOException {
+        this(factory, Files.newInputStream(path), null, true);
     }
 
+    /*
+     * If closeInput is set the input stream is owned by this instance and closed by close()
+     */
+    private XMLStreamReaderTemplate(XMLInputFactory factory, InputStream inputStream, String encoding,
+            boolean closeInput) {
+        this.factory = factory;
+        try {
+            initializeStreamReader(inputStream, encoding);
+        } catch (XMLStreamException e) {
+            closeQuietly(closeInput ? inputStream : null);
+            throw new RuntimeException(e);
+        }
+        source = closeInput ? inputStream : null;
+    }
+
+	/**
+	 * Close the current input and start reading another document with the same factory
+	 * @param reader A Reader for the XML input stream
+	 * @throws XMLStreamException
+	 */
+	public final void reset(Reader reader) throws XMLStreamException {
+		close();
+		sourceText = null;
+		sourceLocator = null;
+		initializeStreamReader(reader);
+	}
+
+	/**
+	 * Close the current input and start reading another document with the same factory
+	 * @param xml The XML input string
+	 * @throws XMLStreamException
+	 */
+	public final void reset(String xml) throws XMLStreamException {
+		reset(new StringReader(xml));
+		sourceText = xml;
+	}
+
+	/**
+	 * Close the current input and start reading another document with the same factory
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @throws XMLStreamException
+	 */
+	public final void reset(InputStream inputStream) throws XMLStreamException {
+		close();
+		sourceText = null;
+		sourceLocator = null;
+		initializeStreamReader(inputStream, null);
+	}
+
 	/**
 	 * Returns text at the current element
 	 * @return the text value
@@ -103,6 +292,40 @@ public class XMLStreamReaderTemplate {
 		return xmlStreamReader.getLocalName();
 	}
 
+	/**
+	 * Returns the namespace URI of the current element
+	 * @return the namespace URI, or <code>null</code> if the element has no namespace
+	 */
+	public final String getNamespaceURI() {
+		return xmlStreamReader.getNamespaceURI();
+	}
+
+	/**
+	 * Returns the value of an attribute of the current element
+	 * @param namespaceURI the attribute namespace URI, or <code>null</code> to match any namespace
+	 * @param localName the attribute local name
+	 * @return the attribute value, or <code>null</code> if the element has no such attribute
+	 */
+	public final String getAttributeValue(String namespaceURI, String localName) {
+		return xmlStreamReader.getAttributeValue(namespaceURI, localName);
+	}
+
+	/**
+	 * Returns the location of the end of the current event
+	 * @return the {@link javax.xml.stream.Location}
+	 */
+	public final Location getLocation() {
+		return xmlStreamReader.getLocation();
+	}
+
+	/**
+	 * Returns the input encoding if known
+	 * @return the encoding, or <code>null</code> if it is not known
+	 */
+	public final String getEncoding() {
+		return xmlStreamReader.getEncoding();
+	}
+
 	/**
 	 * Returns the QName of the current element
 	 * @return the {@link javax.xml.namespace.QName} 
@@ -130,7 +353,7 @@ public class XMLStreamReaderTemplate {
 	}
 
 	/**
-	 * Get the current element 
+	 * Get the current element. An Element or Node is the document element of a new Document, owned by the caller
 	 * @param requiredType The result type one of: <code>String.class, Element.class, Node.class</code>
 	 * @return the element
 	 * @throws XMLStreamException
@@ -138,15 +361,18 @@ public class XMLStreamReaderTemplate {
 	@SuppressWarnings("unchecked")
 	public final <T> T getElement(Class<T> requiredType) throws XMLStreamException {
 		validateRequiredTypeIsSupported(requiredType);
-		StringWriter writer = new StringWriter();
-		writeElement(writer);
-
-		String xml = writer.toString();
-
-		if (requiredType.equals(String.class))
-			return (T) xml;
-		else
-			return (T) XMLUtils.stringToElement(writer.toString());
+		if (requiredType.equals(String.class)) {
+			if (elementWriter == null) {
+				elementWriter = new StringWriter();
+			} else {
+				elementWriter.getBuffer().setLength(0);
+			}
+			writeElement(elementWriter);
+			return (T) elementWriter.toString();
+		} 
+		
+		validateCurrentElement();
+		return (T) DOMElementBuilder.buildElement(xmlStreamReader);
 	}
 
 	/** 
@@ -170,29 +396,92 @@ public class XMLStreamReaderTemplate {
 		return getQNameAsString();
 	}
 
+	/**
+	 * Returns a lazy, ordered Stream of every element matching the expression. The expression is matched from the 
+	 * document root, so the cursor must be at the start of the document. The reader is only advanced as the stream 
+	 * is consumed, replacing a {@link #nextElement(String)} loop. A parallel stream parses batches of elements 
+	 * sequentially and hands them to other threads for processing. This template is closed at the end of the 
+	 * document or when the stream is closed. Parse errors are thrown as RuntimeExceptions
+	 * @param expression selects the elements
+	 * @param requiredType The required result type (<code>String.class, Element.class,Node.class</code>)
+	 * @return the elements
+	 * @throws IllegalStateException if the cursor is not at the start of the document
+	 */
+	public final <T> Stream<T> stream(PathExpression expression, Class<T> requiredType) {
+		validateStartOfDocument();
+		PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+				Collections.singleton(expression), factory);
+		return extractor.stream(this, PathExpressionXMLContentExtractor.returnTypeFor(requiredType), false);
+	}
+
+	/**
+	 * Returns a lazy, ordered Stream of the text of every element matching the expression, or of the attribute value 
+	 * for an attribute expression. See {@link #stream(PathExpression, Class)}
+	 * @param expression selects the elements
+	 * @return the text of the elements
+	 * @throws IllegalStateException if the cursor is not at the start of the document
+	 */
+	public final Stream<String> streamElementText(PathExpression expression) {
+		validateStartOfDocument();
+		PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+				Collections.singleton(expression), factory);
+		return extractor.stream(this, PathExpressionXMLContentExtractor.RETURN_TYPE.text, false);
+	}
+
 	/**
 	 * Write the current element contents to a Writer
 	 * @param writer The Writer used to access the output stream
 	 * @throws XMLStreamException
 	 */
 	public final void writeElement(Writer writer) throws XMLStreamException {
-		XMLOutputFactory oFactory = XMLOutputFactory.newInstance();
-		XMLStreamWriter staxWriter = oFactory.createXMLStreamWriter(writer);
-		declaredNamespaces.clear();
-		String elementName = null;
+		if (staxWriterTarget != writer) {
+			setStaxWriter(OUTPUT_FACTORY.createXMLStreamWriter(writer), writer, null);
+		}
+		writeElement(staxWriter);
+	}
 
+	/**
+	 * Write the current element contents to an OutputStream. The XML declaration is not written
+	 * @param outputStream The OutputStream
+	 * @param encoding The character encoding of the output, e.g., "ISO-8859-1", or <code>null</code> for UTF-8
+	 * @throws XMLStreamException
+	 */
+	public final void writeElement(OutputStream outputStream, String encoding) throws XMLStreamException {
+		if (encoding == null) {
+			encoding = "UTF-8";
+		}
+		if (staxWriterTarget != outputStream || !encoding.equals(staxWriterEncoding)) {
+			setStaxWriter(OUTPUT_FACTORY.createXMLStreamWriter(outputStream, encoding), outputStream, encoding);
+		}
+		writeElement(staxWriter);
+	}
+
+	private void setStaxWriter(XMLStreamWriter writer, Object target, String encoding) {
+		staxWriter = writer;
+		staxWriterTarget = target;
+		staxWriterEncoding = encoding;
+	}
+
+	/*
+	 * The writer is flushed rather than closed, so it can write the next element to the same target. A writer
+	 * left in the middle of an element by an exception is discarded
+	 */
+	private void writeElement(XMLStreamWriter staxWriter) throws XMLStreamException {
+		boolean complete = false;
 		try {
-			elementName = xmlStreamReader.getLocalName();
-		} catch (Exception e) {
-			String msg;
-			if (xmlStreamReader.getEventType() == XMLEvent.END_DOCUMENT) {
-				msg = "END_DOCUMENT reached: no more elements on the stream.";
-			} else {
-				msg = e.getMessage();
+			writeElementEvents(staxWriter);
+			staxWriter.flush();
+			complete = true;
+		} finally {
+			if (!complete) {
+				setStaxWriter(null, null, null);
 			}
-
-			throw new NoSuchElementException(msg);
 		}
+	}
+
+	private void writeElementEvents(XMLStreamWriter staxWriter) throws XMLStreamException {
+		clearDeclaredNamespaces();
+		validateCurrentElement();
 
 		staxWriter.writeStartElement(xmlStreamReader.getName().getPrefix(), xmlStreamReader.getName().getLocalPart(),
 				xmlStreamReader.getName().getNamespaceURI());
@@ -201,10 +490,14 @@ public class XMLStreamReaderTemplate {
 		writeNamespaces(staxWriter);
 		int event;
 		int attrIndex = 0;
-		boolean writing = true;
-		while (writing && (event = xmlStreamReader.next()) != XMLEvent.END_DOCUMENT) {
+		/*
+		 * The depth below the element, so nested elements of the same name do not end it
+		 */
+		int depth = 1;
+		while (depth > 0 && (event = xmlStreamReader.next()) != XMLEvent.END_DOCUMENT) {
 			switch (event) {
 			case XMLEvent.START_ELEMENT:
+				depth++;
 				attrIndex = 0;
 				staxWriter.writeStartElement(xmlStreamReader.getName().getPrefix(), xmlStreamReader.getName()
 						.getLocalPart(), xmlStreamReader.getName().getNamespaceURI());
@@ -215,7 +508,7 @@ public class XMLStreamReaderTemplate {
 				break;
 			case XMLEvent.END_ELEMENT:
 				staxWriter.writeEndElement();
-				writing = !xmlStreamReader.getLocalName().equals(elementName);
+				depth--;
 				break;
 			case XMLEvent.ATTRIBUTE:
 				staxWriter.writeAttribute(xmlStreamReader.getAttributeLocalName(attrIndex),
@@ -233,7 +526,35 @@ public class XMLStreamReaderTemplate {
 			}
 
 		}
-		staxWriter.close();
+	}
+
+	/**
+	 * Return the current element exactly as it appears in the input, without parsing it into events for an 
+	 * XMLStreamWriter. The cursor is positioned at the END_ELEMENT. This requires a String input: slices of byte 
+	 * inputs are not supported. Elements must be requested in document order
+	 * @return a view of the element in the input
+	 * @throws XMLStreamException if the element location is not available
+	 * @throws IllegalStateException if the input is not a String
+	 */
+	public final ElementSlice getElementSlice() throws XMLStreamException {
+		if (sourceText == null) {
+			throw new IllegalStateException("element slices require String input");
+		}
+		validateCurrentElement();
+		if (sourceLocator == null) {
+			sourceLocator = new CharOffsetLocator(sourceText);
+		}
+		int start = sourceLocator.offset(xmlStreamReader.getLocation()) - 1;
+		if (start >= 0) {
+			start = sourceText.lastIndexOf('<', start);
+		}
+		skipElement();
+		int end = sourceLocator.offset(xmlStreamReader.getLocation());
+		if (start < 0 || end <= start || end > sourceText.length() || sourceText.charAt(end - 1) != '>') {
+			throw new XMLStreamException("the source location of element " + getLocalName() + " is not available", 
+					xmlStreamReader.getLocation());
+		}
+		return new ElementSlice(sourceText, start, end - start);
 	}
 
 	/**
@@ -362,6 +683,59 @@ public class XMLStreamReaderTemplate {
 		return count;
 	}
 
+	/**
+	 * Return a count of the elements matching the expression in the document. The expression is matched from the 
+	 * document root, using the path of each element rather than its name alone. Element content is not read and 
+	 * subtrees in which the expression cannot match are skipped. For an attribute expression, the elements having 
+	 * the attribute are counted. The cursor must be at the start of the document, and is moved to its end. Returns 0 
+	 * at the end of the document
+	 * @param expression selects the elements
+	 * @return The number of elements
+	 * @throws XMLStreamException
+	 * @throws IllegalStateException if the cursor is neither at the start nor at the end of the document
+	 */
+	public int count(PathExpression expression) throws XMLStreamException {
+		if (!xmlStreamReader.hasNext()) {
+			return 0;
+		}
+		return newCursor(expression).count();
+	}
+
+	/**
+	 * Position the cursor at the first element matching the expression. See {@link #count(PathExpression)}. The 
+	 * cursor must be at the start of the document; use {@link #newCursor(PathExpression)} to find further matches. 
+	 * Returns <code>false</code> at the end of the document
+	 * @param expression selects the elements
+	 * @return <code>true</code> if an element was found
+	 * @throws XMLStreamException
+	 * @throws IllegalStateException if the cursor is neither at the start nor at the end of the document
+	 */
+	public boolean exists(PathExpression expression) throws XMLStreamException {
+		if (!xmlStreamReader.hasNext()) {
+			return false;
+		}
+		return newCursor(expression).next();
+	}
+
+	/**
+	 * Create a cursor finding the elements matching the expression in turn. The cursor of this template must be at 
+	 * the start of the document
+	 * @param expression selects the elements
+	 * @return the cursor
+	 * @throws IllegalStateException if the cursor is not at the start of the document
+	 */
+	public PathExpressionCursor newCursor(PathExpression expression) {
+		validateStartOfDocument();
+		return new PathExpressionCursor(this, expression);
+	}
+
+	private void validateStartOfDocument() {
+		if (xmlStreamReader.getEventType() != XMLEvent.START_DOCUMENT) {
+			throw new IllegalStateException("the path of the current position is not known; path expressions are "
+					+ "matched from the start of the document");
+		}
+	}
+
 	/**
 	 * Position the cursor the the next element matching the given {@link javax.xml.namespace.QName} and write the 
 	 * element to the Writer's stream
@@ -404,6 +778,25 @@ public class XMLStreamReaderTemplate {
 		return found;
 	}
 
+	/**
+	 * Position the cursor the the next element matching the input parameters and write the 
+	 * element to an OutputStream
+	 * @param outputStream The OutputStream
+	 * @param encoding The character encoding of the output, e.g., "ISO-8859-1", or <code>null</code> for UTF-8
+	 * @param localName The local name, or <code>null</code> to match any element
+	 * @param namespaceURI The namespaceURI, or <code>null</code> to match any namespace
+	 * @return <code>true</code> if an element was found
+	 * @throws XMLStreamException
+	 */
+	public boolean writeNextElement(OutputStream outputStream, String encoding, String localName, 
+			String namespaceURI) throws XMLStreamException {
+		boolean found = nextElement(localName, namespaceURI);
+		if (found) {
+			writeElement(outputStream, encoding);
+		}
+		return found;
+	}
+
 	/**
 	 * Return the next element matching the given {@link javax.xml.namespace.QName} 
 	 * @param requiredType The required return type, one of: <code>String.class, Element.class, Node.class</code>
@@ -461,11 +854,8 @@ public class XMLStreamReaderTemplate {
 		while (xmlStreamReader.hasNext() && !elementFound && (event = xmlStreamReader.next()) != XMLEvent.END_DOCUMENT) {
 			if (event == XMLEvent.START_ELEMENT) {
 				if (localName != null) {
-					if (namespaceURI == null) {
-						elementFound = xmlStreamReader.getLocalName().equals(localName);
-					} else {
-						elementFound = getName().equals(new QName(namespaceURI, localName));
-					}
+					elementFound = xmlStreamReader.getLocalName().equals(localName) 
+							&& (namespaceURI == null || namespaceURI.equals(namespaceOf(xmlStreamReader)));
 				} else {
 					elementFound = true;
 				}
@@ -475,6 +865,38 @@ public class XMLStreamReaderTemplate {
 		return elementFound;
 	}
 
+	/*
+	 * The namespace URI of the current element, empty if none, as in its QName
+	 */
+	private static String namespaceOf(XMLStreamReader reader) {
+		String namespaceURI = reader.getNamespaceURI();
+		return (namespaceURI == null) ? XMLConstants.NULL_NS_URI : namespaceURI;
+	}
+
+	/**
+	 * Skip the current element. The cursor must be at a START_ELEMENT and is positioned at the matching 
+	 * END_ELEMENT, passing over all of its content
+	 * @throws XMLStreamException
+	 */
+	public final void skipElement() throws XMLStreamException {
+		if (xmlStreamReader.getEventType() != XMLEvent.START_ELEMENT) {
+			throw new IllegalStateException("skipElement() requires the cursor to be at a START_ELEMENT");
+		}
+		int depth = 1;
+		while (depth > 0) {
+			switch (xmlStreamReader.next()) {
+			case XMLEvent.START_ELEMENT:
+				depth++;
+				break;
+			case XMLEvent.END_ELEMENT:
+				depth--;
+				break;
+			case XMLEvent.END_DOCUMENT:
+				throw new XMLStreamException("END_DOCUMENT reached before the end of the element");
+			}
+		}
+	}
+
 	/**
 	 * Position to the next event
 	 * @return XMLEvent
@@ -485,11 +907,46 @@ public class XMLStreamReaderTemplate {
 	}
 
 	/**
-	 * Close the reader
+	 * Close the reader, and the input if it was opened by this instance
 	 * @throws XMLStreamException
 	 */
-	protected final void close() throws XMLStreamException {
-		xmlStreamReader.close();
+	public final void close() throws XMLStreamException {
+		setStaxWriter(null, null, null);
+		/*
+		 * A pooled template must not keep the last document reachable
+		 */
+		sourceText = null;
+		sourceLocator = null;
+		try {
+			if (xmlStreamReader != null) {
+				xmlStreamReader.close();
+			}
+		} finally {
+			if (source != null) {
+				try {
+					source.close();
+				} catch (IOException e) {
+					throw new XMLStreamException(e);
+				} finally {
+					source = null;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Drop the closed reader, which still references its input, so a pooled template keeps no document reachable. 
+	 * The template must be reset before it is used again
+	 */
+	final void releaseReader() {
+		xmlStreamReader = null;
+	}
+
+	/*
+	 * The factory used to create readers for this instance
+	 */
+	final XMLInputFactory getFactory() {
+		return factory;
 	}
 
 	/**
@@ -502,6 +959,24 @@ public class XMLStreamReaderTemplate {
 		}
 	}
 
+	/*
+	 * Return the local name of the current element, or throw NoSuchElementException if the cursor is not on an element
+	 */
+	private String validateCurrentElement() {
+		try {
+			return xmlStreamReader.getLocalName();
+		} catch (Exception e) {
+			String msg;
+			if (xmlStreamReader.getEventType() == XMLEvent.END_DOCUMENT) {
+				msg = "END_DOCUMENT reached: no more elements on the stream.";
+			} else {
+				msg = e.getMessage();
+			}
+
+			throw new NoSuchElementException(msg);
+		}
+	}
+
 	/*
 	 * Save the namespaces defined in the document
 	 */
@@ -530,6 +1005,9 @@ public class XMLStreamReaderTemplate {
 	 * See if a namespace is already declared for a prefix
 	 */
 	private boolean isNamespaceDeclared(QName qname) {
+		if (declaredNamespaces == null) {
+			return false;
+		}
 		String ns = qname.getPrefix() + ":" + qname.getNamespaceURI();
 		return declaredNamespaces.contains(ns);
 	}
@@ -539,15 +1017,45 @@ public class XMLStreamReaderTemplate {
 	 */
 	private void declareNamespace(QName qname) {
 		String ns = qname.getPrefix() + ":" + qname.getNamespaceURI();
+		if (declaredNamespaces == null) {
+			declaredNamespaces = new HashSet<String>();
+		}
 		declaredNamespaces.add(ns);
 	}
 
+	private void clearDeclaredNamespaces() {
+		if (declaredNamespaces != null) {
+			declaredNamespaces.clear();
+		}
+	}
+
 	/*
 	 * Create a new XMLStreamReader
 	 */
 	private void initializeStreamReader(Reader reader) throws XMLStreamException {
 		xmlStreamReader = factory.createXMLStreamReader(reader);		 
 	}
+
+	/*
+	 * Create a new XMLStreamReader over bytes. A null encoding is detected by the reader
+	 */
+	private void initializeStreamReader(InputStream inputStream, String encoding) throws XMLStreamException {
+		if (encoding == null) {
+			xmlStreamReader = factory.createXMLStreamReader(inputStream);
+		} else {
+			xmlStreamReader = factory.createXMLStreamReader(inputStream, encoding);
+		}
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		if (closeable != null) {
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				// ignore, reporting the original exception
+			}
+		}
+	}
 	
 	public boolean hasNext() {
 		try {
@@ -0,0 +1,142 @@
+package staxparser.xml;
+
+import java.io.InputStream;
+import java.io.Reader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Provides an {@link XMLStreamReaderTemplate} per thread, reset for each document, so processing a document does not
+ * allocate a new template. The content extractors obtain their templates here.
+ * 
+ * <p>A template must be returned with {@link #release(XMLStreamReaderTemplate)} when the document has been 
+ * processed. If the thread's template is still in use, e.g., when a match handler extracts content from another 
+ * document, a new template is returned instead. A template is kept for the last factory used by each thread. A 
+ * released template keeps no reference to its last document.
+ * 
+ * <p>Threads of long running pools keep their template until {@link #clear()} is called on that thread.
+ * 
+ * <p>This class is thread safe.
+ */
+public final class XMLStreamReaderTemplateProvider {
+	private static final ThreadLocal<Slot> slots = new ThreadLocal<Slot>() {
+		@Override
+		protected Slot initialValue() {
+			return new Slot();
+		}
+	};
+
+	private XMLStreamReaderTemplateProvider() {
+	}
+
+	/**
+	 * Returns the template of the current thread, reset to read the input
+	 * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+	 * @param reader A Reader for the XML input stream
+	 * @return the template
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReaderTemplate getTemplate(XMLInputFactory factory, Reader reader) 
+	throws XMLStreamException {
+		Slot slot = slots.get();
+		if (slot.inUse) {
+			return new XMLStreamReaderTemplate(factory, reader);
+		}
+		if (slot.template == null || slot.template.getFactory() != factory) {
+			slot.template = new XMLStreamReaderTemplate(factory, reader);
+		} else {
+			slot.template.reset(reader);
+		}
+		slot.inUse = true;
+		return slot.template;
+	}
+
+	/**
+	 * Returns the template of the current thread, reset to read the input
+	 * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+	 * @param xml The XML input string
+	 * @return the template
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReaderTemplate getTemplate(XMLInputFactory factory, String xml) 
+	throws XMLStreamException {
+		Slot slot = slots.get();
+		if (slot.inUse) {
+			return new XMLStreamReaderTemplate(factory, xml);
+		}
+		if (slot.template == null || slot.template.getFactory() != factory) {
+			slot.template = new XMLStreamReaderTemplate(factory, xml);
+		} else {
+			slot.template.reset(xml);
+		}
+		slot.inUse = true;
+		return slot.template;
+	}
+
+	/**
+	 * Returns the template of the current thread, reset to read the input
+	 * @param factory A configured XMLInputFactory used to create the XMLStreamReader
+	 * @param inputStream An InputStream for the XML input. The encoding is detected from the byte order mark or the 
+	 * XML declaration
+	 * @return the template
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReaderTemplate getTemplate(XMLInputFactory factory, InputStream inputStream) 
+	throws XMLStreamException {
+		Slot slot = slots.get();
+		if (slot.inUse) {
+			return new XMLStreamReaderTemplate(factory, inputStream);
+		}
+		if (slot.template == null || slot.template.getFactory() != factory) {
+			slot.template = new XMLStreamReaderTemplate(factory, inputStream);
+		} else {
+			slot.template.reset(inputStream);
+		}
+		slot.inUse = true;
+		return slot.template;
+	}
+
+	/**
+	 * Close the template and make it available to the current thread again. Templates not obtained from this class 
+	 * are only closed
+	 * @param template the template
+	 * @throws XMLStreamException
+	 */
+	public static void release(XMLStreamReaderTemplate template) throws XMLStreamException {
+		Slot slot = slots.get();
+		try {
+			template.close();
+		} finally {
+			if (slot.template == template) {
+				template.releaseReader();
+				slot.inUse = false;
+			}
+		}
+	}
+
+	/*
+	 * The value record of the current thread, for single use extractions whose values are read before the thread 
+	 * extracts again
+	 */
+	static TextValues getTextValues(int size) {
+		Slot slot = slots.get();
+		if (slot.values == null || slot.values.size() != size) {
+			slot.values = new TextValues(size);
+		}
+		return slot.values;
+	}
+
+	/**
+	 * Discard the template and value record of the current thread
+	 */
+	public static void clear() {
+		slots.remove();
+	}
+
+	private static final class Slot {
+		private XMLStreamReaderTemplate template;
+		private boolean inUse;
+		private TextValues values;
+	}
+}
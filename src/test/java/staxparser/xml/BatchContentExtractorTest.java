@@ -0,0 +1,153 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class BatchContentExtractorTest {
+	private static final PathExpression ID = new PathExpression("/Order/id");
+	private static final PathExpression CUSTOMER = new PathExpression("//customerId");
+
+	private static List<String> orders(int count) {
+		List<String> orders = new ArrayList<String>();
+		for (int i = 0; i < count; i++) {
+			orders.add("<Order><id>" + i + "</id><customerId>customer-" + i + "</customerId></Order>");
+		}
+		return orders;
+	}
+
+	private static Set<PathExpression> expressions() {
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		expressions.add(ID);
+		expressions.add(CUSTOMER);
+		return expressions;
+	}
+
+	@Test
+	public void testResultsInInputOrder() throws XMLStreamException, IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			BatchContentExtractor extractor = new BatchContentExtractor(expressions(), executor);
+			List<Map<PathExpression, String>> results = extractor.extractElementText(orders(200));
+			assertEquals(200, results.size());
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(String.valueOf(i), results.get(i).get(ID));
+				assertEquals("customer-" + i, results.get(i).get(CUSTOMER));
+			}
+
+			List<Map<PathExpression, Element>> elements = extractor.extractElements(orders(3).stream(), Element.class);
+			assertEquals("customer-2", elements.get(2).get(CUSTOMER).getTextContent());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompletionHandler() throws XMLStreamException, IOException {
+		BatchContentExtractor extractor = new BatchContentExtractor(expressions());
+		final boolean[] seen = new boolean[100];
+		extractor.extractElementText(orders(100), new BatchResultHandler<String>() {
+			@Override
+			public void result(int index, Map<PathExpression, String> results) {
+				assertEquals(String.valueOf(index), results.get(ID));
+				seen[index] = true;
+			}
+		});
+		for (boolean b : seen) {
+			assertEquals(true, b);
+		}
+	}
+
+	@Test
+	public void testMixedInputs() throws XMLStreamException, IOException {
+		BatchContentExtractor extractor = new BatchContentExtractor(Collections.singleton(ID));
+		List<Object> inputs = new ArrayList<Object>();
+		inputs.add("<Order><id>0</id></Order>");
+		inputs.add("<Order><id>1</id></Order>".getBytes("UTF-8"));
+		inputs.add("<Order/>");
+		List<Map<PathExpression, String>> results = extractor.extractElementText(inputs);
+		assertEquals("0", results.get(0).get(ID));
+		assertEquals("1", results.get(1).get(ID));
+		assertNull(results.get(2).get(ID));
+	}
+
+	@Test
+	public void testFailure() throws XMLStreamException, IOException {
+		BatchContentExtractor extractor = new BatchContentExtractor(expressions());
+		List<String> orders = orders(10);
+		orders.set(5, "<Order><id>5</Order>");
+		try {
+			extractor.extractElementText(orders);
+			fail("expected XMLStreamException");
+		} catch (XMLStreamException e) {
+		}
+	}
+
+	@Test
+	public void testUnsupportedInputRejectedBeforeSubmit() throws XMLStreamException, IOException {
+		final int[] submitted = new int[1];
+		BatchContentExtractor extractor = new BatchContentExtractor(expressions(), new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				submitted[0]++;
+				command.run();
+			}
+		});
+		List<Object> inputs = new ArrayList<Object>(orders(10));
+		inputs.add(Integer.valueOf(10));
+		try {
+			extractor.extractElementText(inputs);
+			fail("expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+		}
+		assertEquals(0, submitted[0]);
+	}
+
+	@Test
+	public void testInFlightDocumentsAreBounded() throws XMLStreamException, IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			BatchContentExtractor extractor = new BatchContentExtractor(expressions(),
+					XMLInputFactoryProvider.getFactory(), executor, 3);
+			final int[] drawn = new int[1];
+			final int[] handled = new int[1];
+			Stream<String> inputs = orders(100).stream().map(new Function<String, String>() {
+				@Override
+				public String apply(String input) {
+					drawn[0]++;
+					return input;
+				}
+			});
+			extractor.extractElementText(inputs, new BatchResultHandler<String>() {
+				@Override
+				public void result(int index, Map<PathExpression, String> results) {
+					assertEquals(String.valueOf(index), results.get(ID));
+					assertTrue(drawn[0] - handled[0] <= 3);
+					handled[0]++;
+				}
+			});
+			assertEquals(100, handled[0]);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
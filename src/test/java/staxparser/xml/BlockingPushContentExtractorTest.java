@@ -0,0 +1,216 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class BlockingPushContentExtractorTest {
+
+	private final PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+			new HashSet<PathExpression>(Arrays.asList(PathExpression.valueOf("/Orders/Order/id"))));
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testMatchesDeliveredBeforeEndOfInput() throws Exception {
+		final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch firstMatch = new CountDownLatch(1);
+		BlockingPushContentExtractor push = new BlockingPushContentExtractor(extractor,
+				new PathExpressionMatchHandler<String>() {
+					@Override
+					public void match(PathExpression expression, String content) {
+						ids.add(content);
+						firstMatch.countDown();
+					}
+				}, executor);
+
+		byte[] head = "<Orders><Order><id>1</id></Order><Order>".getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < head.length; i += 5) {
+			assertTrue(push.feed(head, i, Math.min(5, head.length - i)));
+		}
+		assertTrue(firstMatch.await(10, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("1"), ids);
+
+		push.feed(ByteBuffer.wrap("<id>2</id></Order></Orders>".getBytes(StandardCharsets.UTF_8)));
+		push.endOfInput();
+		push.await();
+		assertEquals(Arrays.asList("1", "2"), ids);
+	}
+
+	@Test
+	public void testElements() throws Exception {
+		final List<Element> elements = new ArrayList<Element>();
+		BlockingPushContentExtractor push = new BlockingPushContentExtractor(extractor, Element.class,
+				new PathExpressionMatchHandler<Element>() {
+					@Override
+					public void match(PathExpression expression, Element content) {
+						elements.add(content);
+					}
+				}, executor);
+		byte[] xml = "<Orders><Order><id>1</id></Order><Order><id>2</id></Order></Orders>"
+				.getBytes(StandardCharsets.UTF_8);
+		for (byte b : xml) {
+			while (!push.feed(new byte[] { b }, 0, 1)) {
+				Thread.yield();
+			}
+		}
+		push.endOfInput();
+		push.await();
+		assertEquals(2, elements.size());
+		assertEquals("2", elements.get(1).getTextContent());
+	}
+
+	@Test
+	public void testMalformedInput() throws Exception {
+		BlockingPushContentExtractor push = new BlockingPushContentExtractor(extractor,
+				new PathExpressionMatchHandler<String>() {
+					@Override
+					public void match(PathExpression expression, String content) {
+					}
+				}, executor);
+		byte[] xml = "<Orders><Order><id>1</Order></Orders>".getBytes(StandardCharsets.UTF_8);
+		try {
+			push.feed(xml, 0, xml.length);
+			push.endOfInput();
+			push.await();
+			fail("expected XMLStreamException");
+		} catch (XMLStreamException e) {
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		final List<String> ids = new ArrayList<String>();
+		BlockingPushContentExtractor push = new BlockingPushContentExtractor(extractor,
+				new PathExpressionMatchHandler<String>() {
+					@Override
+					public void match(PathExpression expression, String content) {
+						ids.add(content);
+					}
+				}, executor);
+		push.feed(ByteBuffer.wrap("<Orders><Order>".getBytes(StandardCharsets.UTF_8)));
+		push.close();
+		push.await();
+		assertTrue(ids.isEmpty());
+	}
+
+	@Test
+	public void testFeedDoesNotBlockWhenQueueIsFull() throws Exception {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+		BlockingPushContentExtractor push = new BlockingPushContentExtractor(extractor,
+				new PathExpressionMatchHandler<String>() {
+					@Override
+					public void match(PathExpression expression, String content) {
+						ids.add(content);
+					}
+				}, new Executor() {
+					@Override
+					public void execute(Runnable task) {
+						tasks.add(task);
+					}
+				}, 1);
+		final CountDownLatch needsInput = new CountDownLatch(1);
+		push.setNeedsInputListener(new Runnable() {
+			@Override
+			public void run() {
+				needsInput.countDown();
+			}
+		});
+
+		byte[] head = "<Orders><Order><id>1</id></Order>".getBytes(StandardCharsets.UTF_8);
+		ByteBuffer tail = ByteBuffer.wrap("<Order><id>2</id></Order></Orders>".getBytes(StandardCharsets.UTF_8));
+		assertTrue(push.feed(head, 0, head.length));
+		assertFalse(push.needsInput());
+		assertFalse(push.feed(tail));
+		assertEquals(0, tail.position());
+
+		executor.execute(tasks.get(0));
+		assertTrue(needsInput.await(10, TimeUnit.SECONDS));
+		while (!push.feed(tail)) {
+			Thread.yield();
+		}
+		assertFalse(tail.hasRemaining());
+		push.endOfInput();
+		push.await();
+		assertEquals(Arrays.asList("1", "2"), ids);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testForkJoinPoolRejected() {
+		new BlockingPushContentExtractor(extractor,
+				new PathExpressionMatchHandler<String>() {
+					@Override
+					public void match(PathExpression expression, String content) {
+					}
+				}, ForkJoinPool.commonPool());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testExecutorRequired() {
+		new BlockingPushContentExtractor(extractor,
+				new PathExpressionMatchHandler<String>() {
+					@Override
+					public void match(PathExpression expression, String content) {
+					}
+				}, null);
+	}
+
+	@Test
+	public void testDocumentLimit() throws Exception {
+		final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+		PathExpressionMatchHandler<String> handler = new PathExpressionMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content) {
+				ids.add(content);
+			}
+		};
+		Semaphore documents = new Semaphore(1);
+		BlockingPushContentExtractor first = new BlockingPushContentExtractor(extractor, null, handler, executor,
+				BlockingPushContentExtractor.DEFAULT_MAX_PENDING_CHUNKS, documents);
+		BlockingPushContentExtractor second = new BlockingPushContentExtractor(extractor, null, handler, executor,
+				BlockingPushContentExtractor.DEFAULT_MAX_PENDING_CHUNKS, documents);
+		byte[] xml = "<Orders><Order><id>1</id></Order></Orders>".getBytes(StandardCharsets.UTF_8);
+		assertTrue(first.feed(xml, 0, xml.length));
+		try {
+			second.feed(xml, 0, xml.length);
+			fail("expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+		}
+
+		first.endOfInput();
+		first.await();
+		assertEquals(1, documents.availablePermits());
+		assertTrue(second.feed(xml, 0, xml.length));
+		second.endOfInput();
+		second.await();
+		assertEquals(Arrays.asList("1", "1"), ids);
+	}
+}
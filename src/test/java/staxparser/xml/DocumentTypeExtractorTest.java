@@ -0,0 +1,95 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+public class DocumentTypeExtractorTest {
+	private static final String[] DOCUMENTS = {
+		"<Order/>",
+		"<Order xmlns=\"http://acme.com/order\"><id>1</id></Order>",
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- a comment -->\n<?pi data?>\n"
+				+ "<ord:Order xmlns:app='http://acme.com/app' xmlns:ord='http://acme.com/order' id=\"5\">",
+		"<ord:Order  xmlns:ord = \"http://acme.com/order\"\n/>",
+		"<ord:Order xmlns=\"http://acme.com/default\" xmlns:ord=\"http://acme.com/order\"/>",
+		"<Order xmlns=\"http://acme.com/order?a=1&amp;b=2\"/>",
+		"<!DOCTYPE Order [<!ATTLIST Order xmlns CDATA #FIXED \"http://acme.com/dtd\">]><Order/>",
+		"<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><Bestellung\u00fcbersicht xmlns=\"urn:b\u00e4r\"/>",
+		"<caf\u00e9 xmlns=\"urn:\u65e5\u672c\"/>" };
+
+	@Test
+	public void testMatchesStreamReader() throws XMLStreamException, IOException {
+		DocumentTypeExtractor extractor = new DocumentTypeExtractor();
+		for (String xml : DOCUMENTS) {
+			XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+			template.nextElement();
+			String expected = template.getQNameAsString();
+			template.close();
+
+			assertEquals(xml, expected, extractor.extractDocumentType(xml));
+			String encoding = xml.contains("ISO-8859-1") ? "ISO-8859-1" : "UTF-8";
+			assertEquals(xml, expected, extractor.extractDocumentType(xml.getBytes(encoding)));
+			assertEquals(xml, expected, extractor.extractDocumentType(new ByteArrayInputStream(xml.getBytes(encoding))));
+			if (!xml.startsWith("<?xml")) {
+				assertEquals(xml, expected, extractor.extractDocumentType(xml.getBytes("UTF-16")));
+				assertEquals(xml, expected, extractor.extractDocumentType(("\ufeff" + xml).getBytes("UTF-8")));
+			}
+		}
+	}
+
+	@Test
+	public void testPrefixLength() throws XMLStreamException, IOException {
+		StringBuilder sb = new StringBuilder("<Order xmlns=\"http://acme.com/order\"");
+		for (int i = 0; i < 100; i++) {
+			sb.append(" a").append(i).append("=\"").append(i).append('"');
+		}
+		String xml = sb.append("/>").toString();
+		DocumentTypeExtractor extractor = new DocumentTypeExtractor(XMLInputFactoryProvider.getFactory(), 64);
+		assertEquals("{http://acme.com/order}Order", extractor.extractDocumentType(xml));
+		assertEquals("{http://acme.com/order}Order", extractor.extractDocumentType(xml.getBytes("UTF-8")));
+		assertEquals("{http://acme.com/order}Order",
+				extractor.extractDocumentType(new ByteArrayInputStream(xml.getBytes("UTF-8"))));
+	}
+
+	@Test
+	public void testCachedResult() throws XMLStreamException {
+		DocumentTypeExtractor extractor = new DocumentTypeExtractor();
+		String first = extractor.extractDocumentType("<o:Order xmlns:o=\"http://acme.com/order\"><id/></o:Order>");
+		String second = extractor.extractDocumentType("<Order xmlns=\"http://acme.com/order\"/>");
+		assertEquals("{http://acme.com/order}Order", first);
+		assertSame(first, second);
+	}
+
+	@Test
+	public void testScannerFallsBack() {
+		for (String xml : new String[] { "<Order id=\"1\" id=\"2\"/>", "<Order 1d=\"1\"/>", "<Order a:id=\"1\"/>", 
+				"<!-- a -- b --><Order/>", "<Order id=\"&amp;\"/>", "<Order a=\"\" b=\"\" c=\"\" d=\"\" e=\"\" f=\"\" "
+				+ "g=\"\" h=\"\" i=\"\"/>" }) {
+			assertEquals(xml, RootElementScanner.FAILED, RootElementScanner.scan(xml, xml.length()).getResult());
+		}
+		String xml = "<!-- a - b --><Order xml:lang=\"en\" xmlns:xsi=\"urn:xsi\" id=\"1\"/>";
+		assertEquals(RootElementScanner.FOUND, RootElementScanner.scan(xml, xml.length()).getResult());
+	}
+
+	@Test
+	public void testMalformed() {
+		DocumentTypeExtractor extractor = new DocumentTypeExtractor();
+		for (String xml : new String[] { "", "Order", "<ord:Order/>", "<1Order/>", "<Order id=\"1\" id=\"2\"/>", 
+				"<Order 1d=\"1\"/>", "<Order a:id=\"1\"/>", "<!-- a -- b --><Order/>", "<!-- a ---><Order/>", 
+				"<Order id=\"&undefined;\"/>", "<Order id=\"<\"/>" }) {
+			try {
+				extractor.extractDocumentType(xml);
+				fail("expected an error for " + xml);
+			} catch (XMLStreamException e) {
+			} catch (RuntimeException e) {
+			}
+		}
+	}
+}
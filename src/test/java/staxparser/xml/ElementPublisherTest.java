@@ -0,0 +1,191 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class ElementPublisherTest {
+
+	private static final Executor DIRECT = new Executor() {
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+
+	private final PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+			new HashSet<PathExpression>(Arrays.asList(PathExpression.valueOf("/Orders/Order/id"))));
+
+	@Test
+	public void testDemandPausesParser() throws Exception {
+		StringBuilder xml = new StringBuilder("<Orders>");
+		for (int i = 0; i < 10000; i++) {
+			xml.append("<Order><id>").append(i).append("</id><note>padding padding</note></Order>");
+		}
+		xml.append("</Orders>");
+		byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+		CountingInputStream input = new CountingInputStream(new ByteArrayInputStream(bytes));
+
+		RecordingSubscriber<String> subscriber = new RecordingSubscriber<String>();
+		extractor.publishElementText(new XMLStreamReaderTemplate(input), DIRECT).subscribe(subscriber);
+
+		subscriber.subscription.request(2);
+		assertEquals(Arrays.asList("0", "1"), subscriber.items);
+		assertTrue(input.count < bytes.length / 4);
+
+		long read = input.count;
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertEquals(10000, subscriber.items.size());
+		assertEquals("9999", subscriber.items.get(9999));
+		assertTrue(subscriber.completed);
+		assertTrue(input.count > read);
+	}
+
+	@Test
+	public void testElements() throws Exception {
+		RecordingSubscriber<Element> subscriber = new RecordingSubscriber<Element>();
+		extractor.publishElements(new XMLStreamReaderTemplate("<Orders><Order><id>1</id></Order></Orders>"), 
+				Element.class, DIRECT).subscribe(subscriber);
+		subscriber.subscription.request(5);
+		assertEquals(1, subscriber.items.size());
+		assertEquals("1", subscriber.items.get(0).getTextContent());
+		assertTrue(subscriber.completed);
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		RecordingSubscriber<String> subscriber = new RecordingSubscriber<String>();
+		extractor.publishElementText(new XMLStreamReaderTemplate(
+				"<Orders><Order><id>1</id></Order><Order><id>2</id></Order></Orders>"), DIRECT).subscribe(subscriber);
+		subscriber.subscription.request(1);
+		subscriber.subscription.cancel();
+		subscriber.subscription.request(1);
+		assertEquals(Arrays.asList("1"), subscriber.items);
+		assertTrue(!subscriber.completed);
+		assertNull(subscriber.error);
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		RecordingSubscriber<String> subscriber = new RecordingSubscriber<String>();
+		extractor.publishElementText(new XMLStreamReaderTemplate("<Orders><Order><id>1</id></Order><Order>"), DIRECT)
+				.subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertEquals(Arrays.asList("1"), subscriber.items);
+		assertTrue(subscriber.error != null);
+
+		Flow.Publisher<PathExpressionMatch<String>> publisher = extractor.publishElementText(
+				new StringReader("<Orders/>"));
+		RecordingSubscriber<String> first = new RecordingSubscriber<String>();
+		RecordingSubscriber<String> second = new RecordingSubscriber<String>();
+		publisher.subscribe(first);
+		publisher.subscribe(second);
+		assertTrue(second.error instanceof IllegalStateException);
+
+		RecordingSubscriber<String> invalid = new RecordingSubscriber<String>();
+		extractor.publishElementText(new XMLStreamReaderTemplate("<Orders/>"), DIRECT).subscribe(invalid);
+		invalid.subscription.request(0);
+		assertTrue(invalid.error instanceof IllegalArgumentException);
+	}
+
+	@Test
+	public void testThrowingSubscriberIsCancelled() throws Exception {
+		XMLStreamReaderTemplate template = XMLStreamReaderTemplateProvider.getTemplate(
+				XMLInputFactoryProvider.getFactory(),
+				"<Orders><Order><id>1</id></Order><Order><id>2</id></Order></Orders>");
+		try {
+			RecordingSubscriber<String> subscriber = new RecordingSubscriber<String>() {
+				@Override
+				public void onNext(PathExpressionMatch<String> item) {
+					super.onNext(item);
+					throw new IllegalStateException("subscriber failure");
+				}
+			};
+			extractor.publishElementText(template, DIRECT).subscribe(subscriber);
+			subscriber.subscription.request(5);
+			subscriber.subscription.request(1);
+			assertEquals(Arrays.asList("1"), subscriber.items);
+			assertNull(subscriber.error);
+			assertFalse(subscriber.completed);
+
+			XMLStreamReaderTemplate next = XMLStreamReaderTemplateProvider.getTemplate(
+					XMLInputFactoryProvider.getFactory(), "<Orders/>");
+			assertSame(template, next);
+			XMLStreamReaderTemplateProvider.release(next);
+		} finally {
+			XMLStreamReaderTemplateProvider.clear();
+		}
+	}
+
+	static class RecordingSubscriber<T> implements Flow.Subscriber<PathExpressionMatch<T>> {
+		Flow.Subscription subscription;
+		final List<T> items = new ArrayList<T>();
+		Throwable error;
+		boolean completed;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(PathExpressionMatch<T> item) {
+			assertEquals(PathExpression.valueOf("/Orders/Order/id"), item.getExpression());
+			items.add(item.getContent());
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+	static class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import staxparser.util.MappedFile;
+
+public class MappedFileContentExtractorTest {
+	private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n"
+			+ "<Order xmlns=\"http://acme.com/order\">\r\n"
+			+ "  <item id=\"1\"><description>caf\u00e9 &amp; cr\u00e8me</description></item>\n"
+			+ "  <item id=\"2\">\r<description>\u65e5\u672c \ud83d\ude00</description></item>\r\n"
+			+ "  <item\n id=\"3\"><description><![CDATA[<b>bold</b>]]></description></item>\n"
+			+ "</Order>";
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("order", ".xml");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(XML.getBytes("UTF-8"));
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testExtractElements() throws XMLStreamException, IOException {
+		PathExpression px = new PathExpression("/Order/item/description");
+		MappedFileContentExtractor extractor = new MappedFileContentExtractor(Collections.singleton(px));
+		assertEquals("caf\u00e9 & cr\u00e8me", extractor.extractElementText(file.toPath()).get(px));
+		assertEquals("description", extractor.extractElements(file.toPath(), Element.class).get(px).getLocalName());
+	}
+
+	@Test
+	public void testOffsets() throws XMLStreamException, IOException {
+		PathExpression px = new PathExpression("//item");
+		MappedFileContentExtractor extractor = new MappedFileContentExtractor(Collections.singleton(px));
+		final List<Long> offsets = new ArrayList<Long>();
+		extractor.extractAllElements(file.toPath(), String.class, new PathExpressionOffsetMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content, long offset) {
+				offsets.add(offset);
+			}
+		});
+
+		String bytes = new String(XML.getBytes("UTF-8"), "ISO-8859-1");
+		List<Long> expected = new ArrayList<Long>();
+		for (int i = bytes.indexOf("<item"); i >= 0; i = bytes.indexOf("<item", i + 1)) {
+			expected.add((long) i);
+		}
+		assertEquals(3, expected.size());
+		assertEquals(expected, offsets);
+	}
+
+	@Test
+	public void testMappedFileChunks() throws IOException {
+		MappedFile mappedFile = new MappedFile(file.toPath(), 7);
+		try {
+			byte[] bytes = XML.getBytes("UTF-8");
+			assertEquals(bytes.length, mappedFile.size());
+			assertEquals(bytes[20], mappedFile.get(20));
+			InputStream in = mappedFile.newInputStream();
+			byte[] read = new byte[bytes.length];
+			int n = 0;
+			int count;
+			while ((count = in.read(read, n, read.length - n)) > 0) {
+				n += count;
+			}
+			assertEquals(bytes.length, n);
+			assertEquals(-1, in.read());
+			assertEquals(new String(bytes, "UTF-8"), new String(read, "UTF-8"));
+		} finally {
+			mappedFile.close();
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import staxparser.util.MappedFile;
+
+public class PartitionedFileContentExtractorTest {
+	private final PathExpression record = PathExpression.valueOf("/{urn:catalog}Catalog/{urn:catalog}Item");
+	private final Set<PathExpression> expressions = new HashSet<PathExpression>(Arrays.asList(
+			PathExpression.valueOf("/{urn:catalog}Catalog/{urn:catalog}Item/{urn:catalog}name"),
+			PathExpression.valueOf("/{urn:catalog}Catalog/{urn:catalog}Item@id"),
+			PathExpression.valueOf("//{urn:price}price"),
+			PathExpression.valueOf("//title")));
+
+	private File file;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("catalog", ".xml");
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testPartitionsMatchSequentialParse() throws XMLStreamException, IOException {
+		write(catalog("UTF-8", 500, "caf\u00e9 \ud83d\ude00"), "UTF-8");
+		PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(expressions, record,
+				XMLInputFactoryProvider.getFactory(), executor, 256);
+		List<String> partitioned = new ArrayList<String>();
+		extractor.extractAllElementText(file.toPath(), recorder(partitioned));
+		List<String> sequential = sequential();
+		assertEquals(1 + 500 * 3 + 1, sequential.size());
+		assertEquals(sequential, partitioned);
+	}
+
+	@Test
+	public void testSinglePendingPartition() throws XMLStreamException, IOException {
+		write(catalog("UTF-8", 100, "x"), "UTF-8");
+		PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(expressions, record,
+				XMLInputFactoryProvider.getFactory(), executor, 128, 1);
+		List<String> partitioned = new ArrayList<String>();
+		extractor.extractAllElementText(file.toPath(), recorder(partitioned));
+		assertEquals(sequential(), partitioned);
+	}
+
+	@Test
+	public void testSingleByteEncoding() throws XMLStreamException, IOException {
+		write(catalog("ISO-8859-1", 100, "cr\u00e8me"), "ISO-8859-1");
+		PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(expressions, record,
+				XMLInputFactoryProvider.getFactory(), executor, 100);
+		List<String> partitioned = new ArrayList<String>();
+		extractor.extractAllElementText(file.toPath(), recorder(partitioned));
+		assertEquals(sequential(), partitioned);
+		assertTrue(partitioned.contains("/{urn:catalog}Catalog/{urn:catalog}Item/{urn:catalog}name=cr\u00e8me 99"));
+	}
+
+	@Test
+	public void testElementsKeepNamespaces() throws XMLStreamException, IOException {
+		write(catalog("UTF-8", 50, "x"), "UTF-8");
+		PathExpression price = PathExpression.valueOf("//{urn:price}price");
+		PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(price)), record, XMLInputFactoryProvider.getFactory(),
+				executor, 64);
+		final List<Element> elements = new ArrayList<Element>();
+		extractor.extractAllElements(file.toPath(), Element.class, new PathExpressionMatchHandler<Element>() {
+			@Override
+			public void match(PathExpression expression, Element content) {
+				elements.add(content);
+			}
+		});
+		assertEquals(50, elements.size());
+		assertEquals("urn:price", elements.get(49).getNamespaceURI());
+		assertEquals("49.5", elements.get(49).getTextContent());
+	}
+
+	@Test
+	public void testSequentialFallback() throws XMLStreamException, IOException {
+		String xml = catalog("UTF-8", 20, "x").replace("<c:Catalog", "<!DOCTYPE c:Catalog>\n<c:Catalog");
+		write(xml, "UTF-8");
+		PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(expressions, record,
+				XMLInputFactoryProvider.getFactory(), executor, 64);
+		List<String> partitioned = new ArrayList<String>();
+		extractor.extractAllElementText(file.toPath(), recorder(partitioned));
+		assertEquals(sequential(), partitioned);
+	}
+
+	@Test
+	public void testRecordTagInMarkup() throws XMLStreamException, IOException {
+		String xml = catalog("UTF-8", 1000, "x")
+				.replace("<c:name>x 10</c:name>", "<c:name><![CDATA[<c:Item>]]></c:name>")
+				.replace("<c:name>x 20</c:name>", "<c:name>x 20</c:name><!-- <c:Item> -->")
+				.replace("<c:name>x 30</c:name>", "<c:name>x 30</c:name><?pi <c:Item ?>");
+		write(xml, "UTF-8");
+		List<String> sequential = sequential();
+		for (int partitionSize : new int[] { 1, 37, 100, 500 }) {
+			PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(expressions, record,
+					XMLInputFactoryProvider.getFactory(), executor, partitionSize);
+			List<String> partitioned = new ArrayList<String>();
+			extractor.extractAllElementText(file.toPath(), recorder(partitioned));
+			assertEquals(sequential, partitioned);
+		}
+	}
+
+	@Test
+	public void testNestedRecordTag() throws XMLStreamException, IOException {
+		String xml = catalog("UTF-8", 100, "x").replace("<c:name>x 50</c:name>",
+				"<c:name>x 50</c:name><c:Item id=\"nested\"><c:name>nested</c:name></c:Item>");
+		write(xml, "UTF-8");
+		PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(expressions, record,
+				XMLInputFactoryProvider.getFactory(), executor, 1);
+		List<String> partitioned = new ArrayList<String>();
+		extractor.extractAllElementText(file.toPath(), recorder(partitioned));
+		assertEquals(sequential(), partitioned);
+	}
+
+	@Test
+	public void testMalformedPartition() throws IOException {
+		String xml = catalog("UTF-8", 20, "x").replace("<c:name>x 10</c:name>", "<c:name>x 10</c:nam>");
+		write(xml, "UTF-8");
+		PartitionedFileContentExtractor extractor = new PartitionedFileContentExtractor(expressions, record,
+				XMLInputFactoryProvider.getFactory(), executor, 1);
+		try {
+			extractor.extractAllElementText(file.toPath(), recorder(new ArrayList<String>()));
+			fail("should throw exception");
+		} catch (XMLStreamException e) {
+		}
+	}
+
+	@Test
+	public void testMappedFileRange() throws IOException {
+		byte[] bytes = "0123456789abcdefghij".getBytes("UTF-8");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(bytes);
+		out.close();
+		MappedFile mappedFile = new MappedFile(file.toPath(), 7);
+		try {
+			assertEquals("56789abcdefg", read(mappedFile.newInputStream(5, 17)));
+			assertEquals("7", read(mappedFile.newInputStream(7, 8)));
+			assertEquals("", read(mappedFile.newInputStream(14, 14)));
+			assertEquals("efghij", read(mappedFile.newInputStream(14, 20)));
+		} finally {
+			mappedFile.close();
+		}
+	}
+
+	/*
+	 * Records between a header and a footer, with a comment and a prefixed namespace declared on the root
+	 */
+	private static String catalog(String encoding, int items, String name) {
+		StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?>\n");
+		sb.append("<c:Catalog xmlns:c=\"urn:catalog\" xmlns:p=\"urn:price\" version=\"2\">\n");
+		sb.append("  <Header><title>catalog</title></Header>\n");
+		for (int i = 0; i < items; i++) {
+			sb.append("  <c:Item id=\"").append(i).append("\">");
+			sb.append("<c:name>").append(name).append(' ').append(i).append("</c:name>");
+			if (i % 7 == 0) {
+				sb.append("<!-- note -->");
+			}
+			sb.append("<p:price>").append(i).append(".5</p:price></c:Item>\n");
+		}
+		sb.append("  <Footer><title>end</title></Footer>\n");
+		sb.append("</c:Catalog>\n");
+		return sb.toString();
+	}
+
+	private void write(String xml, String encoding) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(xml.getBytes(encoding));
+		out.close();
+	}
+
+	private List<String> sequential() throws XMLStreamException, IOException {
+		List<String> results = new ArrayList<String>();
+		MappedFile mappedFile = new MappedFile(file.toPath());
+		try {
+			new PathExpressionXMLContentExtractor(expressions).extractAllElementText(mappedFile.newInputStream(),
+					recorder(results));
+		} finally {
+			mappedFile.close();
+		}
+		return results;
+	}
+
+	private static PathExpressionMatchHandler<String> recorder(final List<String> results) {
+		return new PathExpressionMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content) {
+				results.add(expression + "=" + content);
+			}
+		};
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[3];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			out.write(buffer, 0, n);
+		}
+		return new String(out.toByteArray(), "UTF-8");
+	}
+}
@@ -3,6 +3,7 @@ package staxparser.xml;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -67,6 +68,26 @@ public class PathExpressionTest {
 		
 	}
 	
+	@Test
+	public void testMatchByIndex() {
+		assertMatch("//a/b","/x/a/b");
+		assertNotMatch("//a/b","/x/c/b");
+
+		assertNotMatch("/a/b/c","/b/c");
+		assertNotMatch("/a/b","/a/b/c");
+
+		assertNotMatch("/{urn:x}a/{urn:y}b","/{urn:x}a/{urn:z}b");
+		assertNotMatch("/{urn:y}a/{urn:x}b","/{urn:z}a/{urn:x}b");
+		assertMatch("/{urn:x}a/{urn:y}b","/a/b");
+
+		assertMatch("/a/b@id","/a/b@id");
+		assertNotMatch("/a/b@id","/a/b@sku");
+		assertNotMatch("/a/b@id","/a/c@id");
+
+		assertMatch("/","/");
+		assertNotMatch("/","/a");
+	}
+
 	@Test
 	public void testMatchRoot(){
 		assertMatch("/{ns1:foo/bar}go/foo","/go/foo");
@@ -130,6 +151,18 @@ public class PathExpressionTest {
 	public void testInvalidExpressionsWithNamespace(){
 		testInvalidExpression("//{namespace{}}foo");
 		testInvalidExpression("{http://com.example/order}/foo");
+		testInvalidExpression("//foo{http://com.example/order}bar");
+		testInvalidExpression("//{}foo");
+	}
+
+	@Test
+	public void testValueOf() {
+		PathExpression expression = PathExpression.valueOf("/Order/{http://com.example/order}item@sku");
+		assertSame(expression, PathExpression.valueOf("/Order/{http://com.example/order}item@sku"));
+		assertEquals(new PathExpression("/Order/{http://com.example/order}item@sku"), expression);
+		assertEquals("sku", expression.getAttribute());
+		assertEquals("http://com.example/order", expression.getQNames().get(1).getNamespaceURI());
+		assertEquals("//Order", PathExpression.valueOf("Order").toString());
 	}
 
 
@@ -196,6 +229,26 @@ public class PathExpressionTest {
 
 	}
 	
+	@Test
+	public void testAttribute(){
+		PathExpression expression = new PathExpression("/foo/bar@attr");
+		assertEquals("/foo/bar@attr",expression.toString());
+		assertEquals("attr",expression.getAttribute());
+		assertEquals(2,expression.getQNames().size());
+		assertEquals("bar",expression.getQNames().get(1).getLocalPart());
+
+		expression = new PathExpression("bar@attr");
+		assertEquals("//bar@attr",expression.toString());
+		assertEquals("attr",expression.getAttribute());
+
+		expression = new PathExpression("//{http://com.example/order}foo/bar");
+		assertNull(expression.getAttribute());
+
+		assertEquals(expression.getQNames(),new PathExpression("//{http://com.example/order}foo/bar@id").getQNames());
+		assertMatch("//foo/bar@attr","/foo/bar");
+		assertNotMatch("//foo/bar@attr","/foo/bar@other");
+	}
+
 	@Test
 	public void testEquals(){
 		PathExpression p1 = new PathExpression("/foo");
@@ -218,7 +271,7 @@ public class PathExpressionTest {
 	
 	private void testInvalidExpression(String expression){
 		try {
-			PathExpression.validateSelector("foo/bar/car/");
+			PathExpression.validateSelector(expression);
 			fail("should throw exception");
 		} catch (IllegalArgumentException e) {
 
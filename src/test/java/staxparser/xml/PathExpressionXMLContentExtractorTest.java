@@ -1,15 +1,32 @@
 package staxparser.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.util.StreamReaderDelegate;
 
 import org.custommonkey.xmlunit.XMLUnit;
 import org.junit.Before;
@@ -151,4 +168,443 @@ public class PathExpressionXMLContentExtractorTest {
 				results.get(px2));	 
 	}
 	
+	@Test
+	public void testOverlappingExpressions() throws XMLStreamException {
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		PathExpression px0 = new PathExpression("/DistributeOrderRequest/Order/item/sku");
+		expressions.add(px0);
+		PathExpression px1 = new PathExpression("//item/sku");
+		expressions.add(px1);
+		PathExpression px2 = new PathExpression("//{http://acme.com/nouns/order}item/{http://acme.com/nouns/order}quantity");
+		expressions.add(px2);
+		PathExpression px3 = new PathExpression("//{http://acme.com/common/appinfo}item/quantity");
+		expressions.add(px3);
+		PathExpression px4 = new PathExpression("/Order/id");
+		expressions.add(px4);
+
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions);
+		Map<PathExpression, String> results = pathExpressionExtractor.extractElementText(xml);
+		assertEquals(5,results.size());
+		assertEquals("048793",results.get(px0));
+		assertEquals("048793",results.get(px1));
+		assertEquals("438",results.get(px2));
+		assertNull(results.get(px3));
+		assertNull(results.get(px4));
+	}
+	
+	@Test
+	public void testNestedElementsWithSameName() throws XMLStreamException {
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		PathExpression px0 = new PathExpression("//a/a/b");
+		expressions.add(px0);
+		PathExpression px1 = new PathExpression("/a/b");
+		expressions.add(px1);
+
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions);
+		Map<PathExpression, String> results = pathExpressionExtractor.extractElementText(
+				"<a><a><a><b>1</b></a></a><b>2</b></a>");
+		assertEquals("1",results.get(px0));
+		assertEquals("2",results.get(px1));
+	}
+	
+	@Test
+	public void testSkipsSubtreesThatCannotMatch() throws XMLStreamException {
+		StringBuilder audit = new StringBuilder("<Audit>");
+		for (int i = 0; i < 20; i++) {
+			audit.append("<Entry><id>a").append(i).append("</id><item><id>b").append(i).append("</id></item>");
+		}
+		for (int i = 0; i < 20; i++) {
+			audit.append("</Entry>");
+		}
+		audit.append("</Audit>");
+		String doc = "<Order><id>1</id>" + audit + "<item><id>2</id></item>" + audit + "<item><id>3</id></item></Order>";
+		/*
+		 * Order, three ids, two items and two Audits, which are read before they are skipped
+		 */
+		int outside = 8;
+
+		PathExpression id = PathExpression.valueOf("/Order/id");
+		PathExpression itemId = PathExpression.valueOf("/Order/item/id");
+		PathExpression relative = PathExpression.valueOf("//Entry/item/id");
+		List<String> absoluteOnly = new ArrayList<String>();
+		int absoluteElements = extractAllCountingElements(new HashSet<PathExpression>(Arrays.asList(id, itemId)), 
+				doc, absoluteOnly);
+		assertEquals(Arrays.asList("/Order/id=1", "/Order/item/id=2", "/Order/item/id=3"), absoluteOnly);
+		assertEquals(outside, absoluteElements);
+
+		List<String> mixed = new ArrayList<String>();
+		int mixedElements = extractAllCountingElements(new HashSet<PathExpression>(Arrays.asList(id, itemId, 
+				relative)), doc, mixed);
+		assertEquals(outside + 2 * 20 * 4, mixedElements);
+		assertEquals(40, mixed.size() - absoluteOnly.size());
+		List<String> absoluteInMixed = new ArrayList<String>();
+		for (String match : mixed) {
+			if (!match.startsWith(relative.toString())) {
+				absoluteInMixed.add(match);
+			}
+		}
+		assertEquals(absoluteOnly, absoluteInMixed);
+	}
+
+	/*
+	 * Returns the number of START_ELEMENTs whose name was read, i.e., that were not skipped
+	 */
+	private static int extractAllCountingElements(Set<PathExpression> expressions, String doc, 
+			final List<String> results) throws XMLStreamException {
+		final int[] names = new int[1];
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(doc);
+		template.xmlStreamReader = new StreamReaderDelegate(template.xmlStreamReader) {
+			@Override
+			public String getLocalName() {
+				if (getEventType() == XMLStreamConstants.START_ELEMENT) {
+					names[0]++;
+				}
+				return super.getLocalName();
+			}
+		};
+		new PathExpressionXMLContentExtractor(expressions).evaluateAll(template, 
+				PathExpressionXMLContentExtractor.RETURN_TYPE.text, new PathExpressionMatchHandler<Object>() {
+			@Override
+			public void match(PathExpression expression, Object content) {
+				results.add(expression + "=" + content);
+			}
+		});
+		return names[0];
+	}
+
+	@Test
+	public void testExtractAllElementText() throws XMLStreamException {
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		final PathExpression px0 = new PathExpression("//Order/item/sku");
+		expressions.add(px0);
+		final PathExpression px1 = new PathExpression("//Order/id");
+		expressions.add(px1);
+
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions);
+		final List<String> skus = new ArrayList<String>();
+		final List<String> ids = new ArrayList<String>();
+		pathExpressionExtractor.extractAllElementText(xml, new PathExpressionMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content) {
+				if (expression.equals(px0)) {
+					skus.add(content);
+				} else {
+					ids.add(content);
+				}
+			}
+		});
+		assertEquals(9,skus.size());
+		assertEquals("048793",skus.get(0));
+		assertEquals("026475",skus.get(8));
+		assertEquals(Collections.singletonList("5"),ids);
+	}
+	
+	@Test
+	public void testExtractAllElements() throws XMLStreamException {
+		final PathExpression px = new PathExpression("//Order/item");
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(Collections.singleton(px));
+		final List<Element> items = new ArrayList<Element>();
+		pathExpressionExtractor.extractAllElements(xml, Element.class, new PathExpressionMatchHandler<Element>() {
+			@Override
+			public void match(PathExpression expression, Element content) {
+				assertEquals(px,expression);
+				items.add(content);
+			}
+		});
+		assertEquals(9,items.size());
+		assertEquals("ord:item",items.get(8).getNodeName());
+		assertEquals("266",items.get(8).getElementsByTagName("ord:quantity").item(0).getTextContent());
+	}
+	
+	@Test
+	public void testAttributes() throws XMLStreamException {
+		String doc = "<ord:Order xmlns:ord=\"http://acme.com/nouns/order\" id=\"5\">"
+			+ "<ord:item sku=\"048793\"><ord:quantity unit=\"each\">438</ord:quantity></ord:item>"
+			+ "<ord:item sku=\"038577\"/></ord:Order>";
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		PathExpression px0 = new PathExpression("/Order@id");
+		expressions.add(px0);
+		PathExpression px1 = new PathExpression("//item@sku");
+		expressions.add(px1);
+		PathExpression px2 = new PathExpression("//item/quantity@unit");
+		expressions.add(px2);
+		PathExpression px3 = new PathExpression("//item/quantity");
+		expressions.add(px3);
+		PathExpression px4 = new PathExpression("//item@missing");
+		expressions.add(px4);
+
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions);
+		Map<PathExpression, String> results = pathExpressionExtractor.extractElementText(doc);
+		assertEquals("5",results.get(px0));
+		assertEquals("048793",results.get(px1));
+		assertEquals("each",results.get(px2));
+		assertEquals("438",results.get(px3));
+		assertNull(results.get(px4));
+
+		final List<String> skus = new ArrayList<String>();
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(Collections.singleton(px1));
+		pathExpressionExtractor.extractAllElements(doc, String.class, new PathExpressionMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content) {
+				skus.add(content);
+			}
+		});
+		assertEquals(Arrays.asList("048793","038577"),skus);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testAttributeAsElement() throws XMLStreamException {
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(
+				Collections.singleton(new PathExpression("//item@sku")));
+		pathExpressionExtractor.extractElements(xml, Element.class);
+	}
+	
+	@Test
+	public void testByteInputs() throws XMLStreamException, IOException {
+		PathExpression px = new PathExpression("//item/description");
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(Collections.singleton(px));
+
+		String doc = "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><Order><item><description>caf\u00e9</description></item></Order>";
+		byte[] bytes = doc.getBytes("ISO-8859-1");
+		assertEquals("caf\u00e9",pathExpressionExtractor.extractElementText(bytes).get(px));
+		assertEquals("caf\u00e9",pathExpressionExtractor.extractElementText(new ByteArrayInputStream(bytes)).get(px));
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+		buffer.put(bytes).flip();
+		assertEquals("caf\u00e9",
+				pathExpressionExtractor.extractElements(buffer, Element.class).get(px).getTextContent());
+		assertEquals(0,buffer.position());
+
+		File file = File.createTempFile("order", ".xml");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(bytes);
+			out.close();
+			assertEquals("caf\u00e9",pathExpressionExtractor.extractElementText(file.toPath()).get(px));
+			assertEquals("caf\u00e9",new SimpleContentExtractor("//item/description").extractElementText(file.toPath()));
+		} finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testManyExpressions() throws XMLStreamException {
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		for (int i = 0; i < 300; i++) {
+			expressions.add(new PathExpression("//Order/missing" + i));
+			expressions.add(new PathExpression("/DistributeOrderRequest/missing" + i));
+		}
+		PathExpression customerId = new PathExpression("//Order/customerId");
+		PathExpression namespacedCustomerId = new PathExpression("//Order/{http://acme.com/nouns/order}customerId");
+		PathExpression otherCustomerId = new PathExpression("//Order/{http://acme.com/other}customerId");
+		PathExpression applicationId = new PathExpression("/DistributeOrderRequest/AppInfo/applicationId");
+		expressions.add(customerId);
+		expressions.add(namespacedCustomerId);
+		expressions.add(otherCustomerId);
+		expressions.add(applicationId);
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions);
+		Map<PathExpression, String> results = pathExpressionExtractor.extractElementText(xml);
+		assertEquals(604, results.size());
+		assertEquals("customerFor-5", results.get(customerId));
+		assertEquals("customerFor-5", results.get(namespacedCustomerId));
+		assertNull(results.get(otherCustomerId));
+		assertEquals("applicationId", results.get(applicationId));
+		assertNull(results.get(new PathExpression("//Order/missing7")));
+	}
+
+	@Test
+	public void testElementSlices() throws XMLStreamException, IOException {
+		String doc = "<ord:Order xmlns:ord=\"http://acme.com/nouns/order\">\r\n"
+			+ "  <ord:item sku='a&gt;b'>\r\n    <ord:quantity>1</ord:quantity> <!-- c -->\r\n  </ord:item>"
+			+ "<ord:item/><ord:customerId><![CDATA[5]]></ord:customerId></ord:Order>";
+		final PathExpression item = new PathExpression("//Order/item");
+		PathExpression customerId = new PathExpression("/Order/customerId");
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(item, customerId)));
+
+		Map<PathExpression, ElementSlice> results = pathExpressionExtractor.extractElementSlices(doc);
+		String first = "<ord:item sku='a&gt;b'>\r\n    <ord:quantity>1</ord:quantity> <!-- c -->\r\n  </ord:item>";
+		assertEquals(first, results.get(item).toString());
+		assertEquals(doc.indexOf(first), results.get(item).getOffset());
+		assertEquals("<ord:customerId><![CDATA[5]]></ord:customerId>", results.get(customerId).toString());
+
+		final StringWriter writer = new StringWriter();
+		pathExpressionExtractor.extractAllElementSlices(doc, new PathExpressionMatchHandler<ElementSlice>() {
+			@Override
+			public void match(PathExpression expression, ElementSlice content) throws XMLStreamException {
+				if (expression.equals(item)) {
+					try {
+						content.writeTo(writer);
+					} catch (IOException e) {
+						throw new XMLStreamException(e);
+					}
+				}
+			}
+		});
+		assertEquals(first + "<ord:item/>", writer.toString());
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testAttributeAsElementSlice() throws XMLStreamException {
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(
+				Collections.singleton(new PathExpression("//item@sku")));
+		pathExpressionExtractor.extractElementSlices(xml);
+	}
+
+	@Test
+	public void testElementHandles() throws XMLStreamException {
+		Set<PathExpression> expressions = new HashSet<PathExpression>();
+		expressions.add(new PathExpression("//AppInfo/applicationId"));
+		expressions.add(new PathExpression("/DistributeOrderRequest/Order/item"));
+		expressions.add(new PathExpression("//Order/customerId"));
+		expressions.add(new PathExpression("//missing"));
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(expressions);
+
+		Map<PathExpression, ElementHandle> handles = pathExpressionExtractor.extractElementHandles(xml);
+		Map<PathExpression, String> text = pathExpressionExtractor.extractElementText(xml);
+		Map<PathExpression, String> strings = pathExpressionExtractor.extractElements(xml, String.class);
+		Map<PathExpression, Element> elements = pathExpressionExtractor.extractElements(xml, Element.class);
+		assertNull(handles.get(new PathExpression("//missing")));
+		for (PathExpression px : expressions) {
+			ElementHandle handle = handles.get(px);
+			if (handle != null) {
+				if (text.get(px) != null) {
+					assertEquals(text.get(px), handle.getElementText());
+				}
+				assertEquals(strings.get(px), handle.getElement(String.class));
+				assertSame(handle.getElement(String.class), handle.getElement(String.class));
+				Element element = handle.getElement(Element.class);
+				assertEquals(elements.get(px).getNamespaceURI(), element.getNamespaceURI());
+				assertEquals(elements.get(px).getTextContent(), element.getTextContent());
+			}
+		}
+
+		final List<String> items = new ArrayList<String>();
+		pathExpressionExtractor.extractAllElementHandles(xml, new PathExpressionMatchHandler<ElementHandle>() {
+			@Override
+			public void match(PathExpression expression, ElementHandle content) throws XMLStreamException {
+				if (expression.toString().endsWith("item")) {
+					items.add(content.getElement(String.class));
+				}
+			}
+		});
+		assertEquals(9, items.size());
+		assertEquals(strings.get(new PathExpression("/DistributeOrderRequest/Order/item")), items.get(0));
+	}
+
+	@Test
+	public void testExtractValues() throws XMLStreamException {
+		PathExpression id = new PathExpression("/DistributeOrderRequest/Order/id");
+		PathExpression quantity = new PathExpression("//item/quantity");
+		PathExpression sku = new PathExpression("//item@sku");
+		PathExpression missing = new PathExpression("//missing");
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(id, quantity, sku, missing)));
+		TextValues values = pathExpressionExtractor.newTextValues();
+
+		pathExpressionExtractor.extractValues(xml, values);
+		assertEquals(5L, values.getLong(pathExpressionExtractor.indexOf(id)));
+		assertEquals(pathExpressionExtractor.extractElementText(xml).get(quantity),
+				values.getString(pathExpressionExtractor.indexOf(quantity)));
+		assertFalse(values.isPresent(pathExpressionExtractor.indexOf(sku)));
+		assertFalse(values.isPresent(pathExpressionExtractor.indexOf(missing)));
+
+		String doc = "<DistributeOrderRequest><Order><id>7<!-- c -->1</id>"
+			+ "<item sku=\"048793\"><quantity><![CDATA[ 2.5 ]]></quantity></item></Order></DistributeOrderRequest>";
+		pathExpressionExtractor.extractValues(doc.getBytes(), values);
+		assertEquals(71, values.getInt(pathExpressionExtractor.indexOf(id)));
+		assertEquals(2.5, values.getDouble(pathExpressionExtractor.indexOf(quantity)), 0.0);
+		assertEquals(48793L, values.getLong(pathExpressionExtractor.indexOf(sku)));
+
+		try {
+			pathExpressionExtractor.extractValues("<DistributeOrderRequest><Order><id><b/></id></Order>"
+				+ "</DistributeOrderRequest>", values);
+			fail("should throw exception");
+		} catch (XMLStreamException e) {
+		}
+
+		SimpleContentExtractor simple = new SimpleContentExtractor("//item/quantity");
+		assertEquals(2.5, simple.extractDouble(doc, 0.0), 0.0);
+		assertEquals(-1L, new SimpleContentExtractor("//missing").extractLong(doc, -1L));
+	}
+
+	@Test
+	public void testExtractionResults() throws XMLStreamException {
+		PathExpression id = new PathExpression("/DistributeOrderRequest/Order/id");
+		PathExpression sku = new PathExpression("//item@sku");
+		PathExpression customerId = new PathExpression("//Order/customerId");
+		PathExpression missing = new PathExpression("//missing");
+		pathExpressionExtractor = new PathExpressionXMLContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(id, sku, customerId, missing)));
+		ExtractionResults<String> results = pathExpressionExtractor.newResults();
+
+		pathExpressionExtractor.extractElementText(xml, results);
+		assertEquals(pathExpressionExtractor.extractElementText(xml), results.asMap());
+		assertEquals("5", results.get(pathExpressionExtractor.indexOf(id)));
+		assertEquals("customerFor-5", results.get(customerId));
+		assertFalse(results.isPresent(pathExpressionExtractor.indexOf(missing)));
+		assertTrue(results.asMap().containsKey(missing));
+		assertNull(results.get(new PathExpression("//unknown")));
+
+		String doc = "<DistributeOrderRequest><Order><item sku=\"1\"/></Order></DistributeOrderRequest>";
+		pathExpressionExtractor.extractElementText(doc, results);
+		assertNull(results.get(id));
+		assertEquals("1", results.asMap().get(sku));
+
+		ExtractionResults<String> elements = pathExpressionExtractor.newResults();
+		pathExpressionExtractor.extractElements(xml, String.class, elements);
+		assertEquals(pathExpressionExtractor.extractElements(xml, String.class), elements.asMap());
+
+		try {
+			new PathExpressionXMLContentExtractor(Collections.singleton(id)).extractElementText(xml, results);
+			fail("should throw exception");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testStreamElements() throws XMLStreamException {
+		PathExpression id = PathExpression.valueOf("/Orders/Order/id");
+		PathExpression sku = PathExpression.valueOf("/Orders/Order/item@sku");
+		PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(id, sku)));
+		String xml = "<Orders><Order><id>1</id><item sku=\"a\"/></Order><Order><id>2</id></Order></Orders>";
+
+		final List<String> expected = new ArrayList<String>();
+		extractor.extractAllElementText(xml, new PathExpressionMatchHandler<String>() {
+			@Override
+			public void match(PathExpression expression, String content) {
+				expected.add(expression + "=" + content);
+			}
+		});
+		List<String> streamed = new ArrayList<String>();
+		for (PathExpressionMatch<String> match : (Iterable<PathExpressionMatch<String>>) extractor
+				.streamElementText(new StringReader(xml))::iterator) {
+			streamed.add(match.getExpression() + "=" + match.getContent());
+		}
+		assertEquals(expected, streamed);
+		assertEquals(3, streamed.size());
+
+		assertEquals(2, extractor.streamElements(new ByteArrayInputStream(xml.getBytes()), String.class)
+				.filter(match -> match.getExpression().equals(id)).count());
+	}
+
+	@Test
+	public void testCountAll() throws XMLStreamException {
+		PathExpression orders = PathExpression.valueOf("/Orders/Order");
+		PathExpression items = PathExpression.valueOf("/Orders/Order/item");
+		PathExpression skus = PathExpression.valueOf("//item@sku");
+		PathExpression missing = PathExpression.valueOf("//missing");
+		PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(orders, items, skus, missing)));
+		String xml = "<Orders><Order><item sku=\"1\">a</item><item/></Order><Order><item sku=\"2\"/></Order>"
+				+ "<Other><item sku=\"3\"/></Other></Orders>";
+		int[] counts = extractor.countAll(xml);
+		assertEquals(2, counts[extractor.indexOf(orders)]);
+		assertEquals(3, counts[extractor.indexOf(items)]);
+		assertEquals(3, counts[extractor.indexOf(skus)]);
+		assertEquals(0, counts[extractor.indexOf(missing)]);
+		assertTrue(Arrays.equals(counts, extractor.countAll(new StringReader(xml))));
+		assertTrue(Arrays.equals(counts, extractor.countAll(new ByteArrayInputStream(xml.getBytes()))));
+	}
 }
@@ -0,0 +1,132 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+public class TextValuesTest {
+
+	@Test
+	public void testLong() {
+		assertEquals(42L, values(" 42\n").getLong(0));
+		assertEquals(-7L, values("-7").getLong(0));
+		assertEquals(7L, values("+007").getLong(0));
+		assertEquals(Long.MAX_VALUE, values("9223372036854775807").getLong(0));
+		assertEquals(Long.MIN_VALUE, values("-9223372036854775808").getLong(0));
+		testInvalidLong("9223372036854775808");
+		testInvalidLong("-9223372036854775809");
+		testInvalidLong("12a");
+		testInvalidLong("");
+		testInvalidLong("-");
+		testInvalidLong("1 2");
+		assertEquals(-5, values("-5").getInt(0));
+		try {
+			values("2147483648").getInt(0);
+			fail("should throw exception");
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	@Test
+	public void testInt() throws XMLStreamException {
+		assertEquals(Integer.MAX_VALUE, values("2147483647").getInt(0));
+		assertEquals(Integer.MIN_VALUE, values("-2147483648").getInt(0));
+		assertEquals(9, new TextValues(1).getInt(0, 9));
+		for (String i : new String[] { "-2147483649", "9223372036854775808", "1.5" }) {
+			try {
+				values(i).getInt(0);
+				fail("should throw exception for " + i);
+			} catch (NumberFormatException e) {
+			}
+		}
+
+		SimpleContentExtractor extractor = new SimpleContentExtractor("/Order/quantity");
+		assertEquals(12, extractor.extractInt("<Order><quantity> 12 </quantity></Order>", -1));
+		assertEquals(-1, extractor.extractInt("<Order/>", -1));
+		assertEquals(7, extractor.extractInt(
+				new ByteArrayInputStream("<Order><quantity>7</quantity></Order>".getBytes()), -1));
+		try {
+			extractor.extractInt("<Order><quantity>2147483648</quantity></Order>", -1);
+			fail("should throw exception");
+		} catch (NumberFormatException e) {
+		}
+	}
+
+	@Test
+	public void testDouble() {
+		String[] doubles = { "0", "-0.0", "1.5", " 3.14159 ", ".5", "2.", "1e3", "1.25E-4", "-123456789012345",
+			"1234567890123456789", "0.1", "0.000000000000000000000000001", "4.9e-324", "1.7976931348623157E308",
+			"1e400", "9007199254740993", "0.30000000000000004" };
+		for (String d : doubles) {
+			assertEquals(d, Double.parseDouble(d.trim()), values(d).getDouble(0), 0.0);
+			assertEquals(d, Double.doubleToRawLongBits(Double.parseDouble(d.trim())), 
+					Double.doubleToRawLongBits(values(d).getDouble(0)));
+		}
+		assertEquals(Double.POSITIVE_INFINITY, values("INF").getDouble(0), 0.0);
+		assertEquals(Double.NEGATIVE_INFINITY, values("-INF").getDouble(0), 0.0);
+		assertTrue(Double.isNaN(values("NaN").getDouble(0)));
+		for (String d : new String[] { "", ".", "1e", "1.2.3", "abc", "1e+" }) {
+			try {
+				values(d).getDouble(0);
+				fail("should throw exception for " + d);
+			} catch (NumberFormatException e) {
+			}
+		}
+	}
+
+	@Test
+	public void testDecimalAndBoolean() {
+		assertEquals(new BigDecimal("12.50"), values(" 12.50 ").getDecimal(0));
+		assertTrue(values("true").getBoolean(0));
+		assertTrue(values(" 1 ").getBoolean(0));
+		assertFalse(values("false").getBoolean(0));
+		assertFalse(values("0").getBoolean(0));
+		try {
+			values("yes").getBoolean(0);
+			fail("should throw exception");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testMissing() {
+		TextValues values = new TextValues(2);
+		assertFalse(values.isPresent(1));
+		assertNull(values.getString(1));
+		assertNull(values.getDecimal(1));
+		assertEquals(3L, values.getLong(1, 3L));
+		assertEquals(1.5, values.getDouble(1, 1.5), 0.0);
+		assertTrue(values.getBoolean(1, true));
+		try {
+			values.getLong(1);
+			fail("should throw exception");
+		} catch (NoSuchElementException e) {
+		}
+	}
+
+	private static TextValues values(String text) {
+		TextValues values = new TextValues(1);
+		int start = values.startValue();
+		values.append(text.toCharArray(), 0, text.length());
+		values.assign(0, start);
+		return values;
+	}
+
+	private static void testInvalidLong(String text) {
+		try {
+			values(text).getLong(0);
+			fail("should throw exception for " + text);
+		} catch (NumberFormatException e) {
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.ref.WeakReference;
+import java.util.Properties;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class XMLInputFactoryProviderTest {
+
+	private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+	@After
+	public void tearDown() {
+		XMLInputFactoryProvider.clear();
+	}
+
+	@Test
+	public void testSameFactoryForEqualProperties() {
+		Properties p1 = new Properties();
+		p1.put(REPORT_CDATA, Boolean.TRUE);
+		Properties p2 = new Properties();
+		p2.put(REPORT_CDATA, Boolean.TRUE);
+
+		XMLInputFactory factory = XMLInputFactoryProvider.getFactory(p1);
+		assertSame(factory, XMLInputFactoryProvider.getFactory(p2));
+		assertEquals(Boolean.TRUE, factory.getProperty(REPORT_CDATA));
+		assertNotSame(factory, XMLInputFactoryProvider.getFactory());
+		assertSame(XMLInputFactoryProvider.getFactory(), XMLInputFactoryProvider.getFactory(null));
+	}
+
+	@Test
+	public void testPropertiesAreCopied() {
+		Properties properties = new Properties();
+		XMLInputFactory factory = XMLInputFactoryProvider.getFactory(properties);
+		properties.put(REPORT_CDATA, Boolean.TRUE);
+		assertSame(factory, XMLInputFactoryProvider.getFactory());
+	}
+
+	@Test
+	public void testRegisterFactory() throws XMLStreamException {
+		String xml = "<!DOCTYPE a [<!ENTITY e \"x\">]><a>&e;</a>";
+		assertEquals("x", new XMLStreamReaderTemplate(xml).getNextElementText("a"));
+
+		XMLInputFactory factory = XMLInputFactory.newDefaultFactory();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		XMLInputFactoryProvider.registerFactory(null, factory);
+		assertSame(factory, XMLInputFactoryProvider.getFactory());
+		try {
+			new XMLStreamReaderTemplate(xml).getNextElementText("a");
+			fail("expected XMLStreamException");
+		} catch (XMLStreamException e) {
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSharedFactoryCannotBeReconfigured() {
+		XMLInputFactoryProvider.getFactory().setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+	}
+
+	@Test
+	public void testFactoryDoesNotRetainInput() throws XMLStreamException, InterruptedException {
+		String xml = new String("<a>x</a>");
+		WeakReference<String> input = new WeakReference<String>(xml);
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		assertEquals("x", template.getNextElementText("a"));
+		template.close();
+		xml = null;
+		template = null;
+		for (int i = 0; i < 50 && input.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(input.get());
+	}
+
+	@Test
+	public void testFactoriesAreBounded() {
+		for (int i = 0; i < XMLInputFactoryProvider.MAX_FACTORIES; i++) {
+			Properties properties = new Properties();
+			properties.put(XMLInputFactory.IS_COALESCING, i % 2 == 0);
+			properties.put("count", i);
+			XMLInputFactoryProvider.registerFactory(properties, XMLInputFactory.newDefaultFactory());
+		}
+		Properties properties = new Properties();
+		properties.put(REPORT_CDATA, Boolean.TRUE);
+		XMLInputFactory factory = XMLInputFactoryProvider.getFactory(properties);
+		assertNotSame(factory, XMLInputFactoryProvider.getFactory(properties));
+		assertEquals(Boolean.TRUE, factory.getProperty(REPORT_CDATA));
+	}
+}
@@ -0,0 +1,108 @@
+package staxparser.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class XMLStreamReaderTemplateProviderTest {
+
+	private final XMLInputFactory factory = XMLInputFactoryProvider.getFactory();
+
+	@After
+	public void tearDown() {
+		XMLStreamReaderTemplateProvider.clear();
+	}
+
+	@Test
+	public void testTemplateIsReused() throws XMLStreamException {
+		XMLStreamReaderTemplate template = XMLStreamReaderTemplateProvider.getTemplate(factory,
+				new StringReader("<Order><id>1</id></Order>"));
+		assertTrue(template.nextElement("id"));
+		assertEquals("1", template.getElementText());
+		XMLStreamReaderTemplateProvider.release(template);
+
+		XMLStreamReaderTemplate next = XMLStreamReaderTemplateProvider.getTemplate(factory,
+				new StringReader("<Order><id>2</id></Order>"));
+		assertSame(template, next);
+		assertTrue(next.nextElement("id"));
+		assertEquals("2", next.getElementText());
+		XMLStreamReaderTemplateProvider.release(next);
+
+		XMLStreamReaderTemplate other = XMLStreamReaderTemplateProvider.getTemplate(XMLInputFactory.newInstance(),
+				new StringReader("<Order/>"));
+		assertNotSame(template, other);
+		XMLStreamReaderTemplateProvider.release(other);
+	}
+
+	@Test
+	public void testTemplateInUse() throws XMLStreamException {
+		XMLStreamReaderTemplate template = XMLStreamReaderTemplateProvider.getTemplate(factory,
+				new StringReader("<Order><id>1</id></Order>"));
+		XMLStreamReaderTemplate nested = XMLStreamReaderTemplateProvider.getTemplate(factory,
+				new StringReader("<Order><id>2</id></Order>"));
+		assertNotSame(template, nested);
+		assertTrue(nested.nextElement("id"));
+		assertEquals("2", nested.getElementText());
+		XMLStreamReaderTemplateProvider.release(nested);
+
+		assertTrue(template.nextElement("id"));
+		assertEquals("1", template.getElementText());
+		XMLStreamReaderTemplateProvider.release(template);
+	}
+
+	@Test
+	public void testReentrantExtraction() throws XMLStreamException {
+		final PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(PathExpression.valueOf("/Order/id"))));
+		final StringBuilder nested = new StringBuilder();
+		extractor.extractAllElementText("<Order><id>1</id><id>2</id></Order>",
+				new PathExpressionMatchHandler<String>() {
+					@Override
+					public void match(PathExpression expression, String content) {
+						try {
+							Map<PathExpression, String> results = extractor.extractElementText(
+									"<Order><id>" + content + "0</id></Order>");
+							nested.append(results.get(expression));
+						} catch (XMLStreamException e) {
+							throw new RuntimeException(e);
+						}
+					}
+				});
+		assertEquals("1020", nested.toString());
+	}
+
+	@Test
+	public void testReleasedDocumentCanBeCollected() throws XMLStreamException, InterruptedException {
+		PathExpressionXMLContentExtractor extractor = new PathExpressionXMLContentExtractor(
+				new HashSet<PathExpression>(Arrays.asList(PathExpression.valueOf("/Order/id"))));
+		String xml = new String("<Order><id>1</id></Order>");
+		WeakReference<String> input = new WeakReference<String>(xml);
+		assertEquals("1", extractor.extractElementText(xml).get(PathExpression.valueOf("/Order/id")));
+		xml = null;
+		for (int i = 0; i < 50 && input.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(input.get());
+
+		XMLStreamReaderTemplate template = XMLStreamReaderTemplateProvider.getTemplate(factory,
+				new StringReader("<Order><id>2</id></Order>"));
+		assertTrue(template.nextElement("id"));
+		assertEquals("2", template.getElementText());
+		XMLStreamReaderTemplateProvider.release(template);
+	}
+}
@@ -1,15 +1,22 @@
 package staxparser.xml;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -24,6 +31,7 @@ import org.xml.sax.SAXException;
 
 
 import staxparser.util.ResourceUtils;
+import staxparser.util.XMLUtils;
 import staxparser.xml.XMLStreamReaderCallback;
 import staxparser.xml.XMLStreamReaderTemplate;
 
@@ -62,6 +70,20 @@ public class XMLStreamReaderTemplateTest {
                 simpleTemplate.getNextElement(String.class, "quantity"));
     }
 
+    @Test
+    public void testGetElementAsStringNestedSameName() throws SAXException, IOException, XMLStreamException {
+        XMLStreamReaderTemplate template = new XMLStreamReaderTemplate("<a><a>x</a><b/></a>");
+        assertTrue(template.nextElement());
+        XMLAssert.assertXMLEqual("<a><a>x</a><b/></a>", template.getElement(String.class));
+        template.close();
+
+        template = new XMLStreamReaderTemplate("<r><a><a>x</a><b/></a><c/></r>");
+        XMLAssert.assertXMLEqual("<a><a>x</a><b/></a>", template.getNextElement(String.class, "a"));
+        assertTrue(template.nextElement());
+        assertEquals("c", template.getName().getLocalPart());
+        template.close();
+    }
+
     public void testGetElementAsNode() throws SAXException, IOException, XMLStreamException {
         Element element = simpleTemplate.getNextElement(Element.class, "quantity");
         assertEquals("ord:quantity", element.getNodeName());
@@ -70,6 +92,32 @@ public class XMLStreamReaderTemplateTest {
         assertEquals("438", element.getNodeValue());
     }
 
+    @Test
+    public void testGetElementAsElement() throws SAXException, IOException, XMLStreamException {
+        Element element = simpleTemplate.getNextElement(Element.class, "item");
+        assertEquals("ord:item", element.getNodeName());
+        assertEquals("item", element.getLocalName());
+        assertEquals("http://acme.com/nouns/order", element.getNamespaceURI());
+        assertEquals("438", element.getElementsByTagNameNS("http://acme.com/nouns/order", "quantity").item(0)
+                .getTextContent());
+        assertEquals("11", simpleTemplate.getNextElementText("quantity"));
+
+        XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(
+                "<a:root xmlns:a=\"urn:a\"><a:b x=\"1\" a:y=\"2\"><c xmlns=\"urn:c\"><![CDATA[<d/>]]></c></a:b></a:root>");
+        element = template.getNextElement(Element.class, "b");
+        assertEquals("1", element.getAttribute("x"));
+        assertEquals("2", element.getAttributeNS("urn:a", "y"));
+        assertEquals("urn:c", element.getFirstChild().getNamespaceURI());
+        XMLAssert.assertXMLEqual("<a:b xmlns:a=\"urn:a\" x=\"1\" a:y=\"2\"><c xmlns=\"urn:c\">&lt;d/&gt;</c></a:b>",
+                XMLUtils.elementToString(element, true, false));
+
+        template = new XMLStreamReaderTemplate("<r><b>1</b><b>2</b></r>");
+        Element first = template.getNextElement(Element.class, "b");
+        Element second = template.getNextElement(Element.class, "b");
+        assertTrue(first.getOwnerDocument() != second.getOwnerDocument());
+        assertEquals(first, first.getOwnerDocument().getDocumentElement());
+    }
+
     @Test
     public void testGetNextElementAsString2() throws XMLStreamException, SAXException, IOException {
         String appInfo = simpleTemplate.getNextElement(String.class, "AppInfo");
@@ -213,4 +261,252 @@ public class XMLStreamReaderTemplateTest {
         });
     }
 
+	@Test
+	public void testSkipElement() throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(
+				"<Order><item><sku>1</sku><item><sku>2</sku></item></item><customerId>5</customerId></Order>");
+		assertTrue(template.nextElement("item"));
+		template.skipElement();
+		assertEquals("item", template.getLocalName());
+		assertEquals("customerId", template.getNextElementTypeAsString());
+		assertEquals("5", template.getElementText());
+		try {
+			template.skipElement();
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+		template.close();
+	}
+
+	@Test
+	public void testReset() throws XMLStreamException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(
+				"<a:Order xmlns:a=\"urn:a\"><a:id>1</a:id></a:Order>");
+		assertTrue(template.nextElement("id"));
+		assertEquals("<a:id xmlns:a=\"urn:a\">1</a:id>", template.getElement(String.class));
+		XMLStreamReaderTemplate fresh = new XMLStreamReaderTemplate("<Order><id>2</id></Order>");
+		assertTrue(fresh.nextElement("id"));
+		template.reset("<Order><id>2</id></Order>");
+		assertTrue(template.nextElement("id"));
+		assertEquals(fresh.getElement(String.class), template.getElement(String.class));
+		fresh.close();
+		template.reset(new ByteArrayInputStream("<Order><id>3</id></Order>".getBytes()));
+		assertTrue(template.nextElement("id"));
+		assertEquals("3", template.getElementText());
+		template.close();
+	}
+
+	@Test
+	public void testWriteNextElementToOutputStream() throws XMLStreamException, IOException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(
+				"<o:Order xmlns:o=\"urn:o\"><o:item><o:sku>caf\u00e9</o:sku></o:item><o:item><o:sku>2</o:sku></o:item>"
+				+ "</o:Order>");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(template.writeNextElement(out, "ISO-8859-1", "item", null));
+		assertEquals("<o:item xmlns:o=\"urn:o\"><o:sku>caf\u00e9</o:sku></o:item>", out.toString("ISO-8859-1"));
+		assertEquals(52, out.size());
+		out.reset();
+		assertTrue(template.writeNextElement(out, "UTF-8", "item", null));
+		assertEquals("<o:item xmlns:o=\"urn:o\"><o:sku>2</o:sku></o:item>", out.toString("UTF-8"));
+		assertFalse(template.writeNextElement(out, "UTF-8", "item", null));
+		template.close();
+	}
+
+	@Test
+	public void testWriteElementDefaultEncoding() throws XMLStreamException, IOException {
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(
+				"<o:Order xmlns:o=\"urn:o\"><o:sku>caf\u00e9</o:sku><o:sku>2</o:sku><o:sku>3</o:sku></o:Order>");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(template.nextElement("sku"));
+		template.writeElement(out, null);
+		assertEquals("<o:sku xmlns:o=\"urn:o\">caf\u00e9</o:sku>", out.toString("UTF-8"));
+		assertEquals(36, out.size());
+		out.reset();
+		assertTrue(template.writeNextElement(out, "UTF-8", "sku", null));
+		assertTrue(template.writeNextElement(out, null, "sku", null));
+		assertEquals("<o:sku xmlns:o=\"urn:o\">2</o:sku><o:sku xmlns:o=\"urn:o\">3</o:sku>", out.toString("UTF-8"));
+		template.close();
+	}
+
+	@Test
+	public void testGetElementSlice() throws XMLStreamException {
+		String xml = "<Order><item id=\"1\">a &amp; b</item><item/></Order>";
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		assertTrue(template.nextElement("item"));
+		ElementSlice slice = template.getElementSlice();
+		assertEquals("<item id=\"1\">a &amp; b</item>", slice.toString());
+		assertEquals(7, slice.getOffset());
+		assertEquals("id", slice.subSequence(6, 8).toString());
+		assertTrue(template.nextElement("item"));
+		assertEquals("<item/>", template.getElementSlice().toString());
+		template.close();
+		try {
+			template.getElementSlice();
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+
+		template = new XMLStreamReaderTemplate("<r>\r\n\u00e9\uD83D\uDE00<a>\uD83D\uDE00</a>\n<b>x</b></r>");
+		assertTrue(template.nextElement("a"));
+		assertEquals("<a>\uD83D\uDE00</a>", template.getElementSlice().toString());
+		assertTrue(template.nextElement("b"));
+		assertEquals("<b>x</b>", template.getElementSlice().toString());
+		template.close();
+
+		template = new XMLStreamReaderTemplate(new ByteArrayInputStream(xml.getBytes()));
+		assertTrue(template.nextElement("item"));
+		try {
+			template.getElementSlice();
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+		template.close();
+	}
+
+	@Test
+	public void testStream() {
+		StringBuilder xml = new StringBuilder("<Orders>");
+		for (int i = 0; i < 1000; i++) {
+			xml.append("<Order><id>").append(i).append("</id></Order>");
+		}
+		xml.append("</Orders>");
+		PathExpression ids = PathExpression.valueOf("/Orders/Order/id");
+
+		Stream<String> text = new XMLStreamReaderTemplate(xml.toString()).streamElementText(ids);
+		assertEquals(Arrays.asList("0", "1", "2"), text.limit(3).collect(Collectors.toList()));
+		text.close();
+
+		long sum = new XMLStreamReaderTemplate(xml.toString()).streamElementText(ids).parallel()
+				.mapToLong(Long::parseLong).sum();
+		assertEquals(999 * 1000 / 2, sum);
+
+		List<String> parallelIds = new XMLStreamReaderTemplate(xml.toString()).streamElementText(ids).parallel()
+				.collect(Collectors.toList());
+		assertEquals(1000, parallelIds.size());
+		assertEquals("999", parallelIds.get(999));
+
+		Stream<Element> elements = new XMLStreamReaderTemplate(xml.toString()).stream(
+				PathExpression.valueOf("/Orders/Order"), Element.class);
+		assertEquals(1000, elements.filter(e -> e.getTextContent().endsWith("9")).count() * 10);
+	}
+
+	@Test
+	public void testStreamMidDocument() throws XMLStreamException {
+		String xml = "<Orders><Order><id>1</id></Order><Order><id>2</id></Order></Orders>";
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		assertTrue(template.nextElement("Order"));
+		try {
+			template.streamElementText(PathExpression.valueOf("/Orders/Order/id"));
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+		try {
+			template.stream(PathExpression.valueOf("/Orders/Order"), Element.class);
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+		template.close();
+	}
+
+	@Test
+	public void testCountAndExists() throws XMLStreamException {
+		String xml = "<o:Order xmlns:o=\"urn:order\"><o:item sku=\"1\"/><o:item><o:item sku=\"2\"/></o:item>"
+				+ "<Note><o:item sku=\"3\"/></Note></o:Order>";
+		assertEquals(2, new XMLStreamReaderTemplate(xml).count(PathExpression.valueOf("/{urn:order}Order/item")));
+		assertEquals(4, new XMLStreamReaderTemplate(xml).count(PathExpression.valueOf("//{urn:order}item")));
+		assertEquals(0, new XMLStreamReaderTemplate(xml).count(PathExpression.valueOf("//{urn:other}item")));
+		assertEquals(3, new XMLStreamReaderTemplate(xml).count(PathExpression.valueOf("//item@sku")));
+		assertEquals(4, new XMLStreamReaderTemplate(xml).count("item", "urn:order"));
+
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		assertTrue(template.exists(PathExpression.valueOf("/Order/Note/item")));
+		assertEquals("3", template.getAttributeValue(null, "sku"));
+		assertFalse(new XMLStreamReaderTemplate(xml).exists(PathExpression.valueOf("/Order/Note/Note")));
+	}
+
+	@Test
+	public void testCursor() throws XMLStreamException {
+		String xml = "<Order><item sku=\"1\"><item sku=\"2\"/></item><Note><item sku=\"3\"/></Note>"
+				+ "<item sku=\"4\">x</item><item sku=\"5\"/></Order>";
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		PathExpressionCursor cursor = template.newCursor(PathExpression.valueOf("/Order/item"));
+		assertTrue(cursor.next());
+		assertEquals("1", template.getAttributeValue(null, "sku"));
+		assertTrue(cursor.next());
+		assertEquals("4", template.getAttributeValue(null, "sku"));
+		assertEquals("x", cursor.getElementText());
+		assertEquals(1, cursor.count());
+		assertEquals(0, cursor.count());
+		assertFalse(cursor.next());
+		assertEquals(0, template.count(PathExpression.valueOf("/Order/item")));
+		assertFalse(template.exists(PathExpression.valueOf("/Order/item")));
+
+		template.reset(xml);
+		try {
+			cursor.next();
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+		cursor = template.newCursor(PathExpression.valueOf("/Order/item"));
+		assertTrue(cursor.next());
+		cursor.skipElement();
+		assertEquals(2, cursor.count());
+		template.close();
+	}
+
+	@Test
+	public void testCursorNestedSameName() throws XMLStreamException {
+		String xml = "<Order><item sku=\"1\"><item sku=\"2\"><item sku=\"3\"/></item></item>"
+				+ "<item sku=\"4\"/></Order>";
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		PathExpressionCursor cursor = template.newCursor(PathExpression.valueOf("//item"));
+		assertTrue(cursor.next());
+		assertTrue(cursor.next());
+		assertEquals("2", template.getAttributeValue(null, "sku"));
+		cursor.skipElement();
+		assertTrue(cursor.next());
+		assertEquals("4", template.getAttributeValue(null, "sku"));
+		assertFalse(cursor.next());
+		template.close();
+
+		template = new XMLStreamReaderTemplate(xml);
+		cursor = template.newCursor(PathExpression.valueOf("/Order/item"));
+		assertTrue(cursor.next());
+		assertEquals(2, cursor.getElement(Element.class).getElementsByTagName("item").getLength());
+		assertTrue(cursor.next());
+		assertEquals("4", template.getAttributeValue(null, "sku"));
+		template.close();
+
+		template = new XMLStreamReaderTemplate(xml);
+		cursor = template.newCursor(PathExpression.valueOf("/Order/item"));
+		assertTrue(cursor.next());
+		assertTrue(cursor.getElement(String.class).endsWith("</item></item></item>"));
+		assertTrue(cursor.next());
+		assertEquals("4", template.getAttributeValue(null, "sku"));
+		assertFalse(cursor.next());
+		template.close();
+	}
+
+	@Test
+	public void testCountMidDocument() throws XMLStreamException {
+		String xml = "<Order><item><item/></item><Note><item/></Note></Order>";
+		XMLStreamReaderTemplate template = new XMLStreamReaderTemplate(xml);
+		assertTrue(template.nextElement("item"));
+		assertTrue(template.nextElement("item"));
+		try {
+			template.count(PathExpression.valueOf("/Order/item"));
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+
+		template.reset(xml);
+		assertTrue(template.exists(PathExpression.valueOf("/Order/item")));
+		try {
+			template.exists(PathExpression.valueOf("/Order/item"));
+			fail("should throw exception");
+		} catch (IllegalStateException e) {
+		}
+		template.close();
+	}
+
 }